@@ -0,0 +1,238 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A solver that can be stopped at any time and still give a useful answer.
+ *
+ * The search deepens iteratively, one move at a time, until the game is solved, the whole game tree has
+ * been searched, or the budget of time or positions runs out. Along the way it remembers the best line it
+ * has seen, scored by the number of cards on the foundations plus the number of face-down cards turned
+ * up, so that it can always suggest something.
+ *
+ * Another thread may {@link #cancel()} the search (or interrupt the searching thread). Either way the game
+ * is put back exactly as it was found before {@link #solve(Klondike)} returns. The game must not be
+ * touched by anyone else while the search is running.
+ */
+public class AnytimeSolver {
+
+    private static final int CHECK_EVERY = 256;
+    private static final int COMPLETE = Integer.MAX_VALUE;      // searched to the end, no win
+
+    private final MoveGenerator generator = new MoveGenerator(true);
+    private final long maxNanos, maxNodes;
+    private final TranspositionTable table;
+    private final MoveOrdering ordering;
+
+    private volatile boolean cancelled;
+
+    private Set<Long> path;
+    private LinkedList<Move> line;
+    private List<Move> best;
+    private int bestScore, facedownAtStart;
+    private long nodes, deadline;
+    private boolean stopped, hitLimit;
+
+    private static final Logger logger = LoggerFactory.getLogger(AnytimeSolver.class);
+
+    /**
+     * @param time the most time to spend, or 0 for no limit
+     * @param unit the unit of {@code time}
+     * @param maxNodes the most positions to visit, or 0 for no limit
+     */
+    public AnytimeSolver(long time, TimeUnit unit, long maxNodes) {
+        this(time, unit, maxNodes,
+                new TranspositionTable(Solver.DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    public AnytimeSolver(long time, TimeUnit unit, long maxNodes, TranspositionTable table) {
+        this(time, unit, maxNodes, table, new HeuristicOrdering());
+    }
+
+    public AnytimeSolver(long time, TimeUnit unit, long maxNodes, TranspositionTable table, MoveOrdering ordering) {
+        this.maxNanos = time > 0 ? unit.toNanos(time) : Long.MAX_VALUE;
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.table = table;
+        this.ordering = ordering;
+    }
+
+    /**
+     * Search from the current position until we know the answer or run out of budget.
+     *
+     * @param klondike the game
+     * @return the best line found
+     */
+    public Result solve(Klondike klondike) {
+        int historySize = klondike.historySize();
+
+        cancelled = stopped = false;
+        table.clear();
+        path = Sets.newHashSet();
+        line = Lists.newLinkedList();
+        best = ImmutableList.of();
+        nodes = 0;
+        deadline = System.nanoTime() + maxNanos;
+        facedownAtStart = klondike.countFacedown();
+        bestScore = score(klondike);
+
+        boolean solved = false, proven = false, searching = klondike.setSearching(true);
+        int depth = 0;
+        try {
+            while (!solved && !stopped) {
+                ++depth;
+                hitLimit = false;
+                solved = search(klondike, depth);
+                if (!solved && !stopped && !hitLimit) {
+                    // nothing was cut off by the depth limit, so there's nowhere left to look
+                    proven = true;
+                    break;
+                }
+            }
+        }
+        finally {
+            while (klondike.historySize() > historySize) {
+                klondike.undo();
+            }
+            klondike.setSearching(searching);
+        }
+
+        logger.debug(String.format("solve(): solved=%b, proven=%b after %d nodes to depth %d",
+                solved, proven || solved, nodes, depth));
+        Result result = new Result(best, bestScore, solved, proven || solved, nodes, depth);
+        path = null;
+        line = null;
+        best = null;
+        return result;
+    }
+
+    /**
+     * Stop searching as soon as possible. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    private boolean search(Klondike klondike, int remaining) {
+        if (klondike.won()) {
+            best = ImmutableList.copyOf(line);
+            bestScore = score(klondike);
+            return true;
+        }
+
+        if (++nodes >= maxNodes || (nodes % CHECK_EVERY == 0 && outOfBudget())) {
+            stopped = true;
+        }
+        if (stopped) {
+            return false;
+        }
+
+        int score = score(klondike);
+        if (score > bestScore || (score == bestScore && line.size() < best.size())) {
+            bestScore = score;
+            best = ImmutableList.copyOf(line);
+        }
+
+        if (remaining == 0) {
+            hitLimit = true;
+            return false;
+        }
+
+        long key = Position.hash(klondike);
+        if (path.contains(key)) {
+            // back where this line has already been: anything from here could be done from there, so it's a
+            // dead end, not a place the depth limit cut us off
+            return false;
+        }
+        int seen = table.get(key, -1);
+        if (seen >= remaining) {
+            hitLimit |= seen != COMPLETE;
+            return false;
+        }
+        path.add(key);
+        table.put(key, remaining, remaining);
+
+        boolean limited = hitLimit;
+        hitLimit = false;
+        try {
+            int ply = line.size();
+            List<Move> moves = generator.generate(klondike);
+            ordering.order(klondike, moves, ply);
+
+            for (Move move : moves) {
+                if (!klondike.apply(move)) {
+                    continue;
+                }
+                line.addLast(move);
+                int scoreBefore = bestScore;
+                try {
+                    if (search(klondike, remaining - 1)) {
+                        ordering.cutoff(move, ply);
+                        return true;
+                    }
+                }
+                finally {
+                    line.removeLast();
+                    klondike.undo();
+                }
+                if (bestScore > scoreBefore) {
+                    ordering.cutoff(move, ply);
+                }
+                if (stopped) {
+                    return false;
+                }
+            }
+
+            if (!hitLimit) {
+                table.put(key, COMPLETE, 0xffff);
+            }
+            return false;
+        }
+        finally {
+            hitLimit |= limited;
+            path.remove(key);
+        }
+    }
+
+    private boolean outOfBudget() {
+        return cancelled || Thread.currentThread().isInterrupted() ||
+                (maxNanos != Long.MAX_VALUE && System.nanoTime() - deadline > 0);
+    }
+
+    /**
+     * How good is this position? One point for each card on a foundation and one for each face-down card
+     * turned up since the search started.
+     */
+    private int score(Klondike klondike) {
+        int score = facedownAtStart - klondike.countFacedown();
+        for (Klondike.Foundation foundation : klondike.getFoundations()) {
+            score += foundation.size();
+        }
+        return score;
+    }
+
+    public static class Result {
+        public final List<Move> moves;
+        public final int score;
+        public final boolean solved, proven;
+        public final long nodes;
+        public final int depth;
+
+        Result(List<Move> moves, int score, boolean solved, boolean proven, long nodes, int depth) {
+            this.moves = moves;
+            this.score = score;
+            this.solved = solved;
+            this.proven = proven;
+            this.nodes = nodes;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package info.jayharris.klondike;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writing files so that a reader never sees one half written: write everything to a
+ * {@link #tempFile temporary file} next to the real one, then {@link #replace} the real one with it.
+ */
+final class AtomicFiles {
+
+    private AtomicFiles() {}
+
+    static File tempFile(File file) {
+        return new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Move a finished temporary file over the real one in a single step.
+     */
+    static void replace(File temp, File file) throws IOException {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,189 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Plays a game of {@link Klondike} by beam search: at each ply, every move from each of the best
+ * {@code width} positions so far is tried, and the best {@code width} of the resulting positions, by some
+ * {@link Evaluation}, are kept for the next ply.
+ *
+ * Like the {@link Solver}, the player knows where every card is. Unlike the solver, it never backtracks
+ * past the beam, so it can miss wins; a wider beam misses fewer and takes longer. Positions are
+ * deduplicated by their {@link Position canonical form}, so the beam doesn't fill up with the same
+ * position reached in different orders, or go back to a position it has already been in.
+ */
+public class BeamSearchPlayer {
+
+    static final int DEFAULT_MAX_DEPTH = 500;
+
+    private final int width, maxDepth;
+    private final Evaluation evaluation;
+    private final MoveGenerator generator = new MoveGenerator(true);
+
+    private static final Logger logger = LoggerFactory.getLogger(BeamSearchPlayer.class);
+
+    private static final Comparator<Node> BEST_FIRST = new Comparator<Node>() {
+        @Override
+        public int compare(Node a, Node b) {
+            return Double.compare(b.score, a.score);
+        }
+    };
+
+    /**
+     * @param width how many positions to keep at each ply
+     */
+    public BeamSearchPlayer(int width) {
+        this(width, WeightedEvaluation.DEFAULT, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param width how many positions to keep at each ply
+     * @param evaluation how to rank positions
+     * @param maxDepth give up after this many moves
+     */
+    public BeamSearchPlayer(int width, Evaluation evaluation, int maxDepth) {
+        Preconditions.checkArgument(width > 0 && maxDepth > 0);
+        this.width = width;
+        this.evaluation = Preconditions.checkNotNull(evaluation);
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Search for the best line from the current position. The game is left as it was found.
+     *
+     * @param klondike the game
+     * @return the best line found: a win if one was found, otherwise the line to the best-scoring position
+     */
+    public Result play(Klondike klondike) {
+        boolean searching = klondike.setSearching(true);
+        try {
+            return search(klondike);
+        }
+        finally {
+            klondike.setSearching(searching);
+        }
+    }
+
+    private Result search(Klondike klondike) {
+        Set<Long> seen = Sets.newHashSet();
+        Node root = new Node(null, null, evaluation.evaluate(klondike));
+        seen.add(Position.hash(klondike));
+
+        List<Node> beam = Lists.newArrayList(root), next = Lists.newArrayList();
+        Node best = root;
+        long nodes = 0;
+
+        for (int depth = 0; depth < maxDepth && !beam.isEmpty() && !klondike.won(); ++depth) {
+            next.clear();
+            for (Node node : beam) {
+                List<Move> line = node.line();
+                replay(klondike, line);
+                try {
+                    for (Move move : generator.generate(klondike)) {
+                        if (!klondike.apply(move)) {
+                            continue;
+                        }
+                        ++nodes;
+                        if (seen.add(Position.hash(klondike))) {
+                            Node child = new Node(node, move, evaluation.evaluate(klondike));
+                            if (klondike.won() || klondike.isTriviallyWon()) {
+                                // nothing left to search for; the rest of the cards just go up
+                                List<Move> finish = klondike.finishingMoves();
+                                klondike.undo();
+                                return result(child, finish, true, nodes);
+                            }
+                            next.add(child);
+                        }
+                        klondike.undo();
+                    }
+                }
+                finally {
+                    for (int i = 0; i < line.size(); ++i) {
+                        klondike.undo();
+                    }
+                }
+            }
+
+            // stable, so ties go to whichever was generated first and the search is repeatable
+            Collections.sort(next, BEST_FIRST);
+            List<Node> swap = beam;
+            beam = next.size() > width ? Lists.newArrayList(next.subList(0, width)) : Lists.newArrayList(next);
+            next = swap;
+
+            if (!beam.isEmpty() && beam.get(0).score > best.score) {
+                best = beam.get(0);
+            }
+        }
+
+        return result(best, Collections.<Move>emptyList(), false, nodes);
+    }
+
+    private Result result(Node node, List<Move> finish, boolean won, long nodes) {
+        List<Move> line = Lists.newArrayList(node.line());
+        line.addAll(finish);
+        logger.debug(String.format("play(): won=%b, %d moves, score %.1f after %d nodes",
+                won, line.size(), node.score, nodes));
+        return new Result(line, won, node.score, nodes);
+    }
+
+    private static void replay(Klondike klondike, List<Move> line) {
+        for (Move move : line) {
+            Preconditions.checkState(klondike.apply(move), "can't replay %s", move);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public Evaluation getEvaluation() {
+        return evaluation;
+    }
+
+    /**
+     * A position in the beam, remembered as the move that got there from its parent.
+     */
+    private static class Node {
+        final Node parent;
+        final Move move;
+        final double score;
+
+        Node(Node parent, Move move, double score) {
+            this.parent = parent;
+            this.move = move;
+            this.score = score;
+        }
+
+        List<Move> line() {
+            List<Move> line = Lists.newArrayList();
+            for (Node node = this; node.move != null; node = node.parent) {
+                line.add(node.move);
+            }
+            return Lists.reverse(line);
+        }
+    }
+
+    public static class Result {
+        public final List<Move> moves;
+        public final boolean won;
+        public final double score;
+        public final long nodes;
+
+        Result(List<Move> moves, boolean won, double score, long nodes) {
+            this.moves = ImmutableList.copyOf(moves);
+            this.won = won;
+            this.score = score;
+            this.nodes = nodes;
+        }
+    }
+}
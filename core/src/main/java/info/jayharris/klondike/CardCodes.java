@@ -0,0 +1,80 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.Maps;
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Rank;
+import info.jayharris.cardgames.Suit;
+
+import java.util.EnumMap;
+
+/**
+ * Compact integer codes for cards, for when a {@link Card} object is too heavy.
+ *
+ * A card's code is {@code 13 * suit + rank}, where aces are rank 0 and kings are rank 12. Suits are
+ * numbered so that suits of the same color differ only in their lowest bit: clubs and spades are 0 and 1,
+ * diamonds and hearts are 2 and 3.
+ */
+final class CardCodes {
+
+    static final int CARDS = 52, RANKS = 13, SUITS = 4;
+
+    private static final EnumMap<Rank, Integer> rankIndex = Maps.newEnumMap(Rank.class);
+    private static final EnumMap<Suit, Integer> suitIndex = Maps.newEnumMap(Suit.class);
+    private static final Rank[] ranks = new Rank[RANKS];
+    private static final Suit[] suits = { Suit.CLUBS, Suit.SPADES, Suit.DIAMONDS, Suit.HEARTS };
+
+    static {
+        Rank rank = Rank.ACE;
+        for (int i = 0; i < RANKS; ++i) {
+            ranks[i] = rank;
+            rankIndex.put(rank, i);
+            if (i < RANKS - 1) {
+                rank = rank.higher();
+            }
+        }
+        for (int i = 0; i < SUITS; ++i) {
+            suitIndex.put(suits[i], i);
+        }
+    }
+
+    private CardCodes() {}
+
+    static int code(Card card) {
+        return code(suitIndex.get(card.getSuit()), rankIndex.get(card.getRank()));
+    }
+
+    static int code(int suit, int rank) {
+        return suit * RANKS + rank;
+    }
+
+    static int rank(int code) {
+        return code % RANKS;
+    }
+
+    static int suit(int code) {
+        return code / RANKS;
+    }
+
+    static int suit(Suit suit) {
+        return suitIndex.get(suit);
+    }
+
+    static boolean isRed(int code) {
+        return suit(code) >= 2;
+    }
+
+    static Rank toRank(int rank) {
+        return ranks[rank];
+    }
+
+    static Suit toSuit(int suit) {
+        return suits[suit];
+    }
+
+    /**
+     * Can the card {@code code} go on top of the card {@code target} in a tableau?
+     */
+    static boolean stacks(int code, int target) {
+        return rank(code) + 1 == rank(target) && isRed(code) != isRed(target);
+    }
+}
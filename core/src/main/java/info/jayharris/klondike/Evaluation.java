@@ -0,0 +1,13 @@
+package info.jayharris.klondike;
+
+/**
+ * Says how promising a position is, for players that search ahead, like the {@link BeamSearchPlayer}.
+ */
+public interface Evaluation {
+
+    /**
+     * @param klondike the game, in the position to evaluate
+     * @return the position's score; higher is better
+     */
+    double evaluate(Klondike klondike);
+}
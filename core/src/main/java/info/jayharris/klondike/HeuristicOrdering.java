@@ -0,0 +1,109 @@
+package info.jayharris.klondike;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tries the moves a human would try first.
+ *
+ * Moves to a foundation come first, then moves that turn up a face-down card in a tableau, then the
+ * "killer" moves that paid off most recently at the same depth in the search, and finally everything
+ * else, best first according to a history table of how often each kind of move has paid off before.
+ *
+ * Not thread-safe; use one per solver.
+ */
+public class HeuristicOrdering implements MoveOrdering {
+
+    private static final int FOUNDATION = 4 << 24, FLIP = 3 << 24, KILLER = 2 << 24, MAX_HISTORY = (1 << 24) - 1;
+    private static final int MAX_PLY = 1024, KILLERS = 2;
+
+    private final int[] history = new int[Move.Type.values().length * 8 * 8];
+    private final Move[][] killers = new Move[MAX_PLY][KILLERS];
+
+    private int[] scores = new int[64];
+    private Move[] sorted = new Move[64];
+
+    @Override
+    public void order(Klondike klondike, List<Move> moves, int ply) {
+        int n = moves.size();
+        if (scores.length < n) {
+            scores = new int[n * 2];
+            sorted = new Move[n * 2];
+        }
+
+        for (int i = 0; i < n; ++i) {
+            scores[i] = score(klondike, moves.get(i), ply);
+            sorted[i] = moves.get(i);
+        }
+
+        // insertion sort, best first; there are rarely more than a couple of dozen moves and it's stable
+        for (int i = 1; i < n; ++i) {
+            int score = scores[i];
+            Move move = sorted[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                scores[j + 1] = scores[j];
+                sorted[j + 1] = sorted[j];
+                --j;
+            }
+            scores[j + 1] = score;
+            sorted[j + 1] = move;
+        }
+
+        for (int i = 0; i < n; ++i) {
+            moves.set(i, sorted[i]);
+            sorted[i] = null;
+        }
+    }
+
+    @Override
+    public void cutoff(Move move, int ply) {
+        int k = index(move);
+        if (history[k] < MAX_HISTORY) {
+            ++history[k];
+        }
+
+        if (ply < MAX_PLY && !move.equals(killers[ply][0])) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+    }
+
+    /**
+     * Forget everything learned so far.
+     */
+    public void clear() {
+        Arrays.fill(history, 0);
+        for (Move[] k : killers) {
+            Arrays.fill(k, null);
+        }
+    }
+
+    private int score(Klondike klondike, Move move, int ply) {
+        if (move.toFoundation()) {
+            return FOUNDATION;
+        }
+        if (flips(klondike, move)) {
+            return FLIP;
+        }
+        if (ply < MAX_PLY && (move.equals(killers[ply][0]) || move.equals(killers[ply][1]))) {
+            return KILLER;
+        }
+        return history[index(move)];
+    }
+
+    /**
+     * Will this move turn up a face-down card?
+     */
+    private static boolean flips(Klondike klondike, Move move) {
+        if (move.type != Move.Type.TABLEAU_TO_TABLEAU) {
+            return false;
+        }
+        Klondike.Tableau from = klondike.getTableau(move.from);
+        return from.size() > move.count && from.get(from.size() - move.count - 1).isFacedown();
+    }
+
+    private static int index(Move move) {
+        return (move.type.ordinal() * 8 + move.from + 1) * 8 + move.to + 1;
+    }
+}
@@ -0,0 +1,925 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import info.jayharris.cardgames.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+public class Klondike extends Observable {
+
+    private Deck deck;
+    private Waste waste;
+    private final ArrayList<Tableau> tableaus;
+    private final Map<Suit, Foundation> foundations;
+    public final Rules rules;
+
+    private int passes;
+    private boolean didChange;          // keep track of whether we moved a card to a tableau
+                                        // or to a foundation this round
+
+    private Move[] history = new Move[64];          // moves made with apply(Move), most recent last
+    private long[] undoInfo = new long[64];         // what we need to take each of those moves back
+    private int historySize = 0;
+
+    private int facedown = 0;                       // face-down cards on the tableaus
+
+    private long version = 0;                       // how many changes have been made to the game
+    private boolean publishing = false;
+    private boolean searching = false;              // a search is making moves that were never really played
+    private volatile Snapshot snapshot = null;      // the latest published position
+                                        
+    public static Logger logger = LoggerFactory.getLogger(Klondike.class);
+
+    enum GameOver { GAME_OVER }
+
+    public Klondike() {
+        this(new Rules());
+    }
+
+    public Klondike(Rules rules) {
+        deck = DeckUtils.createStandardDeck();
+
+        tableaus = Lists.newArrayListWithCapacity(7);
+        for (int i = 0; i < 7; ++i) {
+            tableaus.add(new Tableau());
+        }
+
+        foundations = Maps.newHashMapWithExpectedSize(4);
+        for (Suit suit : EnumSet.allOf(Suit.class)) {
+            foundations.put(suit, new Foundation(suit));
+        }
+
+        waste = new Waste();
+        this.rules = rules;
+
+        passes = 0;
+    }
+
+    public void init() {
+        deck.shuffle();
+        deal(deck);
+    }
+
+    /**
+     * Start a game whose deal is determined entirely by {@code seed}.
+     *
+     * @param seed the deal number
+     */
+    public void init(long seed) {
+        Collections.shuffle(deck, new Random(seed));
+        deal(deck);
+    }
+
+    /**
+     * Start a game with the cards in a given order, dealt just as {@link #init(long)} deals them once
+     * they're shuffled.
+     *
+     * @param cards every card, once each
+     */
+    public void init(List<Card> cards) {
+        final int[] position = new int[CardCodes.CARDS];
+        Arrays.fill(position, -1);
+        for (int i = 0; i < cards.size(); ++i) {
+            int code = CardCodes.code(cards.get(i));
+            Preconditions.checkArgument(position[code] < 0, "%s more than once", cards.get(i));
+            position[code] = i;
+        }
+        Preconditions.checkArgument(cards.size() == CardCodes.CARDS, "%s cards", cards.size());
+
+        Collections.sort(deck, new Comparator<Card>() {
+            @Override
+            public int compare(Card a, Card b) {
+                return position[CardCodes.code(a)] - position[CardCodes.code(b)];
+            }
+        });
+        deal(deck);
+    }
+
+    private void deal(Deck deck) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(deck.toString());
+        }
+
+        for (int i = 0; i < tableaus.size(); ++i) {
+            for (int j = i; j < tableaus.size(); ++j) {
+                tableaus.get(j).add(j == i ? deck.dealFaceUp() : deck.dealFaceDown());
+            }
+            facedown += tableaus.size() - 1 - i;
+        }
+        changed();
+    }
+
+    public boolean isDeckEmpty() {
+        return deck.isEmpty();
+    }
+
+    public boolean isGameOver() {
+        return isDeckEmpty() && (!didChange || passes >= rules.getPasses() || won());
+    }
+
+    /**
+     * Notify the UI that the game is over.
+     *
+     * @return {@code false}
+     */
+    public boolean doGameOver() {
+        if (!searching) {
+            this.setChanged();
+            this.notifyObservers(GameOver.GAME_OVER);
+        }
+        return false;
+    }
+
+    /**
+     * Did we win?
+     *
+     * @return {@code true} iff this game is won
+     */
+    public boolean won() {
+        for (Foundation foundation : foundations.values()) {
+            if (!foundation.isComplete()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Is the game as good as won? It is once the deck and the waste are empty and every card on the
+     * tableaus is face up: each tableau is then a run down in rank, so the lowest card left is always on
+     * top of one, and can always go up.
+     *
+     * Cheap, since it goes by a count of face-down cards.
+     *
+     * @return {@code true} iff the game can't help but be won
+     */
+    public boolean isTriviallyWon() {
+        return facedown == 0 && deck.isEmpty() && waste.isEmpty();
+    }
+
+    /**
+     * @return the number of face-down cards on the tableaus
+     */
+    public int countFacedown() {
+        return facedown;
+    }
+
+    /**
+     * Count the face-down cards on the tableaus again. The count keeps up with cards that are dealt, moved
+     * and turned over, but not with cards put on the tableaus by hand, so call this after doing that.
+     */
+    void recountFacedown() {
+        facedown = 0;
+        for (Tableau tableau : tableaus) {
+            facedown += tableau.size() - tableau.countFaceup();
+        }
+    }
+
+    /**
+     * Put every card left on the tableaus on the foundations at once, if the game is
+     * {@link #isTriviallyWon() as good as won}. Observers hear about one change, and the game being over,
+     * rather than a move for each card. The history of moves is forgotten, since there's no going back
+     * from a won game.
+     *
+     * @return {@code true} iff the game is now won
+     */
+    public boolean finish() {
+        if (!isTriviallyWon()) {
+            return false;
+        }
+        if (won()) {
+            return true;
+        }
+
+        for (boolean moved = true; moved; ) {
+            moved = false;
+            for (Tableau tableau : tableaus) {
+                while (!tableau.isEmpty() && foundations.get(tableau.peekLast().getSuit()).accepts(tableau.peekLast())) {
+                    foundations.get(tableau.peekLast().getSuit()).add(tableau.removeLast());
+                    moved = true;
+                }
+            }
+        }
+        Preconditions.checkState(won());
+
+        Arrays.fill(history, 0, historySize, null);
+        historySize = 0;
+        didChange = true;
+        changed();
+        doGameOver();
+        return true;
+    }
+
+    /**
+     * The moves that would {@link #finish()} the game one card at a time, for searches that need to hand
+     * back a whole line. The game isn't changed.
+     *
+     * @return the moves, or an empty list if the game isn't {@link #isTriviallyWon() as good as won}
+     */
+    List<Move> finishingMoves() {
+        List<Move> moves = Lists.newArrayList();
+        if (!isTriviallyWon()) {
+            return moves;
+        }
+
+        int[] foundation = new int[CardCodes.SUITS], size = new int[7];
+        for (Foundation f : foundations.values()) {
+            foundation[CardCodes.suit(f.suit)] = f.size();
+        }
+        for (int i = 0; i < 7; ++i) {
+            size[i] = tableaus.get(i).size();
+        }
+        for (boolean moved = true; moved; ) {
+            moved = false;
+            for (int i = 0; i < 7; ++i) {
+                while (size[i] > 0) {
+                    int code = CardCodes.code(tableaus.get(i).get(size[i] - 1));
+                    if (foundation[CardCodes.suit(code)] != CardCodes.rank(code)) {
+                        break;
+                    }
+                    ++foundation[CardCodes.suit(code)];
+                    --size[i];
+                    moves.add(Move.tableauToFoundation(i));
+                    moved = true;
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Deal the next card from the deck.
+     *
+     * @return {@code false} iff the game is over
+     */
+    public boolean deal() {
+        logger.debug("deal();");
+
+        if (isDeckEmpty()) {
+            return restartDeck();
+        }
+        else {
+            for (int i = 0; i < rules.getDeal() && !isDeckEmpty(); ++i) {
+                moveCardToWaste();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Move a card from the deck to the waste.
+     *
+     * @return {@code true}
+     */
+    public boolean moveCardToWaste() {
+        Preconditions.checkState(!deck.isEmpty());
+        waste.add(deck.dealFaceUp());
+        changed();
+        return true;
+    }
+
+    /**
+     * Move a card from the end of the waste to a tableau.
+     *
+     * @return {@code true} if the move is legal, {@code false} otherwise
+     */
+    public boolean moveFromWasteToTableau(Tableau tableau) {
+        Card card = waste.peekLast();
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("moveFromWasteToTableau(tableaus.get(" + whichTableau(tableau) + "));");
+        }
+
+        if (tableau.isEmpty()) {
+            if (card.getRank() == Rank.KING) {
+                didChange = true;
+                tableau.add(waste.removeLast());
+                changed();
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+        else {
+            Card target = tableau.peekLast();
+            if (card.getRank() == target.getRank().lower() && card.getColor() == target.getColor().opposite()) {
+                didChange = true;
+                tableau.add(waste.removeLast());
+                changed();
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Move a card from the waste to the appropriate foundation.
+     *
+     * @return {@code true} if the move is legal, {@code false} otherwise
+     */
+    public boolean moveFromWasteToFoundation() {
+        logger.debug("moveFromWasteToFoundation();");
+
+        Card card = waste.peekLast();
+        Foundation foundation = foundations.get(card.getSuit());
+
+        if (foundation.accepts(card)) {
+            didChange = true;
+            foundation.add(waste.removeLast());
+            changed();
+
+            if (won()) {
+                doGameOver();
+            } 
+            
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Move a card from a tableau to the appropriate foundation.
+     *
+     * @param tableau the tableau
+     * @return {@code true} if the move is legal, {@code false} otherwise
+     */
+    public boolean moveFromTableauToFoundation(Tableau tableau) {
+        Preconditions.checkArgument(!tableau.isEmpty());
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("moveFromTableauToFoundation(tableaus.get(" + whichTableau(tableau) + "));");
+        }
+
+        Card card = tableau.peekLast();
+        Foundation foundation = foundations.get(card.getSuit());
+
+        if (foundation.accepts(card)) {
+            didChange = true;
+            foundation.add(tableau.removeLast());
+            if (!tableau.isEmpty() && tableau.peekLast().isFacedown()) {
+                tableau.peekLast().flip();
+                --facedown;
+            }
+            changed();
+
+            if (won()) {
+                doGameOver();
+            }
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Move one or more cards from one tableau to another.
+     *
+     * @param from the tableau that we're moving from
+     * @param to the tableau that we're moving to
+     * @param num the number of cards we're moving
+     * @return {@code true} if the move is legal, {@code false} otherwise
+     */
+    public boolean moveFromTableauToTableau(Tableau from, Tableau to, int num) {
+        Preconditions.checkArgument(!from.isEmpty());
+        Preconditions.checkArgument(num > 0 && num <= from.countFaceup());
+
+        if (logger.isDebugEnabled()) {
+            logger.debug(String.format("moveFromTableauToTableaus(tableaus.get(%d), tableaus.get(%d), %d);", whichTableau(from), whichTableau(to), num));
+        }
+
+        if (!to.accepts(from.get(from.size() - num))) {
+            return false;
+        }
+
+        for (int i = num; i > 0; --i) {
+            to.add(from.remove(from.size() - i));
+        }
+        if (!from.isEmpty() && from.peekLast().isFacedown()) {
+            from.peekLast().flip();
+            --facedown;
+        }
+
+        didChange = true;
+        changed();
+        return true;
+    }
+
+    /**
+     * Take the waste pile and turn it into the deck for the next round.
+     *
+     * @return {@code false} iff the game is over, otherwise {@code true}
+     */
+    public boolean restartDeck() {
+        Preconditions.checkState(deck.isEmpty());
+
+        ++passes;
+        if (isGameOver()) {
+            changed();
+            return doGameOver();
+        }
+
+        while (!waste.isEmpty()) {
+            Card card = waste.removeFirst();
+            card.flip();
+            deck.add(card);
+        }
+
+        didChange = false;
+        changed();
+        return true;
+    }
+
+    /**
+     * Can we turn the waste over into a new deck without ending the game?
+     *
+     * @return {@code true} iff {@link #restartDeck()} would succeed
+     */
+    public boolean canRestartDeck() {
+        return isDeckEmpty() && !waste.isEmpty() && didChange && passes + 1 < rules.getPasses() && !won();
+    }
+
+    /**
+     * Make a move, remembering enough about it that it can be taken back with {@link #undo()}.
+     *
+     * @param move the move
+     * @return {@code true} if the move is legal, {@code false} otherwise
+     */
+    public boolean apply(Move move) {
+        if (move.deals > 0) {
+            return applyFromStock(move);
+        }
+
+        boolean legal, flipped = false, wasChanged = didChange;
+        int wasPasses = passes, extra = 0;
+        Tableau from, to;
+
+        switch (move.type) {
+            case DEAL:
+                if (isDeckEmpty()) {
+                    legal = canRestartDeck() && restartDeck();
+                    extra = -1;
+                }
+                else {
+                    extra = Math.min(rules.getDeal(), deck.size());
+                    legal = deal();
+                }
+                break;
+            case WASTE_TO_TABLEAU:
+                legal = !waste.isEmpty() && moveFromWasteToTableau(getTableau(move.to));
+                break;
+            case WASTE_TO_FOUNDATION:
+                if (waste.isEmpty()) {
+                    return false;
+                }
+                extra = waste.peekLast().getSuit().ordinal();
+                legal = moveFromWasteToFoundation();
+                break;
+            case TABLEAU_TO_FOUNDATION:
+                from = getTableau(move.from);
+                if (from.isEmpty()) {
+                    return false;
+                }
+                flipped = from.size() > 1 && from.get(from.size() - 2).isFacedown();
+                extra = from.peekLast().getSuit().ordinal();
+                legal = moveFromTableauToFoundation(from);
+                break;
+            case TABLEAU_TO_TABLEAU:
+                from = getTableau(move.from);
+                to = getTableau(move.to);
+                if (from == to || from.isEmpty() || move.count > from.countFaceup()) {
+                    return false;
+                }
+                flipped = from.size() > move.count && from.get(from.size() - move.count - 1).isFacedown();
+                legal = moveFromTableauToTableau(from, to, move.count);
+                break;
+            default:
+                throw new IllegalArgumentException(move.toString());
+        }
+
+        if (!legal) {
+            passes = wasPasses;
+            didChange = wasChanged;
+            return false;
+        }
+
+        if (historySize == history.length) {
+            history = Arrays.copyOf(history, historySize * 2);
+            undoInfo = Arrays.copyOf(undoInfo, historySize * 2);
+        }
+        history[historySize] = move;
+        undoInfo[historySize] = ((long) wasPasses << 32) | ((extra & 0xff) << 2) |
+                (wasChanged ? 2 : 0) | (flipped ? 1 : 0);
+        ++historySize;
+        return true;
+    }
+
+    /**
+     * Deal until the card we want is on top of the waste, then play it.
+     */
+    private boolean applyFromStock(Move move) {
+        Move play = move.type == Move.Type.WASTE_TO_FOUNDATION ? Move.wasteToFoundation() : Move.wasteToTableau(move.to);
+        int dealt = 0;
+
+        while (dealt < move.deals && apply(Move.deal())) {
+            ++dealt;
+        }
+        if (dealt == move.deals && apply(play)) {
+            // the whole thing is taken back in one go
+            history[historySize - 1] = move;
+            return true;
+        }
+
+        while (dealt-- > 0) {
+            undo();
+        }
+        return false;
+    }
+
+    /**
+     * Take back the most recent move made with {@link #apply(Move)}.
+     *
+     * @return the move that was taken back
+     */
+    public Move undo() {
+        Preconditions.checkState(historySize > 0);
+
+        Move move = undoOne();
+        for (int i = 0; i < move.deals; ++i) {
+            undoOne();
+        }
+        return move;
+    }
+
+    private Move undoOne() {
+        Move move = history[--historySize];
+        history[historySize] = null;
+        long info = undoInfo[historySize];
+        boolean flipped = (info & 1) != 0;
+        int extra = (byte) (info >>> 2);
+        Tableau from, to;
+        Card card;
+
+        switch (move.type) {
+            case DEAL:
+                if (extra < 0) {
+                    // the deck used to be the waste
+                    for (Card c : deck) {
+                        c.flip();
+                        waste.add(c);
+                    }
+                    deck.clear();
+                }
+                else {
+                    for (int i = 0; i < extra; ++i) {
+                        card = waste.removeLast();
+                        card.flip();
+                        deck.addFirst(card);
+                    }
+                }
+                break;
+            case WASTE_TO_TABLEAU:
+                waste.add(getTableau(move.to).removeLast());
+                break;
+            case WASTE_TO_FOUNDATION:
+                waste.add(foundations.get(Suit.values()[extra]).removeLast());
+                break;
+            case TABLEAU_TO_FOUNDATION:
+                from = getTableau(move.from);
+                if (flipped) {
+                    from.peekLast().flip();
+                    ++facedown;
+                }
+                from.add(foundations.get(Suit.values()[extra]).removeLast());
+                break;
+            case TABLEAU_TO_TABLEAU:
+                from = getTableau(move.from);
+                to = getTableau(move.to);
+                if (flipped) {
+                    from.peekLast().flip();
+                    ++facedown;
+                }
+                for (int i = move.count; i > 0; --i) {
+                    from.add(to.remove(to.size() - i));
+                }
+                break;
+        }
+
+        passes = (int) (info >>> 32);
+        didChange = (info & 2) != 0;
+        changed();
+        return move;
+    }
+
+    /**
+     * How long is the history of moves made with {@link #apply(Move)}? A move that deals before it plays
+     * takes up one entry for each deal, plus one.
+     *
+     * @return the number of entries in the history
+     */
+    public int historySize() {
+        return historySize;
+    }
+
+    /* ************************************************************************
+     * Snapshots
+     * ************************************************************************/
+
+    /**
+     * From now on, publish a {@link Snapshot} of the game after every change, for other threads to read
+     * with {@link #getSnapshot()}, and pass it to any observers. Publishing costs a copy of the game per
+     * change, so it's off unless asked for.
+     */
+    public void publishSnapshots() {
+        publishing = true;
+        snapshot = Snapshot.of(this, version);
+    }
+
+    /**
+     * Searches that make and take back lots of moves on a live game say so while they search, so that
+     * nothing is published and observers hear nothing -- not even that the game is over -- about positions
+     * that were never really played. Stopping doesn't publish anything until the next change, so the game
+     * had better be back where it was.
+     *
+     * @return whether a search was already going on
+     */
+    boolean setSearching(boolean searching) {
+        boolean was = this.searching;
+        this.searching = searching;
+        return was;
+    }
+
+    /**
+     * The latest published position of the game. Safe to call from any thread, and never blocks the
+     * thread that's playing.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        Snapshot latest = snapshot;
+        Preconditions.checkState(latest != null, "call publishSnapshots() first");
+        return latest;
+    }
+
+    /**
+     * @return the number of changes made to the game so far
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private void changed() {
+        ++version;
+        if (publishing && !searching) {
+            snapshot = Snapshot.of(this, version);
+            if (countObservers() > 0) {
+                setChanged();
+                notifyObservers(snapshot);
+            }
+        }
+    }
+
+    protected Deck getDeck() {
+        return deck;
+    }
+
+    protected Tableau getTableau(int index) {
+        return tableaus.get(index);
+    }
+
+    protected Foundation getFoundation(Suit suit) {
+        return foundations.get(suit);
+    }
+
+    protected Waste getWaste() {
+        return waste;
+    }
+
+    protected Collection<Foundation> getFoundations() {
+        return foundations.values();
+    }
+
+    int getPasses() {
+        return passes;
+    }
+
+    boolean didChange() {
+        return didChange;
+    }
+    
+    private int whichTableau(Tableau tableau) {
+        for (int i = 0; i < tableaus.size(); ++i) {
+            if (tableaus.get(i) == tableau) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static Predicate pTableauHasNoFacedown = new Predicate<Tableau>() {
+        @Override
+        public boolean apply(Tableau input) {
+            return Iterables.all(input, input.pIsFaceDown);
+        }
+    };
+
+    static Predicate pFoundationIsComplete = new Predicate<Foundation>() {
+        @Override
+        public boolean apply(Foundation input) {
+            return input.isComplete();
+        }
+    };
+
+    class Tableau extends LinkedList<Card> {
+        Predicate pIsFaceDown = new Predicate<Card>() {
+            @Override
+            public boolean apply(Card input) {
+                return input.isFacedown();
+            }
+        };
+
+        /**
+         * Is this a legal move?
+         *
+         * @param card the card that we're trying to add to the top of the tableau
+         * @return {@code true} iff this is a legal move
+         */
+        public boolean accepts(Card card) {
+            if (isEmpty()) {
+                return card.getRank() == Rank.KING;
+            }
+            else {
+                Card last = getLast();
+
+                return card.getColor() == last.getColor().opposite() && card.getRank() == last.getRank().lower(Rank.SortType.ACE_LOW);
+            }
+        }
+
+        /**
+         * Count the number of face-up cards in the tableau.
+         *
+         * @return the number of face-up cards in the tableau.
+         */
+        public int countFaceup() {
+            int count = 0;
+            for (Iterator<Card> iter = descendingIterator(); iter.hasNext(); count++) {
+                if (iter.next().isFacedown()) {
+                    return count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Are there any face-down cards in the tableau?
+         *
+         * @return {@code true} iff this tableau is empty or all cards in the tableau are face-up
+         */
+        public boolean hasNoFacedown() {
+            for (Card card : this) {
+                if (card.isFacedown()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            if (isEmpty()) {
+                return "[]";
+            }
+
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0;;) {
+                sb.append(get(i));
+                if (++i == size()) {
+                    return sb.append("]").toString();
+                }
+                sb.append(", ");
+            }
+        }
+    }
+
+    class Foundation extends LinkedList<Card> {
+        final Suit suit;
+
+        public Foundation(Suit suit) {
+            this.suit = suit;
+        }
+
+        public boolean accepts(Card card) {
+            Preconditions.checkArgument(!card.isFacedown());
+            if (card.getSuit() == suit) {
+                return card.getRank() == (isEmpty() ? Rank.ACE : peekLast().getRank().higher());
+            }
+            return false;
+        }
+
+        public boolean isComplete() {
+            return size() == 13;
+        }
+
+        @Override
+        public String toString() {
+            return isEmpty() ? "[]" : peekLast().toString();
+        }
+    }
+
+    /**
+     * Waste.
+     *
+     * Cards are removed from the end of the waste, i.e. {@code waste[waste.length - 1]}.
+     */
+    class Waste extends LinkedList<Card> {
+        @Override
+        public String toString() {
+            StringBuffer sb = new StringBuffer("[]");
+            if (this.isEmpty()) {
+                return sb.toString();
+            }
+
+            for (int i = 1; i <= Math.min(this.size(), 6); ++i) {
+                sb.insert(1, this.get(this.size() - i).toString());
+                if (i >= this.size()) {
+                    return sb.toString();
+                }
+                sb.insert(1, " ");
+            }
+            sb.insert(1, "...");
+            return sb.toString();
+        }
+    }
+
+    public static class Rules {
+        enum Deal {
+            DEAL_SINGLE(1), DEAL_THREE(3);
+
+            public final int count;
+
+            Deal(int count) {
+                this.count = count;
+            }
+        }
+
+        enum Passes {
+            SINGLE(1), THREE(3), INFINITY(Integer.MAX_VALUE);
+
+            public final int count;
+
+            Passes(int count) {
+                this.count = count;
+            }
+
+            /**
+             * @param value "1" or "3", or anything else for no limit
+             * @return the number of passes through the deck that {@code value} names
+             */
+            static Passes parse(String value) {
+                switch(value) {
+                    case "1":
+                        return SINGLE;
+                    case "3":
+                        return THREE;
+                    default:
+                        return INFINITY;
+                }
+            }
+        }
+
+        Deal deal;
+        Passes passes;
+
+        Rules() {
+            this(Deal.DEAL_THREE, Passes.INFINITY);
+        }
+
+        Rules(Deal deal) { this(deal, Passes.INFINITY); }
+
+        Rules(Passes passes) { this(Deal.DEAL_THREE, passes); }
+
+        Rules(Deal deal, Passes passes) {
+            this.deal = deal;
+            this.passes = passes;
+        }
+
+        public int getDeal() {
+            return deal.count;
+        }
+
+        public int getPasses() {
+            return passes.count;
+        }
+    }
+}
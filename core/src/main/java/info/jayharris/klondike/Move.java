@@ -0,0 +1,116 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A single move in a game of {@link Klondike}.
+ *
+ * Moves refer to tableaus by index rather than by reference, so the same move can be made in any game
+ * that has the same cards in the same places.
+ *
+ * A move from the waste may first deal from the deck some number of times, to bring the card it plays
+ * to the top of the waste. Such a move is made and taken back as a unit.
+ */
+public class Move {
+
+    enum Type { DEAL, WASTE_TO_TABLEAU, WASTE_TO_FOUNDATION, TABLEAU_TO_FOUNDATION, TABLEAU_TO_TABLEAU }
+
+    final Type type;
+    final int from, to, count, deals;
+
+    private static final Move DEAL = new Move(Type.DEAL, -1, -1, 0, 0),
+            WASTE_TO_FOUNDATION = new Move(Type.WASTE_TO_FOUNDATION, -1, -1, 1, 0);
+
+    private Move(Type type, int from, int to, int count, int deals) {
+        this.type = type;
+        this.from = from;
+        this.to = to;
+        this.count = count;
+        this.deals = deals;
+    }
+
+    /**
+     * Deal the next card(s) from the deck, or turn the waste over if the deck is empty.
+     */
+    public static Move deal() {
+        return DEAL;
+    }
+
+    public static Move wasteToTableau(int to) {
+        return wasteToTableau(to, 0);
+    }
+
+    /**
+     * Deal {@code deals} times, then move the top card of the waste to a tableau.
+     */
+    public static Move wasteToTableau(int to, int deals) {
+        Preconditions.checkElementIndex(to, 7);
+        Preconditions.checkArgument(deals >= 0);
+        return new Move(Type.WASTE_TO_TABLEAU, -1, to, 1, deals);
+    }
+
+    public static Move wasteToFoundation() {
+        return WASTE_TO_FOUNDATION;
+    }
+
+    /**
+     * Deal {@code deals} times, then move the top card of the waste to its foundation.
+     */
+    public static Move wasteToFoundation(int deals) {
+        Preconditions.checkArgument(deals >= 0);
+        return deals == 0 ? WASTE_TO_FOUNDATION : new Move(Type.WASTE_TO_FOUNDATION, -1, -1, 1, deals);
+    }
+
+    public static Move tableauToFoundation(int from) {
+        Preconditions.checkElementIndex(from, 7);
+        return new Move(Type.TABLEAU_TO_FOUNDATION, from, -1, 1, 0);
+    }
+
+    public static Move tableauToTableau(int from, int to, int count) {
+        Preconditions.checkElementIndex(from, 7);
+        Preconditions.checkElementIndex(to, 7);
+        Preconditions.checkArgument(from != to && count > 0);
+        return new Move(Type.TABLEAU_TO_TABLEAU, from, to, count, 0);
+    }
+
+    /**
+     * Does this move put a card on a foundation?
+     *
+     * @return {@code true} iff this move ends on a foundation
+     */
+    public boolean toFoundation() {
+        return type == Type.WASTE_TO_FOUNDATION || type == Type.TABLEAU_TO_FOUNDATION;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Move)) {
+            return false;
+        }
+        Move that = (Move) o;
+        return type == that.type && from == that.from && to == that.to && count == that.count &&
+                deals == that.deals;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((type.ordinal() * 8 + from + 1) * 8 + to + 1) * 32 + count) * 64 + deals;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case DEAL:
+                return "deal()";
+            case WASTE_TO_TABLEAU:
+                return deals == 0 ? String.format("wasteToTableau(%d)", to) :
+                        String.format("wasteToTableau(%d, %d)", to, deals);
+            case WASTE_TO_FOUNDATION:
+                return deals == 0 ? "wasteToFoundation()" : String.format("wasteToFoundation(%d)", deals);
+            case TABLEAU_TO_FOUNDATION:
+                return String.format("tableauToFoundation(%d)", from);
+            default:
+                return String.format("tableauToTableau(%d, %d, %d)", from, to, count);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.Lists;
+import info.jayharris.cardgames.Card;
+
+import java.util.List;
+
+/**
+ * Lists the moves that can be made from a position in a game of {@link Klondike}.
+ *
+ * Optionally, instead of offering to deal, the generator can offer to play any card that dealing would
+ * bring to the top of the waste, as a single move (see {@link StockCycle}). In deal-three games most of a
+ * search is otherwise spent dealing and turning over the waste just to get at a particular card.
+ */
+public class MoveGenerator {
+
+    private final boolean stockMacros;
+
+    public MoveGenerator() {
+        this(false);
+    }
+
+    /**
+     * @param stockMacros play cards from the stock in one move instead of dealing
+     */
+    public MoveGenerator(boolean stockMacros) {
+        this.stockMacros = stockMacros;
+    }
+
+    /**
+     * Find the legal moves in the current position.
+     *
+     * Moves that can't possibly help, like moving a king and everything on it from one empty tableau
+     * to another, are left out.
+     *
+     * @param klondike the game
+     * @return the moves
+     */
+    public List<Move> generate(Klondike klondike) {
+        List<Move> moves = Lists.newArrayList();
+        Klondike.Waste waste = klondike.getWaste();
+        Klondike.Tableau from, to;
+        Card card;
+
+        if (stockMacros) {
+            StockCycle cycle = StockCycle.of(klondike);
+            for (long bits = cycle.reachable(); bits != 0; bits &= bits - 1) {
+                int code = Long.numberOfTrailingZeros(bits);
+                addWasteMoves(klondike, moves, cycle.card(code), cycle.dealsTo(code));
+            }
+        }
+        else if (!waste.isEmpty()) {
+            addWasteMoves(klondike, moves, waste.peekLast(), 0);
+        }
+
+        for (int i = 0; i < 7; ++i) {
+            from = klondike.getTableau(i);
+            if (from.isEmpty()) {
+                continue;
+            }
+
+            card = from.peekLast();
+            if (klondike.getFoundation(card.getSuit()).accepts(card)) {
+                moves.add(Move.tableauToFoundation(i));
+            }
+
+            int faceup = from.countFaceup();
+            for (int n = 1; n <= faceup; ++n) {
+                card = from.get(from.size() - n);
+                for (int j = 0; j < 7; ++j) {
+                    to = klondike.getTableau(j);
+                    if (i == j || !to.accepts(card) || (to.isEmpty() && n == from.size())) {
+                        continue;
+                    }
+                    moves.add(Move.tableauToTableau(i, j, n));
+                }
+            }
+        }
+
+        if (!stockMacros && (!klondike.isDeckEmpty() || klondike.canRestartDeck())) {
+            moves.add(Move.deal());
+        }
+        return moves;
+    }
+
+    private void addWasteMoves(Klondike klondike, List<Move> moves, Card card, int deals) {
+        // cards still in the deck are face down, which Foundation#accepts won't stand for
+        if (klondike.getFoundation(card.getSuit()).size() == CardCodes.rank(CardCodes.code(card))) {
+            moves.add(Move.wasteToFoundation(deals));
+        }
+        for (int j = 0; j < 7; ++j) {
+            if (klondike.getTableau(j).accepts(card)) {
+                moves.add(Move.wasteToTableau(j, deals));
+            }
+        }
+    }
+}
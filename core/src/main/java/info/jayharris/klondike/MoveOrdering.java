@@ -0,0 +1,40 @@
+package info.jayharris.klondike;
+
+import java.util.List;
+
+/**
+ * Decides which moves a solver tries first.
+ *
+ * A good ordering finds wins sooner and so visits fewer positions. Orderings may learn as they go: the
+ * solver tells them which moves paid off.
+ */
+public interface MoveOrdering {
+
+    /**
+     * Put the moves in the order they should be tried.
+     *
+     * @param klondike the game, in the position the moves would be made from
+     * @param moves the legal moves, to be sorted in place
+     * @param ply how many moves deep in the search we are
+     */
+    void order(Klondike klondike, List<Move> moves, int ply);
+
+    /**
+     * A move paid off, e.g. it led to a win or to the best line found so far.
+     *
+     * @param move the move
+     * @param ply how many moves deep in the search it was made
+     */
+    void cutoff(Move move, int ply);
+
+    /**
+     * Try moves in the order the {@link MoveGenerator} lists them.
+     */
+    MoveOrdering NONE = new MoveOrdering() {
+        @Override
+        public void order(Klondike klondike, List<Move> moves, int ply) {}
+
+        @Override
+        public void cutoff(Move move, int ply) {}
+    };
+}
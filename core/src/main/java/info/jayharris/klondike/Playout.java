@@ -0,0 +1,525 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Deck;
+import info.jayharris.cardgames.DeckUtils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A game of Klondike kept in flat arrays of {@link CardCodes card codes}, for playing out lots of games
+ * quickly.
+ *
+ * The rules are the same as {@link Klondike}'s, but a playout is meant to be reused: load or copy a
+ * position into it, play it out, and do it again, without making garbage along the way. Moves are ints,
+ * made with {@link #move(Move.Type, int, int, int)}. Once a playout has been made, {@link #init dealing}
+ * a new game, generating and making moves, and checking for a win allocate nothing at all.
+ *
+ * Not thread-safe; give each thread its own.
+ */
+public final class Playout {
+
+    static final int MAX_TABLEAU = 20, MAX_MOVES = 128;
+
+    // deck[deckPos..deckSize) is the deck, dealt from the front; waste[0..wasteSize) is the waste, top last
+    final int[] deck = new int[CardCodes.CARDS], waste = new int[CardCodes.CARDS];
+    int deckPos, deckSize, wasteSize;
+
+    // tableau[i][0..size[i]) bottom to top, the first facedown[i] of which are face down
+    final int[][] tableau = new int[7][MAX_TABLEAU];
+    final int[] size = new int[7], facedown = new int[7];
+
+    // the sum of facedown[], so an endgame with nothing left hidden is cheap to spot
+    int hidden;
+
+    // how many cards are on each suit's foundation
+    final int[] foundation = new int[CardCodes.SUITS];
+
+    int dealCount, maxPasses, passes;
+    boolean didChange;
+
+    // how many moves have been made since the position was loaded
+    int moved;
+
+    // moves found by generate(), and what the rollout policy thinks of each
+    final int[] moves = new int[MAX_MOVES];
+    private final int[] priorities = new int[MAX_MOVES];
+
+    private static final int FOUNDATION = 3, FLIP = 2, TO_TABLEAU = 1, DEAL = 0;
+
+    // for dealing without a Klondike: the standard deck, and where in it each card of the deal comes from
+    private static final int[] STANDARD = new int[CardCodes.CARDS];
+    static final int[] TABLEAU_FROM = new int[28], DECK_FROM = new int[CardCodes.CARDS - 28];
+
+    // where to record each move, if anywhere, and the game to record it under
+    private TraceFile.Writer trace;
+    private long game;
+
+    private final Random shuffler = new Random();
+    private final int[] shuffled = new int[CardCodes.CARDS];
+
+    static {
+        Deck deck = DeckUtils.createStandardDeck();
+        int[] position = new int[CardCodes.CARDS];
+        int n = 0;
+        for (Card card : deck) {
+            STANDARD[n] = CardCodes.code(card);
+            position[STANDARD[n]] = n;
+            ++n;
+        }
+
+        // deal the unshuffled deck the way Klondike does, and see where each card ends up
+        n = 0;
+        for (int i = 0; i < 7; ++i) {
+            for (int j = i; j < 7; ++j) {
+                TABLEAU_FROM[n++] = position[CardCodes.code(j == i ? deck.dealFaceUp() : deck.dealFaceDown())];
+            }
+        }
+        n = 0;
+        for (Card card : deck) {
+            DECK_FROM[n++] = position[CardCodes.code(card)];
+        }
+    }
+
+    /* ************************************************************************
+     * Setting up
+     * ************************************************************************/
+
+    /**
+     * Deal a new game, exactly as {@link Klondike#init(long)} would deal it, without making a
+     * {@code Klondike} or anything else.
+     *
+     * @param rules the rules to play by
+     * @param seed the deal number
+     */
+    public void init(Klondike.Rules rules, long seed) {
+        // Collections.shuffle, move for move
+        shuffler.setSeed(seed);
+        System.arraycopy(STANDARD, 0, shuffled, 0, CardCodes.CARDS);
+        for (int i = CardCodes.CARDS; i > 1; --i) {
+            int j = shuffler.nextInt(i), t = shuffled[i - 1];
+            shuffled[i - 1] = shuffled[j];
+            shuffled[j] = t;
+        }
+
+        int n = 0;
+        for (int i = 0; i < 7; ++i) {
+            size[i] = 0;
+            facedown[i] = i;
+        }
+        hidden = 21;
+        for (int i = 0; i < 7; ++i) {
+            for (int j = i; j < 7; ++j) {
+                tableau[j][size[j]++] = shuffled[TABLEAU_FROM[n++]];
+            }
+        }
+
+        deckPos = 0;
+        deckSize = DECK_FROM.length;
+        for (int i = 0; i < deckSize; ++i) {
+            deck[i] = shuffled[DECK_FROM[i]];
+        }
+        wasteSize = 0;
+        for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+            foundation[suit] = 0;
+        }
+
+        dealCount = rules.getDeal();
+        maxPasses = rules.getPasses();
+        passes = 0;
+        didChange = false;
+        moved = 0;
+    }
+
+    /**
+     * Record every move made from now on, until this is called again with {@code null}.
+     *
+     * @param trace where to record moves
+     * @param game the game number to record them under
+     */
+    void trace(TraceFile.Writer trace, long game) {
+        this.trace = trace;
+        this.game = game;
+    }
+
+    /**
+     * Copy the current position of a game.
+     *
+     * @param klondike the game
+     */
+    public void load(Klondike klondike) {
+        List<Card> pile = klondike.getDeck();
+        deckPos = 0;
+        deckSize = 0;
+        for (Card card : pile) {
+            deck[deckSize++] = CardCodes.code(card);
+        }
+
+        wasteSize = 0;
+        for (Card card : klondike.getWaste()) {
+            waste[wasteSize++] = CardCodes.code(card);
+        }
+
+        hidden = 0;
+        for (int i = 0; i < 7; ++i) {
+            size[i] = facedown[i] = 0;
+            for (Card card : klondike.getTableau(i)) {
+                if (card.isFacedown()) {
+                    ++facedown[i];
+                    ++hidden;
+                }
+                tableau[i][size[i]++] = CardCodes.code(card);
+            }
+        }
+
+        for (Klondike.Foundation f : klondike.getFoundations()) {
+            foundation[CardCodes.suit(f.suit)] = f.size();
+        }
+
+        dealCount = klondike.rules.getDeal();
+        maxPasses = klondike.rules.getPasses();
+        passes = klondike.getPasses();
+        didChange = klondike.didChange();
+        moved = 0;
+    }
+
+    /**
+     * Make this playout a copy of another one.
+     *
+     * @param that the playout to copy
+     */
+    public void copyFrom(Playout that) {
+        System.arraycopy(that.deck, 0, deck, 0, that.deckSize);
+        deckPos = that.deckPos;
+        deckSize = that.deckSize;
+
+        System.arraycopy(that.waste, 0, waste, 0, that.wasteSize);
+        wasteSize = that.wasteSize;
+
+        for (int i = 0; i < 7; ++i) {
+            System.arraycopy(that.tableau[i], 0, tableau[i], 0, that.size[i]);
+            size[i] = that.size[i];
+            facedown[i] = that.facedown[i];
+        }
+        hidden = that.hidden;
+        System.arraycopy(that.foundation, 0, foundation, 0, CardCodes.SUITS);
+
+        dealCount = that.dealCount;
+        maxPasses = that.maxPasses;
+        passes = that.passes;
+        didChange = that.didChange;
+        moved = that.moved;
+    }
+
+    /**
+     * Shuffle the cards the player has never seen -- the face-down cards in the tableaus, and the cards in
+     * the deck until it's first turned over -- among the places where the player hasn't seen them.
+     *
+     * Every card dealt is shown on the waste, so once the deck has been turned over the player has seen it
+     * all, in order, and it stays as it is.
+     *
+     * @param random the source of randomness
+     * @param scratch room for at least 52 cards
+     */
+    void determinize(Random random, int[] scratch) {
+        // the part of the deck that's never been dealt
+        int unseen = passes == 0 ? deckPos : deckSize;
+
+        int n = 0;
+        for (int i = 0; i < 7; ++i) {
+            for (int j = 0; j < facedown[i]; ++j) {
+                scratch[n++] = tableau[i][j];
+            }
+        }
+        for (int j = unseen; j < deckSize; ++j) {
+            scratch[n++] = deck[j];
+        }
+
+        for (int i = n - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1), t = scratch[i];
+            scratch[i] = scratch[j];
+            scratch[j] = t;
+        }
+
+        n = 0;
+        for (int i = 0; i < 7; ++i) {
+            for (int j = 0; j < facedown[i]; ++j) {
+                tableau[i][j] = scratch[n++];
+            }
+        }
+        for (int j = unseen; j < deckSize; ++j) {
+            deck[j] = scratch[n++];
+        }
+    }
+
+    /* ************************************************************************
+     * Moves
+     * ************************************************************************/
+
+    static int move(Move.Type type, int from, int to, int count) {
+        return type.ordinal() << 16 | (from & 0xf) << 12 | (to & 0xf) << 8 | count;
+    }
+
+    static int encode(Move move) {
+        Preconditions.checkArgument(move.deals == 0, "can't play out a move that deals first");
+        return move(move.type, move.from, move.to, move.count);
+    }
+
+    static int type(int move) {
+        return move >>> 16;
+    }
+
+    static int from(int move) {
+        return (move >>> 12) & 0xf;
+    }
+
+    static int to(int move) {
+        return (move >>> 8) & 0xf;
+    }
+
+    static int count(int move) {
+        return move & 0xff;
+    }
+
+    public boolean won() {
+        for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+            if (foundation[suit] < CardCodes.RANKS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of cards on the foundations
+     */
+    public int foundationCards() {
+        int count = 0;
+        for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+            count += foundation[suit];
+        }
+        return count;
+    }
+
+    /**
+     * @return {@code true} iff the deck and waste are empty and nothing on the tableaus is face down, so
+     *         that the game is as good as won
+     * @see Klondike#isTriviallyWon()
+     */
+    boolean triviallyWon() {
+        return hidden == 0 && deckPos == deckSize && wasteSize == 0;
+    }
+
+    boolean canRestartDeck() {
+        return deckPos == deckSize && wasteSize > 0 && didChange && passes + 1 < maxPasses;
+    }
+
+    /**
+     * Make a move. The move must be legal.
+     *
+     * @param move the move
+     */
+    void apply(int move) {
+        int from = from(move), to = to(move), card, flipped = 0;
+
+        ++moved;
+        switch (type(move)) {
+            case 0:             // Move.Type.DEAL
+                if (deckPos == deckSize) {
+                    flipped = wasteSize;
+                    System.arraycopy(waste, 0, deck, 0, wasteSize);
+                    deckPos = 0;
+                    deckSize = wasteSize;
+                    wasteSize = 0;
+                    ++passes;
+                    didChange = false;
+                    if (trace != null) {
+                        record(move, 1, 0, TraceFile.NONE, flipped);
+                    }
+                }
+                else {
+                    for (int i = 0; i < dealCount && deckPos < deckSize; ++i) {
+                        waste[wasteSize++] = deck[deckPos++];
+                        ++flipped;
+                    }
+                    if (trace != null) {
+                        record(move, 0, 1, waste[wasteSize - 1], flipped);
+                    }
+                }
+                return;
+            case 1:             // Move.Type.WASTE_TO_TABLEAU
+                card = tableau[to][size[to]++] = waste[--wasteSize];
+                if (trace != null) {
+                    record(move, 1, 2 + to, card, 0);
+                }
+                break;
+            case 2:             // Move.Type.WASTE_TO_FOUNDATION
+                card = waste[--wasteSize];
+                ++foundation[CardCodes.suit(card)];
+                if (trace != null) {
+                    record(move, 1, 9 + CardCodes.suit(card), card, 0);
+                }
+                break;
+            case 3:             // Move.Type.TABLEAU_TO_FOUNDATION
+                card = tableau[from][--size[from]];
+                ++foundation[CardCodes.suit(card)];
+                flipped = reveal(from);
+                if (trace != null) {
+                    record(move, 2 + from, 9 + CardCodes.suit(card), card, flipped);
+                }
+                break;
+            default:            // Move.Type.TABLEAU_TO_TABLEAU
+                int n = count(move);
+                card = tableau[from][size[from] - n];
+                System.arraycopy(tableau[from], size[from] - n, tableau[to], size[to], n);
+                size[from] -= n;
+                size[to] += n;
+                flipped = reveal(from);
+                if (trace != null) {
+                    record(move, 2 + from, 2 + to, card, flipped);
+                }
+                break;
+        }
+        didChange = true;
+    }
+
+    /**
+     * @return 1 if the top card of the tableau was face down and has been turned up, otherwise 0
+     */
+    private int reveal(int i) {
+        if (facedown[i] > 0 && facedown[i] == size[i]) {
+            --facedown[i];
+            --hidden;
+            return 1;
+        }
+        return 0;
+    }
+
+    private void record(int move, int from, int to, int card, int flipped) {
+        try {
+            trace.write(game, moved - 1, type(move), from, to, card, flipped, passes);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private boolean accepts(int i, int card) {
+        return size[i] == 0 ? CardCodes.rank(card) == CardCodes.RANKS - 1 : CardCodes.stacks(card, tableau[i][size[i] - 1]);
+    }
+
+    private boolean foundationAccepts(int card) {
+        return foundation[CardCodes.suit(card)] == CardCodes.rank(card);
+    }
+
+    /**
+     * Find the moves the rollout policy would consider: everything onto the foundations, the waste card
+     * onto the tableaus, whole stacks of face-up cards onto other tableaus, and dealing. Moving part of a
+     * stack is left out, which keeps random play from going around in circles.
+     *
+     * @return the number of moves, which are in {@link #moves}
+     */
+    int generate() {
+        int n = 0, card;
+
+        if (wasteSize > 0) {
+            card = waste[wasteSize - 1];
+            if (foundationAccepts(card)) {
+                priorities[n] = FOUNDATION;
+                moves[n++] = move(Move.Type.WASTE_TO_FOUNDATION, 0, 0, 1);
+            }
+            for (int j = 0; j < 7; ++j) {
+                if (accepts(j, card)) {
+                    priorities[n] = TO_TABLEAU;
+                    moves[n++] = move(Move.Type.WASTE_TO_TABLEAU, 0, j, 1);
+                }
+            }
+        }
+
+        for (int i = 0; i < 7; ++i) {
+            if (size[i] == 0) {
+                continue;
+            }
+
+            card = tableau[i][size[i] - 1];
+            if (foundationAccepts(card)) {
+                priorities[n] = FOUNDATION;
+                moves[n++] = move(Move.Type.TABLEAU_TO_FOUNDATION, i, 0, 1);
+            }
+
+            int faceup = size[i] - facedown[i];
+            card = tableau[i][facedown[i]];
+            for (int j = 0; j < 7; ++j) {
+                if (i == j || !accepts(j, card) || (size[j] == 0 && facedown[i] == 0)) {
+                    continue;
+                }
+                priorities[n] = facedown[i] > 0 ? FLIP : TO_TABLEAU;
+                moves[n++] = move(Move.Type.TABLEAU_TO_TABLEAU, i, j, faceup);
+            }
+        }
+
+        if (deckPos < deckSize || canRestartDeck()) {
+            priorities[n] = DEAL;
+            moves[n++] = move(Move.Type.DEAL, 0, 0, 0);
+        }
+        return n;
+    }
+
+    /**
+     * Play the game out: keep making one of the most promising moves, chosen at random, until the game is
+     * won or there's nothing left to do. Once the game is {@link #triviallyWon() as good as won}, the rest
+     * of the cards go straight to the foundations, unless moves are being traced.
+     *
+     * @param random the source of randomness
+     * @param maxMoves give up after this many moves
+     * @return {@code true} iff the game was won
+     */
+    public boolean rollout(Random random, int maxMoves) {
+        for (int step = 0; step < maxMoves; ++step) {
+            if (won()) {
+                return true;
+            }
+            if (trace == null && triviallyWon()) {
+                int left = CardCodes.CARDS;
+                for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+                    left -= foundation[suit];
+                }
+                // one move a card, as a rollout would have played them
+                if (step + left > maxMoves) {
+                    return false;
+                }
+                for (int i = 0; i < 7; ++i) {
+                    size[i] = 0;
+                }
+                for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+                    foundation[suit] = CardCodes.RANKS;
+                }
+                moved += left;
+                didChange = true;
+                return true;
+            }
+            int n = generate();
+            if (n == 0) {
+                return false;
+            }
+
+            int best = -1, ties = 0, choice = 0;
+            for (int i = 0; i < n; ++i) {
+                if (priorities[i] > best) {
+                    best = priorities[i];
+                    ties = 1;
+                    choice = i;
+                }
+                else if (priorities[i] == best && random.nextInt(++ties) == 0) {
+                    choice = i;
+                }
+            }
+            apply(moves[choice]);
+        }
+        return won();
+    }
+}
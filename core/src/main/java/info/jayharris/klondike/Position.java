@@ -0,0 +1,141 @@
+package info.jayharris.klondike;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+import info.jayharris.cardgames.Card;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The canonical form of a position in a game of {@link Klondike}.
+ *
+ * Two games that differ only in the order of their tableaus are the same position, and so are two games
+ * that differ only by swapping two suits of the same color whose foundations are equally full. Every
+ * game in such a family of equivalent positions has the same canonical form, so the solver only has to
+ * explore one of them.
+ */
+public final class Position {
+
+    private static final int FACEDOWN = 0x40;
+    private static final HashFunction hashFunction = Hashing.murmur3_128();
+    private static final Comparator<byte[]> lexicographic = UnsignedBytes.lexicographicalComparator();
+
+    private final byte[] key;
+    private final long hash;
+
+    private Position(byte[] key) {
+        this.key = key;
+        this.hash = hashFunction.hashBytes(key).asLong();
+    }
+
+    /**
+     * Find the canonical form of the current position.
+     *
+     * @param klondike the game
+     * @return the canonical position
+     */
+    public static Position of(Klondike klondike) {
+        int[] heights = new int[CardCodes.SUITS];
+        for (Klondike.Foundation foundation : klondike.getFoundations()) {
+            heights[CardCodes.suit(foundation.suit)] = foundation.size();
+        }
+
+        boolean swapBlack = heights[0] == heights[1], swapRed = heights[2] == heights[3];
+        byte[] best = encode(klondike, heights, 0);
+        for (int swap = 1; swap < 4; ++swap) {
+            if (((swap & 1) != 0 && !swapBlack) || ((swap & 2) != 0 && !swapRed)) {
+                continue;
+            }
+            byte[] candidate = encode(klondike, heights, swap);
+            if (lexicographic.compare(candidate, best) < 0) {
+                best = candidate;
+            }
+        }
+        return new Position(best);
+    }
+
+    /**
+     * The 64-bit hash of the canonical form of the current position.
+     *
+     * @param klondike the game
+     * @return the hash
+     */
+    public static long hash(Klondike klondike) {
+        return of(klondike).hash;
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    /**
+     * Write out the position with suits relabeled by {@code swap}: bit 0 swaps clubs and spades, bit 1
+     * swaps diamonds and hearts.
+     */
+    private static byte[] encode(Klondike klondike, int[] heights, int swap) {
+        byte[][] tableaus = new byte[7][];
+        int size = 8 + klondike.getDeck().size() + klondike.getWaste().size();
+
+        for (int i = 0; i < 7; ++i) {
+            tableaus[i] = encode(klondike.getTableau(i), swap);
+            size += tableaus[i].length + 1;
+        }
+        Arrays.sort(tableaus, lexicographic);
+
+        byte[] key = new byte[size];
+        int k = 0;
+
+        // once we can pass through the deck forever, how many times we already have doesn't matter
+        key[k++] = (byte) (klondike.rules.getPasses() == Integer.MAX_VALUE ? 0 : klondike.getPasses());
+        key[k++] = (byte) (klondike.didChange() ? 1 : 0);
+        for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+            key[k++] = (byte) heights[suit ^ swapMask(suit, swap)];
+        }
+
+        key[k++] = (byte) klondike.getDeck().size();
+        for (Card card : klondike.getDeck()) {
+            key[k++] = code(card, swap);
+        }
+        key[k++] = (byte) klondike.getWaste().size();
+        for (Card card : klondike.getWaste()) {
+            key[k++] = code(card, swap);
+        }
+        for (byte[] tableau : tableaus) {
+            key[k++] = (byte) tableau.length;
+            System.arraycopy(tableau, 0, key, k, tableau.length);
+            k += tableau.length;
+        }
+        return key;
+    }
+
+    private static byte[] encode(List<Card> tableau, int swap) {
+        byte[] bytes = new byte[tableau.size()];
+        int k = 0;
+        for (Card card : tableau) {
+            bytes[k++] = (byte) (code(card, swap) | (card.isFacedown() ? FACEDOWN : 0));
+        }
+        return bytes;
+    }
+
+    private static byte code(Card card, int swap) {
+        int code = CardCodes.code(card), suit = CardCodes.suit(code);
+        return (byte) CardCodes.code(suit ^ swapMask(suit, swap), CardCodes.rank(code));
+    }
+
+    private static int swapMask(int suit, int swap) {
+        return (swap >> (suit / 2)) & 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Position && Arrays.equals(key, ((Position) o).key);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,174 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates how likely each move is to lead to a win, without peeking at cards the player can't see.
+ *
+ * For each of many "determinizations" -- guesses at where the face-down tableau cards and the cards in
+ * the deck really are, consistent with everything the player can see -- every candidate move is made and
+ * the game is {@link Playout#rollout played out} quickly. A move's value is the fraction of those
+ * playouts that were won. Every move is tried against the same determinizations, which makes the
+ * comparison between them fairer than the raw numbers would suggest.
+ *
+ * Determinizations are shared out among a pool of threads. Each thread keeps its own random number
+ * generator and game buffers, and the generator is reseeded for each batch, so the results depend only
+ * on the seed and not on how the batches happen to be scheduled.
+ */
+public class RolloutEvaluator {
+
+    static final int MAX_ROLLOUT_MOVES = 1000;
+    private static final int BATCH = 64;
+
+    private final ExecutorService executor;
+    private final int threads, determinizations;
+    private long seed;
+
+    private final MoveGenerator generator = new MoveGenerator();
+
+    private static final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * @param threads how many threads to play out games on
+     * @param determinizations how many times to guess at the hidden cards for each evaluation
+     * @param seed where to start the random number generators
+     */
+    public RolloutEvaluator(int threads, int determinizations, long seed) {
+        this.threads = threads;
+        this.determinizations = determinizations;
+        this.seed = seed;
+        this.executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rollout-%d").build());
+    }
+
+    /**
+     * Estimate the chance of winning after each legal move in the current position.
+     *
+     * @param klondike the game, which isn't changed
+     * @return the win rate after each move, best first
+     */
+    public Map<Move, Double> evaluate(Klondike klondike) {
+        final List<Move> candidates = generator.generate(klondike);
+        final int[] encoded = new int[candidates.size()];
+        for (int i = 0; i < encoded.length; ++i) {
+            encoded[i] = Playout.encode(candidates.get(i));
+        }
+
+        final Playout base = new Playout();
+        base.load(klondike);
+
+        List<Future<long[]>> futures = Lists.newArrayList();
+        for (int start = 0; start < determinizations; start += BATCH) {
+            final int count = Math.min(BATCH, determinizations - start);
+            final long batchSeed = seed + start;
+            futures.add(executor.submit(new Callable<long[]>() {
+                @Override
+                public long[] call() {
+                    return workers.get().run(base, encoded, count, batchSeed);
+                }
+            }));
+        }
+
+        final long[] wins = new long[encoded.length];
+        for (Future<long[]> future : futures) {
+            long[] batch = getUninterruptibly(future);
+            for (int i = 0; i < wins.length; ++i) {
+                wins[i] += batch[i];
+            }
+        }
+
+        List<Integer> order = Lists.newArrayList();
+        for (int i = 0; i < wins.length; ++i) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(wins[b], wins[a]);
+            }
+        });
+
+        ImmutableMap.Builder<Move, Double> values = ImmutableMap.builder();
+        for (int i : order) {
+            values.put(candidates.get(i), determinizations == 0 ? 0.0 : (double) wins[i] / determinizations);
+        }
+        return values.build();
+    }
+
+    /**
+     * Start the random number generators over, so the evaluations from here on are the same as a new
+     * evaluator's with this seed. Don't call it during an evaluation.
+     *
+     * @param seed where to start the random number generators
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Stop the worker threads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    private static <T> T getUninterruptibly(Future<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Everything one thread needs to play out games, allocated once.
+     */
+    private static class Worker {
+        final Random random = new Random();
+        final Playout start = new Playout(), game = new Playout();
+        final int[] scratch = new int[CardCodes.CARDS];
+
+        long[] run(Playout base, int[] moves, int count, long seed) {
+            long[] wins = new long[moves.length];
+            random.setSeed(seed);
+
+            for (int d = 0; d < count; ++d) {
+                start.copyFrom(base);
+                start.determinize(random, scratch);
+                for (int i = 0; i < moves.length; ++i) {
+                    game.copyFrom(start);
+                    game.apply(moves[i]);
+                    if (game.rollout(random, MAX_ROLLOUT_MOVES)) {
+                        ++wins[i];
+                    }
+                }
+            }
+            return wins;
+        }
+    }
+}
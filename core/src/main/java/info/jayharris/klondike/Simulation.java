@@ -0,0 +1,213 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Plays seeded deals of Klondike from start to finish according to a {@link Policy}.
+ *
+ * The same seed always plays out the same way, so a range of deals can be split up and simulated
+ * anywhere, in any order, and the results put back together.
+ *
+ * Not thread-safe; give each thread its own, and {@link #shutdown()} it when it's done.
+ */
+public class Simulation {
+
+    static final int MAX_MOVES = 1000;
+    static final int ROLLOUT_DETERMINIZATIONS = 100;
+    static final int BEAM_WIDTH = 16;
+
+    public enum Policy {
+        /**
+         * The quick, greedy {@link Playout#rollout rollout policy}: foundation moves first, then moves that
+         * turn up a card, then anything else, breaking ties at random.
+         */
+        GREEDY,
+
+        /**
+         * Make whichever move the {@link RolloutEvaluator} thinks is most likely to win. Much slower, and
+         * much stronger.
+         */
+        ROLLOUT,
+
+        /**
+         * Play the best line a {@link BeamSearchPlayer} can find. Cheats: it knows where every card is.
+         */
+        BEAM
+    }
+
+    private final Klondike.Rules rules;
+    private final Policy policy;
+    private final Playout playout = new Playout();
+    private final Random random = new Random();
+    private RolloutEvaluator evaluator;
+    private BeamSearchPlayer beam;
+
+    public Simulation(Klondike.Rules rules) {
+        this(rules, Policy.GREEDY);
+    }
+
+    /**
+     * @param rules the rules to play by
+     * @param policy how to choose moves
+     */
+    public Simulation(Klondike.Rules rules, Policy policy) {
+        this.rules = rules;
+        this.policy = policy;
+    }
+
+    /**
+     * Play one deal.
+     *
+     * @param seed the deal number
+     * @return how it went
+     */
+    public Result play(long seed) {
+        if (policy == Policy.GREEDY) {
+            // nothing but the result is allocated
+            playout.init(rules, seed);
+            random.setSeed(seed);
+            boolean won = playout.rollout(random, MAX_MOVES);
+            return new Result(seed, won, playout.moved, playout.foundationCards());
+        }
+
+        Klondike klondike = new Klondike(rules);
+        klondike.init(seed);
+        if (policy == Policy.ROLLOUT) {
+            return playWithEvaluator(klondike, seed);
+        }
+        else {
+            return playWithBeamSearch(klondike, seed);
+        }
+    }
+
+    /**
+     * Play one deal with the greedy policy, recording every move.
+     *
+     * @param seed the deal number
+     * @param trace where to record the moves
+     * @return how it went
+     */
+    public Result play(long seed, TraceFile.Writer trace) {
+        Preconditions.checkState(policy == Policy.GREEDY, "only greedy games can be traced");
+        playout.init(rules, seed);
+        playout.trace(trace, seed);
+        try {
+            random.setSeed(seed);
+            boolean won = playout.rollout(random, MAX_MOVES);
+            return new Result(seed, won, playout.moved, playout.foundationCards());
+        }
+        finally {
+            playout.trace(null, 0);
+        }
+    }
+
+    private Result playWithEvaluator(Klondike klondike, long seed) {
+        if (evaluator == null) {
+            evaluator = new RolloutEvaluator(1, ROLLOUT_DETERMINIZATIONS, seed);
+        }
+        // reseeded by the deal, so the deal plays out the same no matter what was played before it
+        evaluator.setSeed(seed);
+
+        Set<Long> seen = Sets.newHashSet(Position.hash(klondike));
+        int moves = 0;
+        while (moves < MAX_MOVES && !klondike.won() && playBest(klondike, evaluator, seen)) {
+            ++moves;
+        }
+
+        return new Result(seed, klondike.won(), moves, foundationCards(klondike));
+    }
+
+    private Result playWithBeamSearch(Klondike klondike, long seed) {
+        if (beam == null) {
+            beam = new BeamSearchPlayer(BEAM_WIDTH, WeightedEvaluation.DEFAULT, MAX_MOVES);
+        }
+
+        BeamSearchPlayer.Result result = beam.play(klondike);
+        for (Move move : result.moves) {
+            klondike.apply(move);
+        }
+        return new Result(seed, result.won, result.moves.size(), foundationCards(klondike));
+    }
+
+    private static int foundationCards(Klondike klondike) {
+        int count = 0;
+        for (Klondike.Foundation foundation : klondike.getFoundations()) {
+            count += foundation.size();
+        }
+        return count;
+    }
+
+
+    /**
+     * Make the best move that doesn't go back to a position we've already been in. Without that, when
+     * every move looks equally hopeless, we'd shuffle the same cards back and forth forever.
+     *
+     * @return {@code false} iff there was no such move
+     */
+    private static boolean playBest(Klondike klondike, RolloutEvaluator evaluator, Set<Long> seen) {
+        for (Move move : evaluator.evaluate(klondike).keySet()) {
+            if (!klondike.apply(move)) {
+                continue;
+            }
+            if (seen.add(Position.hash(klondike))) {
+                return true;
+            }
+            klondike.undo();
+        }
+        return false;
+    }
+
+    /**
+     * Stop the threads the {@link Policy#ROLLOUT rollout policy} plays out games on, if it started any.
+     */
+    public void shutdown() {
+        if (evaluator != null) {
+            evaluator.shutdown();
+            evaluator = null;
+        }
+    }
+
+    public Klondike.Rules getRules() {
+        return rules;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public static class Result {
+        public final long seed;
+        public final boolean won;
+        public final int moves, foundationCards;
+
+        public Result(long seed, boolean won, int moves, int foundationCards) {
+            this.seed = seed;
+            this.won = won;
+            this.moves = moves;
+            this.foundationCards = foundationCards;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Result)) {
+                return false;
+            }
+            Result that = (Result) o;
+            return seed == that.seed && won == that.won && moves == that.moves && foundationCards == that.foundationCards;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (seed ^ (seed >>> 32)) * 31 + moves;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d\t%s\t%d\t%d", seed, won ? "won" : "lost", moves, foundationCards);
+        }
+    }
+}
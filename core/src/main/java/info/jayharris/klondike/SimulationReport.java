@@ -0,0 +1,76 @@
+package info.jayharris.klondike;
+
+/**
+ * Totals over a batch of {@link Simulation simulated} games. Reports for separate batches can be merged.
+ */
+public class SimulationReport {
+
+    private long games, wins, moves, foundationCards;
+
+    public void add(Simulation.Result result) {
+        ++games;
+        if (result.won) {
+            ++wins;
+        }
+        moves += result.moves;
+        foundationCards += result.foundationCards;
+    }
+
+    public void merge(SimulationReport that) {
+        games += that.games;
+        wins += that.wins;
+        moves += that.moves;
+        foundationCards += that.foundationCards;
+    }
+
+    /**
+     * Set the totals, as read back from a checkpoint.
+     */
+    void restore(long games, long wins, long moves, long foundationCards) {
+        this.games = games;
+        this.wins = wins;
+        this.moves = moves;
+        this.foundationCards = foundationCards;
+    }
+
+    public long getGames() {
+        return games;
+    }
+
+    public long getWins() {
+        return wins;
+    }
+
+    public long getMoves() {
+        return moves;
+    }
+
+    public long getFoundationCards() {
+        return foundationCards;
+    }
+
+    public double winRate() {
+        return games == 0 ? 0.0 : (double) wins / games;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SimulationReport)) {
+            return false;
+        }
+        SimulationReport that = (SimulationReport) o;
+        return games == that.games && wins == that.wins && moves == that.moves && foundationCards == that.foundationCards;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (games * 31 + wins);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d games, %d won (%.2f%%), %.1f moves/game, %.1f foundation cards/game",
+                games, wins, 100.0 * winRate(), games == 0 ? 0.0 : (double) moves / games,
+                games == 0 ? 0.0 : (double) foundationCards / games);
+    }
+}
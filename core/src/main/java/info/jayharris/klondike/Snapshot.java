@@ -0,0 +1,209 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Suit;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An unchangeable copy of a game of {@link Klondike} as it stood at one moment.
+ *
+ * Snapshots are safe to share between threads. A game that {@link Klondike#publishSnapshots() publishes
+ * snapshots} makes a new one after every change, so any number of other threads can look at the game --
+ * to draw it, to think about hints, to count things -- without locking it and without ever seeing it
+ * halfway through a move.
+ *
+ * Cards are stored as {@link CardCodes card codes}; the {@code Card}s handed out are new each time, so
+ * flipping them does nothing to the snapshot.
+ */
+public final class Snapshot {
+
+    static final byte FACEDOWN = (byte) 0x80;
+
+    /**
+     * The number of piles: the deck, the waste, the seven tableaus and the four foundations.
+     */
+    static final int PILES = 13;
+
+    private final long version;
+    private final Klondike.Rules rules;
+    private final byte[] deck, waste;
+    private final byte[][] tableaus;
+    private final int[] foundations;
+    private final int passes;
+    private final boolean won, gameOver;
+
+    private Snapshot(Klondike klondike, long version) {
+        this.version = version;
+        this.rules = klondike.rules;
+        this.deck = codes(klondike.getDeck());
+        this.waste = codes(klondike.getWaste());
+
+        this.tableaus = new byte[7][];
+        for (int i = 0; i < 7; ++i) {
+            tableaus[i] = codes(klondike.getTableau(i));
+        }
+
+        this.foundations = new int[CardCodes.SUITS];
+        for (Klondike.Foundation foundation : klondike.getFoundations()) {
+            foundations[CardCodes.suit(foundation.suit)] = foundation.size();
+        }
+
+        this.passes = klondike.getPasses();
+        this.won = klondike.won();
+        this.gameOver = klondike.isGameOver();
+    }
+
+    /**
+     * Copy the current position of a game. Only the thread playing the game may do this.
+     *
+     * @param klondike the game
+     * @param version the number of changes made to the game so far
+     * @return the snapshot
+     */
+    static Snapshot of(Klondike klondike, long version) {
+        return new Snapshot(klondike, version);
+    }
+
+    private static byte[] codes(List<Card> pile) {
+        byte[] codes = new byte[pile.size()];
+        int i = 0;
+        for (Card card : pile) {
+            codes[i++] = (byte) (CardCodes.code(card) | (card.isFacedown() ? FACEDOWN : 0));
+        }
+        return codes;
+    }
+
+    private static List<Card> cards(byte[] codes) {
+        ImmutableList.Builder<Card> cards = ImmutableList.builder();
+        for (byte b : codes) {
+            int code = b & ~FACEDOWN;
+            cards.add(new Card(CardCodes.toRank(CardCodes.rank(code)), CardCodes.toSuit(CardCodes.suit(code)),
+                    (b & FACEDOWN) != 0));
+        }
+        return cards.build();
+    }
+
+    /**
+     * @return the number of changes that had been made to the game when this snapshot was taken; a later
+     *         snapshot of the same game has a higher version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public Klondike.Rules getRules() {
+        return rules;
+    }
+
+    /**
+     * @return the cards in the deck, next to be dealt first, all face down
+     */
+    public List<Card> getDeck() {
+        return cards(deck);
+    }
+
+    public int getDeckSize() {
+        return deck.length;
+    }
+
+    /**
+     * @return the cards in the waste, top card last
+     */
+    public List<Card> getWaste() {
+        return cards(waste);
+    }
+
+    /**
+     * @param index which tableau, from 0 to 6
+     * @return the cards in the tableau, top card last
+     */
+    public List<Card> getTableau(int index) {
+        Preconditions.checkElementIndex(index, 7);
+        return cards(tableaus[index]);
+    }
+
+    /**
+     * @param suit the suit
+     * @return the number of cards on the suit's foundation
+     */
+    public int getFoundationSize(Suit suit) {
+        return foundations[CardCodes.suit(suit)];
+    }
+
+    /**
+     * @param suit the suit
+     * @return the cards on the suit's foundation, ace first
+     */
+    public List<Card> getFoundation(Suit suit) {
+        ImmutableList.Builder<Card> cards = ImmutableList.builder();
+        for (int rank = 0; rank < getFoundationSize(suit); ++rank) {
+            cards.add(new Card(CardCodes.toRank(rank), suit));
+        }
+        return cards.build();
+    }
+
+    /**
+     * The codes of the cards in a pile, with {@link #FACEDOWN} set on face-down cards.
+     *
+     * @param index 0 for the deck, 1 for the waste, 2 to 8 for the tableaus and 9 to 12 for the
+     *              foundations, in {@link CardCodes} suit order
+     * @return a copy of the pile, top card last
+     */
+    byte[] pile(int index) {
+        Preconditions.checkElementIndex(index, PILES);
+        if (index == 0) {
+            return deck.clone();
+        }
+        else if (index == 1) {
+            return waste.clone();
+        }
+        else if (index < 9) {
+            return tableaus[index - 2].clone();
+        }
+        else {
+            int suit = index - 9;
+            byte[] pile = new byte[foundations[suit]];
+            for (int rank = 0; rank < pile.length; ++rank) {
+                pile[rank] = (byte) CardCodes.code(suit, rank);
+            }
+            return pile;
+        }
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    public boolean won() {
+        return won;
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * @return {@code true} iff the two snapshots show the same cards in the same places, whatever their
+     *         versions
+     */
+    public boolean samePosition(Snapshot that) {
+        return Arrays.equals(deck, that.deck) && Arrays.equals(waste, that.waste) &&
+                Arrays.deepEquals(tableaus, that.tableaus) && Arrays.equals(foundations, that.foundations) &&
+                passes == that.passes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Snapshot[version=").append(version)
+                .append(", deck=").append(deck.length)
+                .append(", waste=").append(getWaste());
+        for (int i = 0; i < 7; ++i) {
+            sb.append(", ").append(getTableau(i));
+        }
+        return sb.append(", foundations=").append(Arrays.toString(foundations)).append("]").toString();
+    }
+}
@@ -0,0 +1,231 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Depth-first search for a winning line in a game of {@link Klondike}, with perfect knowledge of where
+ * every card is.
+ *
+ * Positions are deduplicated by their {@link Position canonical form}, so equivalent positions reached by
+ * different lines are only explored once. Visited positions are kept in a {@link TranspositionTable} of
+ * fixed size, so a long search may forget some of them and explore them again, but it won't run out of
+ * memory. The game is left exactly as it was found.
+ *
+ * A search that runs out of nodes can be {@link #resume(Klondike) resumed}. When a search is aborted, the
+ * positions it was in the middle of exploring are taken back out of the table, so everything left in it
+ * is known to be a dead end; save the table, load it again later, and carry on from there.
+ *
+ * Every search is counted in the calling thread's {@link SolverProfile}; see {@link SolverStats} for the
+ * totals.
+ */
+public class Solver {
+
+    public enum Status { SOLVED, UNSOLVABLE, ABORTED }
+
+    static final long DEFAULT_TABLE_BYTES = 16L << 20;
+
+    private final MoveGenerator generator;
+    private final MoveOrdering ordering;
+    private final long maxNodes;
+    private final TranspositionTable visited;
+
+    private Set<Long> path;            // positions on the current line, in case the table forgot them
+    private LinkedList<Move> line;
+    private long nodes;
+    private SolverProfile profile;
+
+    private static final Logger logger = LoggerFactory.getLogger(Solver.class);
+
+    public Solver() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxNodes give up after visiting this many positions
+     */
+    public Solver(long maxNodes) {
+        this(maxNodes, new TranspositionTable(DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED));
+    }
+
+    /**
+     * @param maxNodes give up after visiting this many positions
+     * @param visited where to keep track of positions we've already seen
+     */
+    public Solver(long maxNodes, TranspositionTable visited) {
+        this(maxNodes, visited, new HeuristicOrdering());
+    }
+
+    /**
+     * @param maxNodes give up after visiting this many positions
+     * @param visited where to keep track of positions we've already seen
+     * @param ordering which moves to try first
+     */
+    public Solver(long maxNodes, TranspositionTable visited, MoveOrdering ordering) {
+        this.generator = new MoveGenerator(true);
+        this.ordering = ordering;
+        this.maxNodes = maxNodes;
+        this.visited = visited;
+    }
+
+    /**
+     * Look for a way to win the game from the current position.
+     *
+     * @param klondike the game
+     * @return the result of the search
+     */
+    public Result solve(Klondike klondike) {
+        visited.clear();
+        return resume(klondike);
+    }
+
+    /**
+     * Look for a way to win the game from the current position, skipping the positions already in the
+     * table. The table should hold what an earlier, aborted search of the same position left behind.
+     *
+     * @param klondike the game
+     * @return the result of the search
+     */
+    public Result resume(Klondike klondike) {
+        path = Sets.newHashSet();
+        line = Lists.newLinkedList();
+        nodes = 0;
+        profile = SolverProfile.current();
+
+        Status status;
+        boolean searching = klondike.setSearching(true);
+        boolean solved;
+        long start = System.nanoTime();
+        try {
+            solved = search(klondike);
+        }
+        finally {
+            klondike.setSearching(searching);
+            profile.searched(System.nanoTime() - start);
+        }
+
+        if (solved) {
+            status = Status.SOLVED;
+        }
+        else {
+            status = nodes > maxNodes ? Status.ABORTED : Status.UNSOLVABLE;
+        }
+
+        logger.debug(String.format("solve(): %s after %d nodes, %s", status, nodes, visited));
+        Result result = new Result(status, line, nodes);
+        path = null;
+        line = null;
+        profile = null;
+        return result;
+    }
+
+    private boolean search(Klondike klondike) {
+        if (klondike.won()) {
+            return true;
+        }
+        if (klondike.isTriviallyWon()) {
+            line.addAll(klondike.finishingMoves());
+            return true;
+        }
+        int ply = line.size();
+        profile.node(ply);
+        if (++nodes > maxNodes) {
+            return false;
+        }
+
+        // time the phases of one node in every few
+        boolean timed = SolverProfile.sampled(nodes);
+        long time = timed ? System.nanoTime() : 0;
+
+        long key = Position.hash(klondike);
+        if (timed) {
+            time = profile.time(SolverProfile.Phase.HASH, time);
+        }
+        boolean fresh = visited.putIfAbsent(key, ply, 0xffff - Math.min(ply, 0xffff));
+        profile.lookup(!fresh);
+        if (timed) {
+            time = profile.time(SolverProfile.Phase.LOOKUP, time);
+            profile.flush();
+        }
+        if (!fresh || !path.add(key)) {
+            return false;
+        }
+
+        try {
+            List<Move> moves = generator.generate(klondike);
+            ordering.order(klondike, moves, ply);
+            profile.expanded(moves.size());
+            if (timed) {
+                profile.time(SolverProfile.Phase.GENERATE, time);
+            }
+
+            for (Move move : moves) {
+                if (timed) {
+                    time = System.nanoTime();
+                }
+                boolean legal = klondike.apply(move);
+                if (timed) {
+                    profile.time(SolverProfile.Phase.APPLY, time);
+                }
+                if (!legal) {
+                    continue;
+                }
+                line.addLast(move);
+                boolean solved = search(klondike);
+                if (timed) {
+                    time = System.nanoTime();
+                }
+                klondike.undo();
+                if (timed) {
+                    profile.time(SolverProfile.Phase.UNDO, time);
+                }
+                if (solved) {
+                    ordering.cutoff(move, ply);
+                    return true;
+                }
+                line.removeLast();
+                if (nodes > maxNodes) {
+                    return false;
+                }
+            }
+            return false;
+        }
+        finally {
+            path.remove(key);
+            if (nodes > maxNodes) {
+                // we never finished with this position, so don't write it off
+                visited.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the table of positions this solver has visited
+     */
+    public TranspositionTable getTable() {
+        return visited;
+    }
+
+    public static class Result {
+        public final Status status;
+        public final List<Move> moves;
+        public final long nodes;
+
+        Result(Status status, List<Move> moves, long nodes) {
+            this.status = status;
+            this.moves = ImmutableList.copyOf(moves);
+            this.nodes = nodes;
+        }
+
+        public boolean solved() {
+            return status == Status.SOLVED;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package info.jayharris.klondike;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts what the {@link Solver}s on one thread spend their time on.
+ *
+ * Every node is counted, along with table lookups and hits, moves generated and the deepest line
+ * searched. The time spent in each {@link Phase} is only measured at one node in
+ * {@link #SAMPLE_EVERY}, and scaled up, since reading the clock at every step would cost more than some
+ * of the steps.
+ *
+ * Each thread has its own profile, which only it writes to, so there's no locking and no contention.
+ * Counts are kept in plain fields and {@link #flush() copied} where other threads -- {@link SolverStats},
+ * say -- can see them every {@link #SAMPLE_EVERY} nodes and at the end of every search, so what they see
+ * may be a moment out of date, but is never torn.
+ */
+public final class SolverProfile {
+
+    /**
+     * Where a solver's time goes.
+     */
+    public enum Phase {
+        /** Generating and ordering moves. */
+        GENERATE,
+        /** Working out the canonical hash of a position. */
+        HASH,
+        /** Looking positions up in the transposition table. */
+        LOOKUP,
+        /** Making moves. */
+        APPLY,
+        /** Taking moves back. */
+        UNDO
+    }
+
+    static final int SAMPLE_EVERY = 64;
+
+    static final int NODES = 0, LOOKUPS = 1, HITS = 2, EXPANDED = 3, MOVES = 4, MAX_DEPTH = 5, SEARCHES = 6,
+            SEARCH_NANOS = 7, PHASE_NANOS = 8, COUNTERS = PHASE_NANOS + Phase.values().length;
+
+    /*
+     * The profiles of the threads still running, and the counts of those that have finished, so a pool that
+     * replaces its threads doesn't leave a profile behind for every thread it ever had.
+     */
+    private static final List<SolverProfile> profiles = new CopyOnWriteArrayList<>();
+    private static final long[] retired = new long[COUNTERS];
+
+    private static final ThreadLocal<SolverProfile> current = new ThreadLocal<SolverProfile>() {
+        @Override
+        protected SolverProfile initialValue() {
+            SolverProfile profile = new SolverProfile();
+            retire();
+            profiles.add(profile);
+            SolverStats.register();
+            return profile;
+        }
+    };
+
+    private final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+    private final long[] local = new long[COUNTERS];
+    private final AtomicLongArray counters = new AtomicLongArray(COUNTERS);
+
+    private SolverProfile() {}
+
+    /**
+     * @return the profile of the calling thread
+     */
+    static SolverProfile current() {
+        return current.get();
+    }
+
+    /**
+     * @return the counter summed over every thread, including threads that have finished; or for
+     *         {@link #MAX_DEPTH}, the deepest any of them has searched
+     */
+    static synchronized long total(int counter) {
+        retire();
+        long total = retired[counter];
+        for (SolverProfile profile : profiles) {
+            total = add(counter, total, profile.get(counter));
+        }
+        return total;
+    }
+
+    /**
+     * Fold the counts of threads that have finished into {@link #retired}, and forget their profiles. A
+     * thread's last search flushed everything it counted, and seeing that it's no longer alive means seeing
+     * that flush.
+     */
+    private static synchronized void retire() {
+        for (SolverProfile profile : profiles) {
+            Thread thread = profile.owner.get();
+            if (thread == null || !thread.isAlive()) {
+                for (int i = 0; i < COUNTERS; ++i) {
+                    retired[i] = add(i, retired[i], profile.get(i));
+                }
+                profiles.remove(profile);
+            }
+        }
+    }
+
+    private static long add(int counter, long a, long b) {
+        return counter == MAX_DEPTH ? Math.max(a, b) : a + b;
+    }
+
+    /**
+     * @return the number of threads whose profiles are still kept apart
+     */
+    static synchronized int live() {
+        retire();
+        return profiles.size();
+    }
+
+    /**
+     * @param nodes the number of nodes searched so far in this search
+     * @return {@code true} iff the phases of this node should be timed
+     */
+    static boolean sampled(long nodes) {
+        return (nodes & (SAMPLE_EVERY - 1)) == 0;
+    }
+
+    void node(int depth) {
+        ++local[NODES];
+        if (depth > local[MAX_DEPTH]) {
+            local[MAX_DEPTH] = depth;
+        }
+    }
+
+    void lookup(boolean hit) {
+        ++local[LOOKUPS];
+        if (hit) {
+            ++local[HITS];
+        }
+    }
+
+    void expanded(int moves) {
+        ++local[EXPANDED];
+        local[MOVES] += moves;
+    }
+
+    void searched(long nanos) {
+        ++local[SEARCHES];
+        local[SEARCH_NANOS] += nanos;
+        flush();
+    }
+
+    /**
+     * Charge a sampled phase with the time since {@code since}.
+     *
+     * @return the time now, to time the next phase from
+     */
+    long time(Phase phase, long since) {
+        long now = System.nanoTime();
+        local[PHASE_NANOS + phase.ordinal()] += (now - since) * SAMPLE_EVERY;
+        return now;
+    }
+
+    /**
+     * Let other threads see the counts so far. Ordered, but not fenced, so it's cheap.
+     */
+    void flush() {
+        for (int i = 0; i < COUNTERS; ++i) {
+            counters.lazySet(i, local[i]);
+        }
+    }
+
+    long get(int counter) {
+        return counters.get(counter);
+    }
+
+    long get(Phase phase) {
+        return counters.get(PHASE_NANOS + phase.ordinal());
+    }
+}
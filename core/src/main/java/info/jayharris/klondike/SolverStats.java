@@ -0,0 +1,181 @@
+package info.jayharris.klondike;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds up every thread's {@link SolverProfile} and publishes the totals as the JMX MBean
+ * {@value #NAME}, so a long run can be watched from JConsole or VisualVM. The MBean is registered the
+ * first time any thread solves anything.
+ *
+ * The totals can also be logged every so often with {@link #startLogging}.
+ */
+public final class SolverStats implements SolverStatsMXBean {
+
+    public static final String NAME = "info.jayharris.klondike:type=SolverStats";
+
+    private static final SolverStats INSTANCE = new SolverStats();
+    private static boolean registered = false;
+
+    private static ScheduledExecutorService logging;
+    private static ScheduledFuture<?> logTask;
+
+    private static final Logger logger = LoggerFactory.getLogger(SolverStats.class);
+
+    // what the counters stood at when last reset
+    private long[] baseline = new long[SolverProfile.COUNTERS];
+    private long since = System.nanoTime();
+
+    private SolverStats() {}
+
+    public static SolverStats get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the MBean, if it isn't already.
+     */
+    static synchronized void register() {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        }
+        catch (JMException e) {
+            logger.warn("couldn't register " + NAME, e);
+        }
+    }
+
+    /**
+     * Log a line of totals every so often, until {@link #stopLogging()}.
+     */
+    public static synchronized void startLogging(long period, TimeUnit unit) {
+        stopLogging();
+        if (logging == null) {
+            logging = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("solver-stats").build());
+        }
+        logTask = logging.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                logger.info(INSTANCE.toString());
+            }
+        }, period, period, unit);
+    }
+
+    public static synchronized void stopLogging() {
+        if (logTask != null) {
+            logTask.cancel(false);
+            logTask = null;
+        }
+    }
+
+    private synchronized long total(int counter) {
+        return SolverProfile.total(counter) - baseline[counter];
+    }
+
+    private long millis(SolverProfile.Phase phase) {
+        return total(SolverProfile.PHASE_NANOS + phase.ordinal()) / 1000000;
+    }
+
+    private static double ratio(long a, long b) {
+        return b == 0 ? 0.0 : (double) a / b;
+    }
+
+    @Override
+    public long getSearches() {
+        return total(SolverProfile.SEARCHES);
+    }
+
+    @Override
+    public long getNodes() {
+        return total(SolverProfile.NODES);
+    }
+
+    @Override
+    public synchronized double getNodesPerSecond() {
+        return ratio(getNodes() * 1000000000L, System.nanoTime() - since);
+    }
+
+    @Override
+    public double getNodesPerSearchSecond() {
+        return ratio(getNodes(), total(SolverProfile.SEARCH_NANOS)) * 1e9;
+    }
+
+    @Override
+    public double getTableHitRate() {
+        return ratio(total(SolverProfile.HITS), total(SolverProfile.LOOKUPS));
+    }
+
+    @Override
+    public double getAverageBranchingFactor() {
+        return ratio(total(SolverProfile.MOVES), total(SolverProfile.EXPANDED));
+    }
+
+    @Override
+    public long getMaxDepth() {
+        // a high-water mark, so it isn't reset
+        return SolverProfile.total(SolverProfile.MAX_DEPTH);
+    }
+
+    @Override
+    public long getGenerateMillis() {
+        return millis(SolverProfile.Phase.GENERATE);
+    }
+
+    @Override
+    public long getHashMillis() {
+        return millis(SolverProfile.Phase.HASH);
+    }
+
+    @Override
+    public long getLookupMillis() {
+        return millis(SolverProfile.Phase.LOOKUP);
+    }
+
+    @Override
+    public long getApplyMillis() {
+        return millis(SolverProfile.Phase.APPLY);
+    }
+
+    @Override
+    public long getUndoMillis() {
+        return millis(SolverProfile.Phase.UNDO);
+    }
+
+    @Override
+    public synchronized void reset() {
+        long[] now = new long[SolverProfile.COUNTERS];
+        for (int i = 0; i < now.length; ++i) {
+            now[i] = SolverProfile.total(i);
+        }
+        baseline = now;
+        since = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("solver: %d searches, %d nodes, %.0f nodes/s (%.0f per search-second), " +
+                        "table hit rate %.3f, branching %.2f, max depth %d; " +
+                        "generate %d ms, hash %d ms, lookup %d ms, apply %d ms, undo %d ms",
+                getSearches(), getNodes(), getNodesPerSecond(), getNodesPerSearchSecond(),
+                getTableHitRate(), getAverageBranchingFactor(), getMaxDepth(),
+                getGenerateMillis(), getHashMillis(), getLookupMillis(), getApplyMillis(), getUndoMillis());
+    }
+}
@@ -0,0 +1,52 @@
+package info.jayharris.klondike;
+
+/**
+ * What every {@link Solver} in this JVM has been up to since it started, or since the last
+ * {@link #reset()}. See {@link SolverStats}.
+ */
+public interface SolverStatsMXBean {
+
+    long getSearches();
+
+    long getNodes();
+
+    /**
+     * @return nodes searched per second of wall-clock time, over all threads
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return nodes searched per second of time spent searching, on average per thread
+     */
+    double getNodesPerSearchSecond();
+
+    /**
+     * @return the fraction of positions that were already in the transposition table
+     */
+    double getTableHitRate();
+
+    /**
+     * @return the average number of moves generated at each position searched
+     */
+    double getAverageBranchingFactor();
+
+    /**
+     * @return the longest line searched
+     */
+    long getMaxDepth();
+
+    long getGenerateMillis();
+
+    long getHashMillis();
+
+    long getLookupMillis();
+
+    long getApplyMillis();
+
+    long getUndoMillis();
+
+    /**
+     * Start counting again from zero.
+     */
+    void reset();
+}
@@ -0,0 +1,136 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Watches a game broadcast by a {@link SpectatorServer}, keeping its own copy of what can be seen.
+ *
+ * The stream is a sequence of frames. Each starts with a type byte, {@link SpectatorServer#SNAPSHOT} or
+ * {@link SpectatorServer#DIFF}, and a two-byte length of the rest of the frame, then the game's version,
+ * the number of passes through the deck, and the won and game-over flags. A snapshot then lists every
+ * pile in full; a diff lists only the piles that changed, each as how many cards to keep from the bottom
+ * of the old pile and what to put on top of them. Face-down cards are {@link SpectatorServer#HIDDEN}.
+ */
+public class Spectator implements Closeable {
+
+    static final int MAX_FRAME_BYTES = 128;
+
+    private final DataInputStream in;
+    private final Closeable closeable;
+
+    private final byte[][] piles = new byte[Snapshot.PILES][];
+    private final byte[] frame = new byte[MAX_FRAME_BYTES];
+    private long version = -1;
+    private int passes, flags;
+
+    /**
+     * Connect to a server on this machine.
+     *
+     * @param port the server's port
+     */
+    public Spectator(int port) throws IOException {
+        this(new Socket(InetAddress.getLoopbackAddress(), port));
+    }
+
+    private Spectator(Socket socket) throws IOException {
+        this(socket.getInputStream(), socket);
+    }
+
+    Spectator(InputStream in, Closeable closeable) {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.closeable = closeable;
+    }
+
+    /**
+     * Read and apply the next frame, waiting for it if need be.
+     *
+     * @return {@code true} iff the frame was a full snapshot
+     * @throws EOFException if the server has gone
+     */
+    public boolean read() throws IOException {
+        byte type = in.readByte();
+        int length = in.readUnsignedShort();
+        if (length > MAX_FRAME_BYTES) {
+            throw new IOException("frame too long: " + length);
+        }
+        in.readFully(frame, 0, length);
+
+        int at = 0;
+        long version = 0;
+        for (int i = 0; i < 8; ++i) {
+            version = version << 8 | (frame[at++] & 0xff);
+        }
+        int passes = frame[at++] & 0xff, flags = frame[at++] & 0xff;
+
+        if (type == SpectatorServer.SNAPSHOT) {
+            for (int pile = 0; pile < Snapshot.PILES; ++pile) {
+                int size = frame[at++] & 0xff;
+                piles[pile] = Arrays.copyOfRange(frame, at, at + size);
+                at += size;
+            }
+        }
+        else if (type == SpectatorServer.DIFF) {
+            Preconditions.checkState(this.version >= 0, "diff before the first snapshot");
+            int changed = frame[at++] & 0xff;
+            for (int i = 0; i < changed; ++i) {
+                int pile = frame[at++] & 0xff, keep = frame[at++] & 0xff, added = frame[at++] & 0xff;
+                byte[] codes = Arrays.copyOf(piles[pile], keep + added);
+                System.arraycopy(frame, at, codes, keep, added);
+                piles[pile] = codes;
+                at += added;
+            }
+        }
+        else {
+            throw new IOException("unknown frame type " + type);
+        }
+
+        this.version = version;
+        this.passes = passes;
+        this.flags = flags;
+        return type == SpectatorServer.SNAPSHOT;
+    }
+
+    /**
+     * @return the version of the game as last read, or -1 before the first frame
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int getPasses() {
+        return passes;
+    }
+
+    public boolean won() {
+        return (flags & SpectatorServer.WON) != 0;
+    }
+
+    public boolean isGameOver() {
+        return (flags & SpectatorServer.GAME_OVER) != 0;
+    }
+
+    /**
+     * @param index the pile, numbered as for {@link Snapshot#pile}
+     * @return the card codes in the pile, top card last, with {@link SpectatorServer#HIDDEN} for face-down
+     *         cards
+     */
+    byte[] getPile(int index) {
+        Preconditions.checkElementIndex(index, Snapshot.PILES);
+        return piles[index].clone();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeable.close();
+    }
+}
@@ -0,0 +1,417 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Broadcasts a live game of {@link Klondike} to any number of spectators on this machine.
+ *
+ * The server watches the game's {@link Snapshot snapshots}. After each change, it works out which piles
+ * changed since the last broadcast and sends every spectator a small diff; a spectator that connects
+ * part way through gets a full snapshot first, then the diffs from there on. Spectators never see
+ * face-down cards.
+ *
+ * Everything happens on one thread with non-blocking sockets, and the game thread does nothing more than
+ * wake it up, so no spectator can hold up the game. Each spectator's unsent frames are kept to a bounded
+ * number of bytes, and so is its socket's send buffer. A spectator that falls that far behind has its
+ * unsent diffs thrown away and gets a fresh snapshot instead. If the game changes faster than the server
+ * can keep up, changes are coalesced, so the version numbers in a stream may skip.
+ *
+ * See {@link Spectator} for the other end, and the frame format.
+ */
+public class SpectatorServer implements Observer, Closeable {
+
+    static final byte SNAPSHOT = 'S', DIFF = 'D';
+    static final byte HIDDEN = (byte) 0xff;
+    static final int WON = 1, GAME_OVER = 2;
+
+    static final int DEFAULT_BUFFER_BYTES = 1 << 16, MIN_BUFFER_BYTES = 512;
+
+    private final Klondike klondike;
+    private final int bufferBytes;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final List<Client> clients = Lists.newArrayList();
+    private final Thread thread;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile boolean open = true;
+
+    private Snapshot last;                  // the last snapshot broadcast; only touched by the server thread
+    private volatile long frames = 0, resyncs = 0;
+
+    private static final Logger logger = LoggerFactory.getLogger(SpectatorServer.class);
+
+    public SpectatorServer(Klondike klondike, int port) throws IOException {
+        this(klondike, port, DEFAULT_BUFFER_BYTES);
+    }
+
+    /**
+     * Start broadcasting a game. The game starts {@link Klondike#publishSnapshots() publishing snapshots}
+     * if it wasn't already.
+     *
+     * @param klondike the game
+     * @param port the loopback port to listen on, or 0 for any free port
+     * @param bufferBytes the most bytes to hold for a spectator before giving up on its diffs
+     */
+    public SpectatorServer(Klondike klondike, int port, int bufferBytes) throws IOException {
+        Preconditions.checkArgument(bufferBytes >= MIN_BUFFER_BYTES);
+        this.klondike = klondike;
+        this.bufferBytes = bufferBytes;
+
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        klondike.publishSnapshots();
+        last = klondike.getSnapshot();
+        klondike.addObserver(this);
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "spectators");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return the number of spectators connected
+     */
+    public int getSpectators() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    /**
+     * @return the number of frames broadcast, counting each frame once however many spectators got it
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the number of times a spectator fell behind and was sent a fresh snapshot
+     */
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    /**
+     * Called on the game thread after every change. All it does is wake the server thread, and only if
+     * it isn't awake already.
+     */
+    @Override
+    public void update(Observable o, Object arg) {
+        if (arg instanceof Snapshot && dirty.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        klondike.deleteObserver(this);
+        selector.wakeup();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /* ************************************************************************
+     * The server thread
+     * ************************************************************************/
+
+    private void loop() {
+        try {
+            while (open) {
+                selector.select();
+                if (!open) {
+                    break;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    else {
+                        Client client = (Client) key.attachment();
+                        if (key.isReadable()) {
+                            client.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.flush();
+                        }
+                    }
+                }
+
+                if (dirty.getAndSet(false)) {
+                    broadcast();
+                }
+            }
+        }
+        catch (IOException e) {
+            logger.error("spectator server failed", e);
+        }
+        finally {
+            synchronized (clients) {
+                for (Client client : Lists.newArrayList(clients)) {
+                    client.drop();
+                }
+            }
+            closeQuietly(server);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            // otherwise the kernel would quietly hold far more for a slow spectator than we would
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, bufferBytes);
+            Client client = new Client(channel);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            synchronized (clients) {
+                clients.add(client);
+            }
+            // the latest broadcast, so the diffs that follow apply to it
+            client.send(snapshotFrame(last));
+            logger.debug(String.format("spectator %s joined at version %d",
+                    channel.getRemoteAddress(), last.getVersion()));
+        }
+    }
+
+    private void broadcast() {
+        Snapshot snapshot = klondike.getSnapshot();
+        if (snapshot.getVersion() == last.getVersion()) {
+            return;
+        }
+        ByteBuffer diff = diffFrame(last, snapshot);
+        last = snapshot;
+        ++frames;
+
+        synchronized (clients) {
+            for (Client client : Lists.newArrayList(clients)) {
+                if (!client.send(diff.duplicate())) {
+                    client.resync(snapshotFrame(snapshot));
+                    ++resyncs;
+                }
+            }
+        }
+    }
+
+    /* ************************************************************************
+     * Frames
+     * ************************************************************************/
+
+    /**
+     * What a spectator can see of a pile: the codes of the face-up cards, and {@link #HIDDEN} for the
+     * face-down ones.
+     */
+    static byte[] visible(Snapshot snapshot, int pile) {
+        byte[] codes = snapshot.pile(pile);
+        for (int i = 0; i < codes.length; ++i) {
+            if ((codes[i] & Snapshot.FACEDOWN) != 0) {
+                codes[i] = HIDDEN;
+            }
+        }
+        return codes;
+    }
+
+    private static ByteBuffer header(ByteBuffer frame, byte type, Snapshot snapshot) {
+        frame.put(type).putShort((short) 0).putLong(snapshot.getVersion())
+                .put((byte) snapshot.getPasses())
+                .put((byte) ((snapshot.won() ? WON : 0) | (snapshot.isGameOver() ? GAME_OVER : 0)));
+        return frame;
+    }
+
+    private static ByteBuffer finish(ByteBuffer frame) {
+        frame.flip();
+        frame.putShort(1, (short) (frame.limit() - 3));
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Every pile in full: the type, the length of the rest of the frame, the version, the passes, the
+     * flags, then for each pile in {@link Snapshot#pile} order, its size and its cards.
+     */
+    static ByteBuffer snapshotFrame(Snapshot snapshot) {
+        ByteBuffer frame = header(ByteBuffer.allocate(Spectator.MAX_FRAME_BYTES), SNAPSHOT, snapshot);
+        for (int pile = 0; pile < Snapshot.PILES; ++pile) {
+            byte[] codes = visible(snapshot, pile);
+            frame.put((byte) codes.length).put(codes);
+        }
+        return finish(frame);
+    }
+
+    /**
+     * Just the piles that changed: the type, the length, the version, the passes, the flags and the number
+     * of changed piles, then for each, the pile number, how many cards to keep from the bottom, and the
+     * cards to put on top of those.
+     */
+    static ByteBuffer diffFrame(Snapshot from, Snapshot to) {
+        ByteBuffer frame = header(ByteBuffer.allocate(Spectator.MAX_FRAME_BYTES), DIFF, to);
+        int countAt = frame.position();
+        frame.put((byte) 0);
+
+        int changed = 0;
+        for (int pile = 0; pile < Snapshot.PILES; ++pile) {
+            byte[] before = visible(from, pile), after = visible(to, pile);
+            if (Arrays.equals(before, after)) {
+                continue;
+            }
+            int keep = 0;
+            while (keep < before.length && keep < after.length && before[keep] == after[keep]) {
+                ++keep;
+            }
+            frame.put((byte) pile).put((byte) keep).put((byte) (after.length - keep))
+                    .put(after, keep, after.length - keep);
+            ++changed;
+        }
+        frame.put(countAt, (byte) changed);
+        return finish(frame);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        }
+        catch (IOException e) {
+            logger.debug("close failed", e);
+        }
+    }
+
+    /**
+     * A spectator, and the frames waiting to go to it.
+     */
+    private class Client {
+        final SocketChannel channel;
+        SelectionKey key;
+
+        final Deque<ByteBuffer> queue = new ArrayDeque<>();
+        int queued = 0;
+
+        private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Queue a frame and try to send it straight away.
+         *
+         * @return {@code false} iff there wasn't room for the frame
+         */
+        boolean send(ByteBuffer frame) {
+            if (queued + frame.remaining() > bufferBytes) {
+                return false;
+            }
+            queue.add(frame);
+            queued += frame.remaining();
+            flush();
+            return true;
+        }
+
+        /**
+         * Throw away every frame that hasn't started going out, and queue a snapshot in their place.
+         */
+        void resync(ByteBuffer snapshot) {
+            ByteBuffer partial = queue.peekFirst();
+            queue.clear();
+            queued = 0;
+            if (partial != null && partial.position() > 0) {
+                // half sent; the rest has to follow or the stream is garbage
+                queue.add(partial);
+                queued = partial.remaining();
+            }
+            send(snapshot);
+        }
+
+        void flush() {
+            try {
+                while (!queue.isEmpty()) {
+                    ByteBuffer head = queue.peekFirst();
+                    queued -= channel.write(head);
+                    if (head.hasRemaining()) {
+                        break;
+                    }
+                    queue.removeFirst();
+                }
+                key.interestOps(queue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+            catch (IOException e) {
+                drop();
+            }
+        }
+
+        /**
+         * Spectators have nothing to say; anything they send is ignored, and end of stream means they've
+         * gone.
+         */
+        void read() {
+            try {
+                discard.clear();
+                if (channel.read(discard) < 0) {
+                    drop();
+                }
+            }
+            catch (IOException e) {
+                drop();
+            }
+        }
+
+        void drop() {
+            synchronized (clients) {
+                clients.remove(this);
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+        }
+    }
+}
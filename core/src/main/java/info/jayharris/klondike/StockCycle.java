@@ -0,0 +1,92 @@
+package info.jayharris.klondike;
+
+import info.jayharris.cardgames.Card;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Which cards can be brought to the top of the waste just by dealing, and how many deals each one takes.
+ *
+ * Dealing doesn't move any cards anywhere but between the deck and the waste, so the cards that turn up
+ * on top of the waste follow a fixed cycle: the rest of the current pass through the deck, then -- if the
+ * rules allow us to turn the waste over -- one more pass through all of the cards in the deck and the
+ * waste. Turning the waste over again after that would be game over, since no cards will have moved.
+ */
+final class StockCycle {
+
+    private final long reachable;
+    private final int[] deals = new int[CardCodes.CARDS];
+    private final Card[] cards = new Card[CardCodes.CARDS];
+
+    private StockCycle(Klondike klondike) {
+        Arrays.fill(deals, -1);
+        List<Card> waste = klondike.getWaste(), deck = klondike.getDeck();
+        int perDeal = klondike.rules.getDeal(), n = 0;
+        long found = 0L;
+
+        if (!waste.isEmpty()) {
+            found |= see(waste.get(waste.size() - 1), 0);
+        }
+
+        // the rest of this pass
+        for (int i = 0; i < deck.size(); i += perDeal) {
+            found |= see(deck.get(Math.min(i + perDeal, deck.size()) - 1), ++n);
+        }
+
+        // turn the waste over and go through everything once more
+        int total = waste.size() + deck.size();
+        if (total > 0 && klondike.didChange() && klondike.getPasses() + 1 < klondike.rules.getPasses()) {
+            ++n;
+            for (int i = 0; i < total; i += perDeal) {
+                int last = Math.min(i + perDeal, total) - 1;
+                found |= see(last < waste.size() ? waste.get(last) : deck.get(last - waste.size()), ++n);
+            }
+        }
+
+        reachable = found;
+    }
+
+    private long see(Card card, int n) {
+        int code = CardCodes.code(card);
+        if (deals[code] < 0) {
+            deals[code] = n;
+            cards[code] = card;
+        }
+        return 1L << code;
+    }
+
+    /**
+     * Work out the stock cycle for the current position.
+     *
+     * @param klondike the game
+     * @return the stock cycle
+     */
+    static StockCycle of(Klondike klondike) {
+        return new StockCycle(klondike);
+    }
+
+    /**
+     * @return the cards that can be brought to the top of the waste, as a bitmask of {@link CardCodes}
+     */
+    long reachable() {
+        return reachable;
+    }
+
+    /**
+     * How many times do we have to deal to bring a card to the top of the waste?
+     *
+     * @param code the card
+     * @return the number of deals, or -1 if dealing will never bring it to the top
+     */
+    int dealsTo(int code) {
+        return deals[code];
+    }
+
+    /**
+     * @return the card with code {@code code}, if it's reachable
+     */
+    Card card(int code) {
+        return cards[code];
+    }
+}
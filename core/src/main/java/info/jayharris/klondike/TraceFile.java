@@ -0,0 +1,387 @@
+package info.jayharris.klondike;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A columnar binary file of every move made in a run of simulated games, for analysis.
+ *
+ * Each move is a row with one value per {@link Column}. Rows are gathered into blocks of up to
+ * {@link #BLOCK_ROWS}; each column of a block is stored separately, deflated. After the blocks comes an
+ * index of where every column of every block starts, and the file ends with the position of the index.
+ * So a {@link Reader} can read one column of the whole file without inflating, or even reading, any of
+ * the others, and a {@link Writer} never holds more than one block in memory.
+ *
+ * The file starts with a header naming the rules the games were played under.
+ */
+public final class TraceFile {
+
+    static final int MAGIC = 0x4b4c5452;       // "KLTR"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 8, TRAILER_BYTES = 12;
+    static final int BLOCK_ROWS = 1 << 16;
+
+    /**
+     * The value of {@link Column#FROM}, {@link Column#TO} or {@link Column#CARD} when there isn't one.
+     */
+    public static final int NONE = 0xff;
+
+    /**
+     * What's known about each move. Piles are numbered as for {@link Snapshot#pile}: 0 for the deck, 1
+     * for the waste, 2 to 8 for the tableaus and 9 to 12 for the foundations.
+     */
+    public enum Column {
+        /** The deal number of the game. */
+        GAME(8),
+        /** The number of moves made in the game before this one. */
+        PLY(2),
+        /** The {@link Move.Type} of the move; turning the waste back over is a {@code DEAL}. */
+        TYPE(1),
+        /** The pile the cards came from. */
+        FROM(1),
+        /** The pile the cards went to. */
+        TO(1),
+        /** The {@link CardCodes card code} of the card moved, the bottom one if there were several. */
+        CARD(1),
+        /** How many cards were turned over: dealt to the waste, turned back into the deck, or uncovered. */
+        FLIPPED(1),
+        /** How many times the deck had been gone through. */
+        PASS(1);
+
+        final int width;
+
+        Column(int width) {
+            this.width = width;
+        }
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private TraceFile() {}
+
+    public static class Writer implements Closeable {
+        private final File file, temp;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+
+        private final ByteBuffer[] columns = new ByteBuffer[COLUMNS.length];
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        private final byte[] deflated = new byte[1 << 16];
+        private ByteBuffer index;
+
+        private int rows = 0, blocks = 0;
+        private long position = HEADER_BYTES, total = 0;
+        private boolean closed = false;
+
+        /**
+         * Start a file. It's written to a temporary file alongside, which replaces {@code file} when the
+         * writer is closed.
+         *
+         * @param file the file
+         * @param rules the rules the games are played under
+         */
+        public Writer(File file, Klondike.Rules rules) throws IOException {
+            this.file = file;
+            this.temp = AtomicFiles.tempFile(file);
+            this.raf = new RandomAccessFile(temp, "rw");
+            this.raf.setLength(0);
+            this.channel = raf.getChannel();
+
+            for (int c = 0; c < COLUMNS.length; ++c) {
+                columns[c] = ByteBuffer.allocate(BLOCK_ROWS * COLUMNS[c].width);
+            }
+            index = ByteBuffer.allocate(1 << 12);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putShort(VERSION)
+                    .put((byte) rules.deal.ordinal()).put((byte) rules.passes.ordinal()).flip();
+            writeFully(header, 0);
+        }
+
+        /**
+         * Add a move. Values that don't fit their column are cut down to fit.
+         */
+        public void write(long game, int ply, int type, int from, int to, int card, int flipped, int pass)
+                throws IOException {
+            columns[0].putLong(game);
+            columns[1].putShort((short) ply);
+            columns[2].put((byte) type);
+            columns[3].put((byte) from);
+            columns[4].put((byte) to);
+            columns[5].put((byte) card);
+            columns[6].put((byte) flipped);
+            columns[7].put((byte) Math.min(pass, 0xff));
+            ++total;
+            if (++rows == BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * @return the number of moves written so far
+         */
+        public long rows() {
+            return total;
+        }
+
+        private void flushBlock() throws IOException {
+            if (rows == 0) {
+                return;
+            }
+            // rows, then an offset and length for each column
+            growIndex(4 + COLUMNS.length * 12);
+            index.putInt(rows);
+
+            for (int c = 0; c < COLUMNS.length; ++c) {
+                ByteBuffer column = columns[c];
+                deflater.reset();
+                deflater.setInput(column.array(), 0, column.position());
+                deflater.finish();
+
+                long start = position;
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(deflated);
+                    writeFully(ByteBuffer.wrap(deflated, 0, n), position);
+                    position += n;
+                }
+                index.putLong(start).putInt((int) (position - start));
+                column.clear();
+            }
+
+            rows = 0;
+            ++blocks;
+        }
+
+        private void growIndex(int bytes) {
+            if (index.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(index.capacity() * 2, index.position() + bytes));
+                index.flip();
+                bigger.put(index);
+                index = bigger;
+            }
+        }
+
+        private void writeFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                at += channel.write(buffer, at);
+            }
+        }
+
+        /**
+         * Write the last block and the index, and put the file in place.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                flushBlock();
+
+                long indexAt = position;
+                ByteBuffer count = ByteBuffer.allocate(4).putInt(blocks);
+                count.flip();
+                writeFully(count, position);
+                position += 4;
+
+                index.flip();
+                int length = index.remaining();
+                writeFully(index, position);
+                position += length;
+
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES).putLong(indexAt).putInt(MAGIC);
+                trailer.flip();
+                writeFully(trailer, position);
+                channel.force(true);
+            }
+            finally {
+                deflater.end();
+                raf.close();
+            }
+            AtomicFiles.replace(temp, file);
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        public final Klondike.Rules rules;
+
+        private final int[] blockRows;
+        private final long[][] offsets;
+        private final int[][] lengths;
+        private final long rows;
+
+        public Reader(File file) throws IOException {
+            raf = new RandomAccessFile(file, "r");
+            channel = raf.getChannel();
+            try {
+                ByteBuffer header = readFully(0, HEADER_BYTES);
+                if (header.getInt() != MAGIC || header.getShort() != VERSION) {
+                    throw new IOException("not a trace file: " + file);
+                }
+                rules = new Klondike.Rules(Klondike.Rules.Deal.values()[header.get()],
+                        Klondike.Rules.Passes.values()[header.get()]);
+
+                ByteBuffer trailer = readFully(channel.size() - TRAILER_BYTES, TRAILER_BYTES);
+                long indexAt = trailer.getLong();
+                if (trailer.getInt() != MAGIC) {
+                    throw new IOException("trace file not finished: " + file);
+                }
+
+                int blocks = readFully(indexAt, 4).getInt();
+                ByteBuffer index = readFully(indexAt + 4, blocks * (4 + COLUMNS.length * 12));
+                blockRows = new int[blocks];
+                offsets = new long[blocks][COLUMNS.length];
+                lengths = new int[blocks][COLUMNS.length];
+                long rows = 0;
+                for (int b = 0; b < blocks; ++b) {
+                    blockRows[b] = index.getInt();
+                    rows += blockRows[b];
+                    for (int c = 0; c < COLUMNS.length; ++c) {
+                        offsets[b][c] = index.getLong();
+                        lengths[b][c] = index.getInt();
+                    }
+                }
+                this.rows = rows;
+            }
+            catch (IOException | RuntimeException e) {
+                raf.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the number of moves in the file
+         */
+        public long rows() {
+            return rows;
+        }
+
+        /**
+         * Read one column from start to finish, one block at a time.
+         *
+         * @param column the column
+         * @return a cursor before the first value
+         */
+        public Cursor scan(Column column) {
+            return new Cursor(column);
+        }
+
+        private ByteBuffer readFully(long at, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            readFully(buffer, at);
+            buffer.flip();
+            return buffer;
+        }
+
+        private void readFully(ByteBuffer buffer, long at) throws IOException {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, at);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                at += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+
+        /**
+         * The values in one column, in the order the moves were written.
+         */
+        public class Cursor {
+            private final Column column;
+            private final int c;
+            private final ByteBuffer values;
+            private final Inflater inflater = new Inflater();
+            private ByteBuffer compressed = ByteBuffer.allocate(1 << 12);
+            private int block = -1;
+            private long value;
+
+            Cursor(Column column) {
+                this.column = column;
+                this.c = column.ordinal();
+                this.values = ByteBuffer.allocate(BLOCK_ROWS * column.width);
+                values.limit(0);
+            }
+
+            /**
+             * Move on to the next value.
+             *
+             * @return {@code false} iff there are no more values
+             */
+            public boolean next() throws IOException {
+                while (!values.hasRemaining()) {
+                    if (++block >= blockRows.length) {
+                        inflater.end();
+                        return false;
+                    }
+                    load();
+                }
+
+                switch (column.width) {
+                    case 8:
+                        value = values.getLong();
+                        break;
+                    case 2:
+                        value = values.getShort() & 0xffff;
+                        break;
+                    default:
+                        value = values.get() & 0xff;
+                        break;
+                }
+                return true;
+            }
+
+            /**
+             * @return the current value
+             */
+            public long get() {
+                return value;
+            }
+
+            private void load() throws IOException {
+                int length = lengths[block][c];
+                if (compressed.capacity() < length) {
+                    compressed = ByteBuffer.allocate(length);
+                }
+                compressed.clear().limit(length);
+                readFully(compressed, offsets[block][c]);
+
+                inflater.reset();
+                inflater.setInput(compressed.array(), 0, length);
+                values.clear();
+                try {
+                    int n = 0, expected = blockRows[block] * column.width;
+                    while (n < expected && !inflater.finished()) {
+                        int inflated = inflater.inflate(values.array(), n, expected - n);
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        n += inflated;
+                    }
+                    if (n != expected) {
+                        throw new IOException(String.format("column %s of block %d is short", column, block));
+                    }
+                    values.limit(n);
+                }
+                catch (DataFormatException e) {
+                    throw new IOException(String.format("column %s of block %d is corrupt", column, block), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed-size hash table of positions the solver has already seen, stored off the Java heap.
+ *
+ * Keys are 64-bit {@link Position#hash() position hashes}, and each one carries a small value and a
+ * priority. The table is open-addressed in buckets of four entries, so a lookup touches a single cache
+ * line. When a bucket is full, an entry is evicted to make room according to the {@link Replacement}
+ * policy -- the table never grows and never refuses a store.
+ *
+ * A table can be {@link #save(File) saved} to a file and {@link #load(File) loaded} back into a table of
+ * the same size, so a long search can pick up where it left off.
+ *
+ * Not thread-safe.
+ */
+public class TranspositionTable {
+
+    public enum Replacement {
+        /**
+         * Evict the entry with the lowest priority, e.g. the deepest position in the search tree, which
+         * stands for the least work.
+         */
+        DEPTH_PREFERRED,
+
+        /**
+         * Evict the first entry that hasn't been looked up since the clock hand last passed it.
+         */
+        CLOCK
+    }
+
+    static final int ENTRY_BYTES = 16, BUCKET_ENTRIES = 4, BUCKET_BYTES = ENTRY_BYTES * BUCKET_ENTRIES;
+    private static final int SEGMENT_SHIFT = 30, SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    // entry layout: key (8 bytes), value (4), priority (2), referenced flag (1), clock hand (1, first
+    // entry of each bucket only)
+    private static final int VALUE = 8, PRIORITY = 12, REFERENCED = 14, HAND = 15;
+    private static final long EMPTY = 0L;
+
+    private static final int MAGIC = 0x4b4c5454;      // "KLTT"
+
+    private final ByteBuffer[] segments;
+    private final long buckets;
+    private final Replacement replacement;
+
+    private long size, hits, misses, stores, evictions;
+
+    /**
+     * Create a table that fits in {@code maxBytes} of memory.
+     *
+     * @param maxBytes the most memory the table may use
+     * @param replacement what to evict when a bucket is full
+     */
+    public TranspositionTable(long maxBytes, Replacement replacement) {
+        Preconditions.checkArgument(maxBytes >= BUCKET_BYTES, "need room for at least one bucket");
+
+        this.buckets = Long.highestOneBit(maxBytes / BUCKET_BYTES);
+        this.replacement = Preconditions.checkNotNull(replacement);
+
+        long bytes = buckets * BUCKET_BYTES;
+        segments = new ByteBuffer[(int) ((bytes + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+        for (int i = 0; i < segments.length; ++i) {
+            segments[i] = ByteBuffer.allocateDirect((int) Math.min(bytes - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT));
+        }
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key the position's hash
+     * @param missing what to return if the position isn't in the table
+     * @return the value stored with the position, or {@code missing}
+     */
+    public int get(long key, int missing) {
+        long entry = lookup(key);
+        return entry < 0 ? missing : segment(entry).getInt(offset(entry) + VALUE);
+    }
+
+    /**
+     * Is the position in the table?
+     *
+     * @param key the position's hash
+     * @return {@code true} iff the position is in the table
+     */
+    public boolean contains(long key) {
+        return lookup(key) >= 0;
+    }
+
+    /**
+     * Store a position, replacing whatever was stored with it before.
+     *
+     * @param key the position's hash
+     * @param value the value to store with it
+     * @param priority how much the position is worth keeping, from 0 to 65535
+     */
+    public void put(long key, int value, int priority) {
+        store(normalize(key), value, priority, true);
+    }
+
+    /**
+     * Store a position unless it's already in the table.
+     *
+     * @param key the position's hash
+     * @param value the value to store with it
+     * @param priority how much the position is worth keeping, from 0 to 65535
+     * @return {@code true} iff the position was not in the table
+     */
+    public boolean putIfAbsent(long key, int value, int priority) {
+        return store(normalize(key), value, priority, false);
+    }
+
+    /**
+     * Empty the table and reset its statistics.
+     */
+    public void clear() {
+        for (ByteBuffer segment : segments) {
+            for (int i = 0; i < segment.capacity(); i += 8) {
+                segment.putLong(i, 0L);
+            }
+        }
+        size = hits = misses = stores = evictions = 0;
+    }
+
+    /**
+     * Forget a position.
+     *
+     * @param key the position's hash
+     * @return {@code true} iff the position was in the table
+     */
+    public boolean remove(long key) {
+        long entry = find(key);
+        if (entry < 0) {
+            return false;
+        }
+        write(entry, EMPTY, 0, 0);
+        --size;
+        return true;
+    }
+
+    private boolean store(long key, int value, int priority, boolean overwrite) {
+        long bucket = bucketOf(key), entry, victim = -1;
+        ByteBuffer segment = segment(bucket);
+        int base = offset(bucket);
+
+        for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+            long k = segment.getLong(base + i * ENTRY_BYTES);
+            if (k == key) {
+                ++hits;
+                entry = bucket + i * ENTRY_BYTES;
+                if (overwrite) {
+                    write(entry, key, value, priority);
+                }
+                segment.put(base + i * ENTRY_BYTES + REFERENCED, (byte) 1);
+                return false;
+            }
+            if (k == EMPTY && victim < 0) {
+                victim = bucket + i * ENTRY_BYTES;
+            }
+        }
+
+        ++misses;
+        if (victim < 0) {
+            victim = chooseVictim(bucket);
+            ++evictions;
+        }
+        else {
+            ++size;
+        }
+        write(victim, key, value, priority);
+        ++stores;
+        return true;
+    }
+
+    private long chooseVictim(long bucket) {
+        ByteBuffer segment = segment(bucket);
+        int base = offset(bucket);
+
+        switch (replacement) {
+            case DEPTH_PREFERRED:
+                int lowest = 0;
+                for (int i = 1; i < BUCKET_ENTRIES; ++i) {
+                    if (priorityAt(segment, base + i * ENTRY_BYTES) < priorityAt(segment, base + lowest * ENTRY_BYTES)) {
+                        lowest = i;
+                    }
+                }
+                return bucket + lowest * ENTRY_BYTES;
+            default:
+                int hand = segment.get(base + HAND);
+                while (segment.get(base + hand * ENTRY_BYTES + REFERENCED) != 0) {
+                    segment.put(base + hand * ENTRY_BYTES + REFERENCED, (byte) 0);
+                    hand = (hand + 1) % BUCKET_ENTRIES;
+                }
+                segment.put(base + HAND, (byte) ((hand + 1) % BUCKET_ENTRIES));
+                return bucket + hand * ENTRY_BYTES;
+        }
+    }
+
+    private void write(long entry, long key, int value, int priority) {
+        ByteBuffer segment = segment(entry);
+        int offset = offset(entry);
+        segment.putLong(offset, key);
+        segment.putInt(offset + VALUE, value);
+        segment.putShort(offset + PRIORITY, (short) Math.min(Math.max(priority, 0), 0xffff));
+        segment.put(offset + REFERENCED, (byte) 0);
+    }
+
+    private long lookup(long key) {
+        long entry = find(key);
+        if (entry < 0) {
+            ++misses;
+        }
+        else {
+            ++hits;
+            segment(entry).put(offset(entry) + REFERENCED, (byte) 1);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the address of the entry for {@code key}, or -1 if there isn't one
+     */
+    private long find(long key) {
+        key = normalize(key);
+        long bucket = bucketOf(key);
+        ByteBuffer segment = segment(bucket);
+        int base = offset(bucket);
+        for (int i = 0; i < BUCKET_ENTRIES; ++i) {
+            if (segment.getLong(base + i * ENTRY_BYTES) == key) {
+                return bucket + i * ENTRY_BYTES;
+            }
+        }
+        return -1;
+    }
+
+    private static int priorityAt(ByteBuffer segment, int offset) {
+        return segment.getShort(offset + PRIORITY) & 0xffff;
+    }
+
+    private long bucketOf(long key) {
+        return (key & (buckets - 1)) * BUCKET_BYTES;
+    }
+
+    private ByteBuffer segment(long address) {
+        return segments[(int) (address >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long address) {
+        return (int) (address & SEGMENT_MASK);
+    }
+
+    /**
+     * Zero marks an empty entry, so it can't be a key.
+     */
+    private static long normalize(long key) {
+        return key == EMPTY ? 1L : key;
+    }
+
+    /* ************************************************************************
+     * Saving and loading
+     * ************************************************************************/
+
+    /**
+     * Write the table to a file. The file is replaced atomically, so if this is interrupted the previous
+     * contents of the file are left alone.
+     *
+     * @param file the file
+     */
+    public void save(File file) throws IOException {
+        File temp = AtomicFiles.tempFile(file);
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeLong(buckets);
+            out.writeLong(size);
+            out.writeLong(hits);
+            out.writeLong(misses);
+            out.writeLong(stores);
+            out.writeLong(evictions);
+            out.flush();
+
+            FileChannel channel = stream.getChannel();
+            for (ByteBuffer segment : segments) {
+                ByteBuffer view = segment.duplicate();
+                view.clear();
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+            }
+            channel.force(true);
+        }
+        AtomicFiles.replace(temp, file);
+    }
+
+    /**
+     * Replace the contents of this table with a table saved by {@link #save(File)}. The saved table must
+     * be the same size as this one.
+     *
+     * @param file the file
+     */
+    public void load(File file) throws IOException {
+        try (FileInputStream stream = new FileInputStream(file)) {
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a transposition table: " + file);
+            }
+            long savedBuckets = in.readLong();
+            if (savedBuckets != buckets) {
+                throw new IOException(String.format("%s holds %d entries, expected %d",
+                        file, savedBuckets * BUCKET_ENTRIES, capacity()));
+            }
+
+            // DataInputStream doesn't buffer, so the channel is positioned right after the header
+            long size = in.readLong(), hits = in.readLong(), misses = in.readLong(),
+                    stores = in.readLong(), evictions = in.readLong();
+
+            FileChannel channel = stream.getChannel();
+            for (ByteBuffer segment : segments) {
+                ByteBuffer view = segment.duplicate();
+                view.clear();
+                while (view.hasRemaining()) {
+                    if (channel.read(view) < 0) {
+                        throw new EOFException(file.toString());
+                    }
+                }
+            }
+
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.stores = stores;
+            this.evictions = evictions;
+        }
+    }
+
+    /* ************************************************************************
+     * Statistics
+     * ************************************************************************/
+
+    /**
+     * @return the number of positions the table can hold
+     */
+    public long capacity() {
+        return buckets * BUCKET_ENTRIES;
+    }
+
+    /**
+     * @return the number of positions in the table
+     */
+    public long size() {
+        return size;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    public long misses() {
+        return misses;
+    }
+
+    public long stores() {
+        return stores;
+    }
+
+    public long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TranspositionTable[size=%d/%d, hits=%d, misses=%d, stores=%d, evictions=%d]",
+                size, capacity(), hits, misses, stores, evictions);
+    }
+}
@@ -0,0 +1,73 @@
+package info.jayharris.klondike;
+
+import info.jayharris.cardgames.Card;
+
+/**
+ * Scores a position as a weighted sum of a few things that are easy to count: cards on the foundations,
+ * face-down cards in the tableaus, empty tableaus, and cards left in the deck and the waste.
+ *
+ * A face-down card counts for more the more cards are piled on top of it, since those all have to move
+ * before it can be turned up.
+ */
+public class WeightedEvaluation implements Evaluation {
+
+    /**
+     * Weights that play reasonably well in both deal-one and deal-three games. Turning up face-down cards
+     * matters more than getting cards onto the foundations early.
+     */
+    public static final WeightedEvaluation DEFAULT = new WeightedEvaluation(3.0, -6.0, -0.5, 2.0, -0.1);
+
+    private final double foundation, facedown, buried, emptyTableau, stock;
+
+    /**
+     * @param foundation the value of each card on a foundation
+     * @param facedown the value of each face-down card in a tableau
+     * @param buried the value of each card on top of a face-down card, for each face-down card it's on
+     * @param emptyTableau the value of each empty tableau
+     * @param stock the value of each card in the deck or the waste
+     */
+    public WeightedEvaluation(double foundation, double facedown, double buried, double emptyTableau, double stock) {
+        this.foundation = foundation;
+        this.facedown = facedown;
+        this.buried = buried;
+        this.emptyTableau = emptyTableau;
+        this.stock = stock;
+    }
+
+    @Override
+    public double evaluate(Klondike klondike) {
+        double score = 0.0;
+
+        for (Klondike.Foundation f : klondike.getFoundations()) {
+            score += foundation * f.size();
+        }
+
+        for (int i = 0; i < 7; ++i) {
+            Klondike.Tableau tableau = klondike.getTableau(i);
+            if (tableau.isEmpty()) {
+                score += emptyTableau;
+                continue;
+            }
+
+            int down = 0, size = tableau.size();
+            for (Card card : tableau) {
+                if (!card.isFacedown()) {
+                    break;
+                }
+                ++down;
+            }
+            score += facedown * down;
+            // the j-th face-down card from the bottom has size - j - 1 cards on top of it
+            score += buried * (down * (size - 1) - down * (down - 1) / 2.0);
+        }
+
+        score += stock * (klondike.getDeck().size() + klondike.getWaste().size());
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WeightedEvaluation[foundation=%s, facedown=%s, buried=%s, emptyTableau=%s, stock=%s]",
+                foundation, facedown, buried, emptyTableau, stock);
+    }
+}
@@ -0,0 +1,352 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import info.jayharris.cardgames.Card;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Makes deals that are sure to be winnable, by playing a game of Klondike backwards.
+ *
+ * It starts from a won game, with every card on the foundations, and takes legal moves back at random:
+ * cards come off the foundations onto the tableaus and the waste, move between tableaus, and go from the
+ * waste back into the deck, and cards covered up on the tableaus turn face down again. It keeps enough
+ * cards on the foundations to finish off every tableau, and once it has, what's left goes back into the
+ * deck, which leaves a layout just like a fresh deal. Playing the moves forwards again wins that deal,
+ * so it's winnable.
+ *
+ * The winning line never turns the waste over, so it works with any {@link Klondike.Rules#getPasses()
+ * number of passes}; it does deal as many cards at a time as the rules say. The same rules and seed always
+ * make the same deal, in some tens of microseconds.
+ *
+ * Not thread-safe; give each thread its own.
+ */
+public final class WinnableDeals {
+
+    // moves taken back, each packed as type | TURN | from << 4 | to << 8 | count << 12, where from and to
+    // are tableaus 0-6 or suits 0-3, and TURN means the card under the cards put on a tableau goes face down
+    private static final int FROM_FOUNDATION_TO_TABLEAU = 0, FROM_FOUNDATION_TO_WASTE = 1,
+            FROM_TABLEAU_TO_WASTE = 2, FROM_TABLEAU_TO_TABLEAU = 3, UNDEAL = 4, TURN = 8;
+
+    // how many moves to take back at random, at most, before finishing off the tableaus
+    static final int STEPS = 400;
+
+    private final int dealCount;
+
+    // tableau[i][0..size[i]) bottom to top, the first facedown[i] of which are face down; a tableau is
+    // pinned when its bottom card is face up with nothing under it but isn't a king, so it can only have
+    // been dealt there, and must stay
+    private final int[][] tableau = new int[7][Playout.MAX_TABLEAU];
+    private final int[] size = new int[7], facedown = new int[7];
+    private final boolean[] pinned = new boolean[7];
+
+    // waste[0..wasteSize) and deck[0..deckSize), tops last, so the top of the deck is dealt first
+    private final int[] waste = new int[CardCodes.CARDS], deck = new int[CardCodes.CARDS];
+    private int wasteSize, deckSize;
+
+    // how many cards are on each suit's foundation, and on all of them
+    private final int[] foundation = new int[CardCodes.SUITS];
+    private int onFoundations;
+
+    private final int[] moves = new int[2048], run = new int[CardCodes.RANKS];
+    private int[] taken = new int[512];
+    private int takenSize;
+
+    private final Random random = new Random();
+
+    /**
+     * @param rules the rules the deals are to be played by
+     */
+    public WinnableDeals(Klondike.Rules rules) {
+        this.dealCount = rules.getDeal();
+    }
+
+    /**
+     * Make a winnable deal.
+     *
+     * @param seed the deal number
+     * @return every card, in the order {@link Klondike#init(List)} deals them
+     */
+    public List<Card> deal(long seed) {
+        int[] order = order(seed);
+        List<Card> cards = Lists.newArrayListWithCapacity(CardCodes.CARDS);
+        for (int code : order) {
+            cards.add(new Card(CardCodes.toRank(CardCodes.rank(code)), CardCodes.toSuit(CardCodes.suit(code))));
+        }
+        return cards;
+    }
+
+    /**
+     * Start a winnable game.
+     *
+     * @param klondike a game that hasn't been dealt yet
+     * @param seed the deal number
+     */
+    public void init(Klondike klondike, long seed) {
+        Preconditions.checkArgument(klondike.rules.getDeal() == dealCount);
+        klondike.init(deal(seed));
+    }
+
+    /**
+     * @return a line of play that wins the latest deal
+     */
+    List<Move> solution() {
+        List<Move> solution = Lists.newArrayListWithCapacity(takenSize);
+        for (int i = takenSize - 1; i >= 0; --i) {
+            int move = taken[i], from = (move >>> 4) & 0xf, to = (move >>> 8) & 0xf;
+            switch (move & 0x7) {
+                case FROM_FOUNDATION_TO_TABLEAU:
+                    solution.add(Move.tableauToFoundation(to));
+                    break;
+                case FROM_FOUNDATION_TO_WASTE:
+                    solution.add(Move.wasteToFoundation());
+                    break;
+                case FROM_TABLEAU_TO_WASTE:
+                    solution.add(Move.wasteToTableau(from));
+                    break;
+                case FROM_TABLEAU_TO_TABLEAU:
+                    solution.add(Move.tableauToTableau(to, from, move >>> 12));
+                    break;
+                default:
+                    solution.add(Move.deal());
+            }
+        }
+        return solution;
+    }
+
+    /**
+     * @return the card codes of a winnable deal, in the order {@link Klondike#init(List)} deals them
+     */
+    int[] order(long seed) {
+        random.setSeed(seed);
+        win();
+
+        for (int step = 0; step < STEPS && onFoundations > needed(); ++step) {
+            int n = generate();
+            if (n == 0) {
+                break;
+            }
+            takeBack(moves[random.nextInt(n)]);
+        }
+        finish();
+
+        // the layout, as Playout deals it from a shuffled deck
+        int[] order = new int[CardCodes.CARDS];
+        int n = 0;
+        for (int i = 0; i < 7; ++i) {
+            for (int j = i; j < 7; ++j) {
+                order[Playout.TABLEAU_FROM[n++]] = tableau[j][i];
+            }
+        }
+        for (int i = 0; i < deckSize; ++i) {
+            order[Playout.DECK_FROM[i]] = deck[deckSize - 1 - i];
+        }
+        return order;
+    }
+
+    /* ************************************************************************
+     * Taking moves back
+     * ************************************************************************/
+
+    private void win() {
+        for (int i = 0; i < 7; ++i) {
+            size[i] = facedown[i] = 0;
+            pinned[i] = false;
+        }
+        wasteSize = deckSize = 0;
+        Arrays.fill(foundation, CardCodes.RANKS);
+        onFoundations = CardCodes.CARDS;
+        takenSize = 0;
+    }
+
+    /**
+     * @return how many cards the tableaus still need from the foundations to be finished off: one to turn
+     *         each card that's still to be face down, and one for each empty tableau
+     */
+    private int needed() {
+        int needed = 0;
+        for (int i = 0; i < 7; ++i) {
+            needed += i - facedown[i] + (size[i] == 0 ? 1 : 0);
+        }
+        return needed;
+    }
+
+    /**
+     * Find every move that can be taken back without leaving too few cards on the foundations.
+     *
+     * @return how many there are, in {@link #moves}
+     */
+    private int generate() {
+        int n = 0, spare = onFoundations - needed();
+
+        for (int suit = 0; suit < CardCodes.SUITS; ++suit) {
+            if (foundation[suit] == 0) {
+                continue;
+            }
+            int card = CardCodes.code(suit, foundation[suit] - 1), move = FROM_FOUNDATION_TO_TABLEAU | suit << 4 | 1 << 12;
+            for (int to = 0; to < 7; ++to) {
+                if (size[to] == 0) {
+                    moves[n++] = move | to << 8;
+                    continue;
+                }
+                if (canTurn(to)) {
+                    moves[n++] = move | to << 8 | TURN;
+                }
+                if (spare > 0 && CardCodes.stacks(card, tableau[to][size[to] - 1])) {
+                    moves[n++] = move | to << 8;
+                }
+            }
+            if (spare > 0) {
+                moves[n++] = FROM_FOUNDATION_TO_WASTE | suit << 4;
+            }
+        }
+
+        for (int from = 0; from < 7; ++from) {
+            for (int count = 1; count <= size[from] - facedown[from]; ++count) {
+                int left = leaves(from, count);
+                if (left == 0) {
+                    continue;
+                }
+                // emptying a tableau means another card needed from the foundations
+                int cost = left > 0 ? 1 : 0, card = tableau[from][size[from] - count],
+                        move = FROM_TABLEAU_TO_TABLEAU | from << 4 | count << 12;
+                if (count == 1 && spare >= cost) {
+                    moves[n++] = FROM_TABLEAU_TO_WASTE | from << 4 | 1 << 12;
+                }
+                for (int to = 0; to < 7; ++to) {
+                    if (to == from) {
+                        continue;
+                    }
+                    if (size[to] == 0) {
+                        // but not just to move a whole tableau from one place to another
+                        if (left < 0) {
+                            moves[n++] = move | to << 8;
+                        }
+                        continue;
+                    }
+                    if (canTurn(to)) {
+                        moves[n++] = move | to << 8 | TURN;
+                    }
+                    if (spare >= cost && CardCodes.stacks(card, tableau[to][size[to] - 1])) {
+                        moves[n++] = move | to << 8;
+                    }
+                }
+            }
+        }
+
+        if (wasteSize >= dealCount && deckSize + dealCount <= CardCodes.CARDS - 28) {
+            moves[n++] = UNDEAL;
+        }
+        return n;
+    }
+
+    /**
+     * Could cards have just been taken off the top of a tableau, turning over the card under them? Only if
+     * that card is face up on top of any face-down ones, and there are face-down cards still to come.
+     */
+    private boolean canTurn(int to) {
+        return size[to] - facedown[to] == 1 && facedown[to] < to;
+    }
+
+    /**
+     * Could the top {@code count} cards of a tableau have just been put there?
+     *
+     * @return 0 if not; 1 if that would leave the tableau empty, which means one more card needed from
+     *         the foundations to finish it off; -1 if they're on top of another card that's face up
+     */
+    private int leaves(int from, int count) {
+        int bottom = size[from] - count;
+        if (bottom == 0) {
+            return !pinned[from] && CardCodes.rank(tableau[from][0]) == CardCodes.RANKS - 1 ? 1 : 0;
+        }
+        return bottom > facedown[from] && CardCodes.stacks(tableau[from][bottom], tableau[from][bottom - 1]) ? -1 : 0;
+    }
+
+    private void takeBack(int move) {
+        int from = (move >>> 4) & 0xf, to = (move >>> 8) & 0xf, count = move >>> 12;
+        boolean turn = (move & TURN) != 0;
+
+        switch (move & 0x7) {
+            case FROM_FOUNDATION_TO_TABLEAU:
+                run[0] = CardCodes.code(from, --foundation[from]);
+                --onFoundations;
+                put(to, 1, turn);
+                break;
+            case FROM_FOUNDATION_TO_WASTE:
+                waste[wasteSize++] = CardCodes.code(from, --foundation[from]);
+                --onFoundations;
+                break;
+            case FROM_TABLEAU_TO_WASTE:
+                waste[wasteSize++] = tableau[from][--size[from]];
+                break;
+            case FROM_TABLEAU_TO_TABLEAU:
+                size[from] -= count;
+                System.arraycopy(tableau[from], size[from], run, 0, count);
+                put(to, count, turn);
+                break;
+            default:
+                // the deal put the top card of the deck lowest of them on the waste
+                for (int i = 0; i < dealCount; ++i) {
+                    deck[deckSize++] = waste[--wasteSize];
+                }
+        }
+
+        if (takenSize == taken.length) {
+            taken = Arrays.copyOf(taken, takenSize * 2);
+        }
+        taken[takenSize++] = move;
+    }
+
+    /**
+     * Put the cards in {@link #run} on a tableau, turning the card under them face down if need be.
+     */
+    private void put(int to, int count, boolean turn) {
+        if (size[to] == 0) {
+            pinned[to] = CardCodes.rank(run[0]) != CardCodes.RANKS - 1;
+        }
+        else if (turn) {
+            ++facedown[to];
+        }
+        System.arraycopy(run, 0, tableau[to], size[to], count);
+        size[to] += count;
+    }
+
+    /**
+     * Finish off the tableaus, with one face-up card each on top of the right number of face-down ones,
+     * and put everything else back into the deck.
+     */
+    private void finish() {
+        for (int i = 0; i < 7; ++i) {
+            while (size[i] - facedown[i] > 1) {
+                takeBack(FROM_TABLEAU_TO_WASTE | i << 4 | 1 << 12);
+            }
+            if (size[i] == 0) {
+                takeBack(FROM_FOUNDATION_TO_TABLEAU | anySuit() << 4 | i << 8 | 1 << 12);
+            }
+            while (facedown[i] < i) {
+                takeBack(FROM_FOUNDATION_TO_TABLEAU | anySuit() << 4 | i << 8 | 1 << 12 | TURN);
+            }
+        }
+        while (onFoundations > 0) {
+            takeBack(FROM_FOUNDATION_TO_WASTE | anySuit() << 4);
+        }
+        while (wasteSize > 0) {
+            takeBack(UNDEAL);
+        }
+        Preconditions.checkState(deckSize == CardCodes.CARDS - 28);
+    }
+
+    /**
+     * @return a suit picked at random from those with cards left on their foundations
+     */
+    private int anySuit() {
+        int suit = random.nextInt(CardCodes.SUITS);
+        while (foundation[suit] == 0) {
+            suit = (suit + 1) % CardCodes.SUITS;
+        }
+        return suit;
+    }
+}
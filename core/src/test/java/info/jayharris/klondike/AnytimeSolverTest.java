@@ -0,0 +1,174 @@
+package info.jayharris.klondike;
+
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Rank;
+import info.jayharris.cardgames.Suit;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AnytimeSolverTest {
+
+    @Test
+    public void testSolvesEasyPosition() {
+        Klondike klondike = almostWon();
+        AnytimeSolver.Result result = new AnytimeSolver(0, TimeUnit.SECONDS, 0).solve(klondike);
+
+        assertTrue(result.solved);
+        assertTrue(result.proven);
+        assertEquals(8, result.moves.size());
+        assertFalse(klondike.won());
+
+        for (Move move : result.moves) {
+            assertTrue(klondike.apply(move));
+        }
+        assertTrue(klondike.won());
+    }
+
+    @Test
+    public void testProvesUnwinnablePosition() {
+        Klondike klondike = deadlocked();
+        AnytimeSolver.Result result = new AnytimeSolver(5, TimeUnit.SECONDS, 1000000).solve(klondike);
+
+        assertFalse(result.solved);
+        assertTrue(result.proven);
+        assertTrue(result.nodes < 1000);
+        assertEquals(0, klondike.historySize());
+    }
+
+    @Test
+    public void testStopsWhenOutOfNodes() {
+        Klondike klondike = new Klondike();
+        klondike.init(3L);
+        Position before = Position.of(klondike);
+
+        AnytimeSolver.Result result = new AnytimeSolver(0, TimeUnit.SECONDS, 5000).solve(klondike);
+
+        assertEquals(5000, result.nodes);
+        assertFalse(result.proven);
+        assertTrue(result.score > 0);
+        assertFalse(result.moves.isEmpty());
+        assertEquals(0, klondike.historySize());
+        assertEquals(before, Position.of(klondike));
+    }
+
+    @Test
+    public void testCancelFromAnotherThread() throws Exception {
+        final Klondike klondike = new Klondike();
+        klondike.init(3L);
+        final Position before = Position.of(klondike);
+        final AnytimeSolver solver = new AnytimeSolver(0, TimeUnit.SECONDS, 0);
+        final AnytimeSolver.Result[] result = new AnytimeSolver.Result[1];
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = solver.solve(klondike);
+            }
+        });
+        thread.start();
+        Thread.sleep(100);
+        solver.cancel();
+        thread.join(5000);
+
+        assertFalse(thread.isAlive());
+        assertNotNull(result[0]);
+        assertEquals(before, Position.of(klondike));
+        assertEquals(0, klondike.historySize());
+    }
+
+    @Test
+    public void testStopsWhenOutOfTime() {
+        Klondike klondike = new Klondike();
+        klondike.init(3L);
+
+        long start = System.nanoTime();
+        new AnytimeSolver(200, TimeUnit.MILLISECONDS, 0).solve(klondike);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    /**
+     * Everything up to the eights is on the foundations, and the nines, which could go up next, are each
+     * face down under a jack and a king, with no empty tableau to move the king to. All the queen of hearts
+     * can do is go back and forth between the black kings.
+     */
+    static Klondike deadlocked() {
+        Klondike klondike = new Klondike();
+        klondike.getDeck().clear();
+
+        for (Suit suit : Suit.values()) {
+            Rank rank = Rank.ACE;
+            for (int i = 0; i < 8; ++i, rank = rank.higher()) {
+                klondike.getFoundation(suit).add(new Card(rank, suit));
+            }
+        }
+        String[][] columns = {
+                { "9S", "JH", "KS", "QH" }, { "9H", "JS", "KH" }, { "9C", "JD", "KC" }, { "9D", "JC", "KD" },
+                { "QS", "QC", "10S" }, { "QD", "10H" }, { "10D", "10C" }
+        };
+        int[] hidden = { 2, 2, 2, 2, 2, 1, 1 };
+        for (int i = 0; i < columns.length; ++i) {
+            for (int j = 0; j < columns[i].length; ++j) {
+                Card card = card(columns[i][j]);
+                if (j < hidden[i]) {
+                    card.flip();
+                }
+                klondike.getTableau(i).add(card);
+            }
+        }
+        klondike.recountFacedown();
+        return klondike;
+    }
+
+    private static Card card(String code) {
+        Rank rank;
+        switch (code.substring(0, code.length() - 1)) {
+            case "9":
+                rank = Rank.NINE;
+                break;
+            case "10":
+                rank = Rank.TEN;
+                break;
+            case "J":
+                rank = Rank.JACK;
+                break;
+            case "Q":
+                rank = Rank.QUEEN;
+                break;
+            default:
+                rank = Rank.KING;
+        }
+        for (Suit suit : Suit.values()) {
+            if (suit.name().charAt(0) == code.charAt(code.length() - 1)) {
+                return new Card(rank, suit);
+            }
+        }
+        throw new IllegalArgumentException(code);
+    }
+
+    /**
+     * Everything is on the foundations except the queens and kings, which are in four tableaus.
+     */
+    static Klondike almostWon() {
+        Klondike klondike = new Klondike();
+        klondike.getDeck().clear();
+
+        Suit[][] columns = {
+                { Suit.SPADES, Suit.HEARTS }, { Suit.HEARTS, Suit.SPADES },
+                { Suit.CLUBS, Suit.DIAMONDS }, { Suit.DIAMONDS, Suit.CLUBS }
+        };
+        for (Suit suit : Suit.values()) {
+            Rank rank = Rank.ACE;
+            for (int i = 0; i < 11; ++i, rank = rank.higher()) {
+                klondike.getFoundation(suit).add(new Card(rank, suit));
+            }
+        }
+        for (int i = 0; i < columns.length; ++i) {
+            klondike.getTableau(i).add(new Card(Rank.KING, columns[i][0]));
+            klondike.getTableau(i).add(new Card(Rank.QUEEN, columns[i][1]));
+        }
+        return klondike;
+    }
+}
@@ -0,0 +1,55 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BeamSearchPlayerTest {
+
+    @Test
+    public void testEasyPositionIsWon() {
+        Klondike klondike = AnytimeSolverTest.almostWon();
+        BeamSearchPlayer.Result result = new BeamSearchPlayer(1).play(klondike);
+
+        assertTrue(result.won);
+        for (Move move : result.moves) {
+            assertTrue(klondike.apply(move));
+        }
+        assertTrue(klondike.won());
+    }
+
+    @Test
+    public void testGameIsLeftAsItWasFound() {
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+        klondike.init(8L);
+        Position before = Position.of(klondike);
+
+        BeamSearchPlayer.Result result = new BeamSearchPlayer(4).play(klondike);
+        assertEquals(before, Position.of(klondike));
+        assertEquals(0, klondike.historySize());
+        assertFalse(result.moves.isEmpty());
+
+        for (Move move : result.moves) {
+            assertTrue(klondike.apply(move));
+        }
+        assertEquals(result.won, klondike.won());
+    }
+
+    @Test
+    public void testEvaluationIsPluggable() {
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE));
+        klondike.init(2L);
+
+        // prefers nothing, so it keeps the first move it finds and never gets anywhere in particular
+        Evaluation indifferent = new Evaluation() {
+            @Override
+            public double evaluate(Klondike klondike) {
+                return 0.0;
+            }
+        };
+        BeamSearchPlayer.Result result = new BeamSearchPlayer(1, indifferent, 5).play(klondike);
+        assertEquals(0.0, result.score, 0.0);
+        assertTrue(result.moves.isEmpty());
+        assertTrue(result.nodes > 0);
+    }
+}
@@ -0,0 +1,78 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HeuristicOrderingTest {
+
+    // as dealt, tableau 0 has one card and tableau 3 has three face-down cards under its face-up one
+    private final Move foundation = Move.tableauToFoundation(5),
+            flip = Move.tableauToTableau(3, 0, 1),
+            killer = Move.wasteToTableau(4),
+            history = Move.tableauToTableau(0, 6, 1),
+            plain = Move.wasteToTableau(1),
+            other = Move.tableauToTableau(0, 2, 1);
+
+    private Klondike klondike;
+    private HeuristicOrdering ordering;
+
+    @Before
+    public void setUp() {
+        klondike = new Klondike();
+        klondike.init(1L);
+        ordering = new HeuristicOrdering();
+    }
+
+    private List<Move> order(int ply, Move... moves) {
+        List<Move> list = Lists.newArrayList(moves);
+        ordering.order(klondike, list, ply);
+        return list;
+    }
+
+    @Test
+    public void testFoundationThenFlipThenKillerThenHistory() {
+        ordering.cutoff(killer, 3);
+        ordering.cutoff(history, 10);
+        ordering.cutoff(history, 10);
+
+        assertEquals(Lists.newArrayList(foundation, flip, killer, history, plain, other),
+                order(3, plain, history, other, killer, flip, foundation));
+    }
+
+    @Test
+    public void testTiesKeepGenerationOrder() {
+        assertEquals(Lists.newArrayList(other, Move.deal(), plain, history),
+                order(0, other, Move.deal(), plain, history));
+
+        Move alsoFoundation = Move.wasteToFoundation();
+        assertEquals(Lists.newArrayList(alsoFoundation, foundation, plain),
+                order(0, plain, alsoFoundation, foundation));
+    }
+
+    @Test
+    public void testCutoffPromotesAtItsPlyAndRaisesHistory() {
+        ordering.cutoff(history, 20);
+        ordering.cutoff(history, 20);
+        ordering.cutoff(killer, 5);
+
+        // a killer at its own ply, whatever the history says
+        assertEquals(Lists.newArrayList(killer, history, plain), order(5, plain, history, killer));
+        // only history elsewhere
+        assertEquals(Lists.newArrayList(history, killer, plain), order(6, plain, killer, history));
+    }
+
+    @Test
+    public void testClear() {
+        ordering.cutoff(killer, 5);
+        ordering.cutoff(history, 6);
+        ordering.clear();
+
+        assertEquals(Lists.newArrayList(plain, history, killer), order(5, plain, history, killer));
+        assertEquals(Lists.newArrayList(plain, killer, history), order(6, plain, killer, history));
+    }
+}
@@ -478,6 +478,207 @@ public class KlondikeTest {
 
     }
 
+    @Test
+    public void testInitWithSeed() {
+        Klondike first = new Klondike(), second = new Klondike();
+        first.init(1234L);
+        second.init(1234L);
+
+        assertEquals(describe(first), describe(second));
+    }
+
+    @Test
+    public void testApplyAndUndo() {
+        Random random = new Random(7L);
+        MoveGenerator generator = new MoveGenerator();
+        Deque<String> positions = new ArrayDeque<>();
+
+        klondike = new Klondike();
+        klondike.init(99L);
+
+        for (int i = 0; i < 200; ++i) {
+            List<Move> moves = generator.generate(klondike);
+            if (moves.isEmpty()) {
+                break;
+            }
+            positions.push(describe(klondike));
+            assertTrue(klondike.apply(moves.get(random.nextInt(moves.size()))));
+        }
+
+        while (!positions.isEmpty()) {
+            klondike.undo();
+            assertEquals(positions.pop(), describe(klondike));
+        }
+        assertEquals(0, klondike.historySize());
+    }
+
+    @Test
+    public void testApplyAndUndoFromStock() {
+        Random random = new Random(11L);
+        MoveGenerator generator = new MoveGenerator(true);
+        Deque<String> positions = new ArrayDeque<>();
+
+        klondike = new Klondike();
+        klondike.init(5L);
+
+        for (int i = 0; i < 100; ++i) {
+            List<Move> moves = generator.generate(klondike);
+            if (moves.isEmpty()) {
+                break;
+            }
+            Move move = moves.get(random.nextInt(moves.size()));
+            assertNotEquals(Move.Type.DEAL, move.type);
+            positions.push(describe(klondike));
+            assertTrue(move.toString(), klondike.apply(move));
+        }
+
+        while (!positions.isEmpty()) {
+            klondike.undo();
+            assertEquals(positions.pop(), describe(klondike));
+        }
+        assertEquals(0, klondike.historySize());
+    }
+
+    @Test
+    public void testStockCycle() throws Exception {
+        Field didChangeField = Klondike.class.getDeclaredField("didChange");
+        didChangeField.setAccessible(true);
+        didChangeField.setBoolean(klondike, true);
+
+        ImmutableList<Card> deck = ImmutableList.copyOf(klondike.getDeck());
+        int perDeal = klondike.rules.getDeal();
+        StockCycle cycle = StockCycle.of(klondike);
+
+        for (int n = 1; n * perDeal <= deck.size(); ++n) {
+            Card card = deck.get(n * perDeal - 1);
+            assertEquals(n, cycle.dealsTo(CardCodes.code(card)));
+            assertTrue((cycle.reachable() & (1L << CardCodes.code(card))) != 0);
+        }
+
+        // deal our way to each reachable card and make sure it's the one on top
+        for (long bits = cycle.reachable(); bits != 0; bits &= bits - 1) {
+            int code = Long.numberOfTrailingZeros(bits);
+            for (int n = 0; n < cycle.dealsTo(code); ++n) {
+                assertTrue(klondike.apply(Move.deal()));
+            }
+            assertEquals(code, CardCodes.code(klondike.getWaste().peekLast()));
+            while (klondike.historySize() > 0) {
+                klondike.undo();
+            }
+        }
+    }
+
+    @Test
+    public void testFacedownCountFollowsApplyAndUndo() {
+        Random random = new Random(3L);
+        MoveGenerator generator = new MoveGenerator();
+
+        klondike = new Klondike();
+        klondike.init(42L);
+        assertEquals(21, klondike.countFacedown());
+
+        for (int i = 0; i < 300; ++i) {
+            List<Move> moves = generator.generate(klondike);
+            if (moves.isEmpty() || (klondike.historySize() > 0 && random.nextInt(4) == 0)) {
+                if (klondike.historySize() == 0) {
+                    break;
+                }
+                klondike.undo();
+            }
+            else {
+                assertTrue(klondike.apply(moves.get(random.nextInt(moves.size()))));
+            }
+            assertEquals(countFacedown(klondike), klondike.countFacedown());
+        }
+    }
+
+    @Test
+    public void testFinishTriviallyWonGame() {
+        klondike = AnytimeSolverTest.almostWon();
+        final List<Object> seen = Lists.newArrayList();
+        klondike.addObserver(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                seen.add(arg);
+            }
+        });
+
+        assertTrue(klondike.isTriviallyWon());
+        List<Move> moves = klondike.finishingMoves();
+        assertEquals(8, moves.size());
+        assertFalse(klondike.won());
+
+        assertTrue(klondike.finish());
+        assertTrue(klondike.won());
+        assertTrue(klondike.isGameOver());
+        assertEquals(0, klondike.historySize());
+        assertTrue(seen.contains(Klondike.GameOver.GAME_OVER));
+
+        Klondike replayed = AnytimeSolverTest.almostWon();
+        for (Move move : moves) {
+            assertTrue(replayed.apply(move));
+        }
+        assertTrue(replayed.won());
+    }
+
+    @Test
+    public void testNotTriviallyWonWithCardsHidden() {
+        assertFalse(klondike.isTriviallyWon());
+        assertFalse(klondike.finish());
+        assertTrue(klondike.finishingMoves().isEmpty());
+
+        // face down, but put there by hand, so the count has to be told
+        klondike = AnytimeSolverTest.almostWon();
+        klondike.getTableau(5).add(new Card(Rank.KING, Suit.SPADES, true));
+        assertEquals(0, klondike.countFacedown());
+        klondike.recountFacedown();
+        assertFalse(klondike.isTriviallyWon());
+        assertEquals(1, klondike.countFacedown());
+    }
+
+    @Test
+    public void testApplyIllegalMove() {
+        klondike.getTableau(0).clear();
+        String before = describe(klondike);
+        assertFalse(klondike.apply(Move.tableauToFoundation(0)));
+        assertEquals(before, describe(klondike));
+        assertEquals(0, klondike.historySize());
+    }
+
+    private int countFacedown(Klondike klondike) {
+        int count = 0;
+        for (int i = 0; i < 7; ++i) {
+            for (Card card : klondike.getTableau(i)) {
+                if (card.isFacedown()) {
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write down everything about the position, including which cards are face down.
+     */
+    private String describe(Klondike klondike) {
+        StringBuilder sb = new StringBuilder();
+        List<List<Card>> piles = Lists.newArrayList();
+        piles.add(klondike.getDeck());
+        piles.add(klondike.getWaste());
+        for (int i = 0; i < 7; ++i) {
+            piles.add(klondike.getTableau(i));
+        }
+        piles.addAll(klondike.getFoundations());
+
+        for (List<Card> pile : piles) {
+            for (Card card : pile) {
+                sb.append(card.getRank()).append(card.getSuit()).append(card.isFacedown() ? "-" : "+");
+            }
+            sb.append('|');
+        }
+        return sb.append(klondike.getPasses()).append(klondike.didChange()).toString();
+    }
+
     /**
      * Add {@code numCards} cards face up to {@code tableau}.
      *
@@ -0,0 +1,229 @@
+package info.jayharris.klondike;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PlayoutTest {
+
+    @Test
+    public void testMovesMatchKlondike() {
+        Random random = new Random(17L);
+        MoveGenerator generator = new MoveGenerator();
+
+        for (long seed = 0; seed < 20; ++seed) {
+            Klondike klondike = new Klondike();
+            klondike.init(seed);
+            Playout playout = new Playout(), expected = new Playout();
+            playout.load(klondike);
+
+            for (int i = 0; i < 150; ++i) {
+                List<Move> moves = generator.generate(klondike);
+                if (moves.isEmpty()) {
+                    break;
+                }
+                Move move = moves.get(random.nextInt(moves.size()));
+                assertTrue(klondike.apply(move));
+                playout.apply(Playout.encode(move));
+
+                expected.load(klondike);
+                assertSamePosition(expected, playout);
+            }
+        }
+    }
+
+    @Test
+    public void testCopyFrom() {
+        Klondike klondike = new Klondike();
+        klondike.init(8L);
+        Playout playout = new Playout(), copy = new Playout();
+        playout.load(klondike);
+        copy.copyFrom(playout);
+
+        assertSamePosition(playout, copy);
+    }
+
+    @Test
+    public void testDeterminizeOnlyMovesHiddenCards() {
+        Klondike klondike = new Klondike();
+        klondike.init(8L);
+        klondike.deal();
+        Playout playout = new Playout(), original = new Playout();
+        playout.load(klondike);
+        original.copyFrom(playout);
+
+        playout.determinize(new Random(1L), new int[CardCodes.CARDS]);
+
+        assertArrayEquals(Arrays.copyOf(original.waste, original.wasteSize), Arrays.copyOf(playout.waste, playout.wasteSize));
+        for (int i = 0; i < 7; ++i) {
+            assertEquals(original.facedown[i], playout.facedown[i]);
+            assertEquals(original.tableau[i][original.size[i] - 1], playout.tableau[i][playout.size[i] - 1]);
+        }
+        assertEquals(cardsIn(original), cardsIn(playout));
+    }
+
+    @Test
+    public void testRolloutWinsEasyPosition() {
+        Playout playout = new Playout();
+        playout.load(AnytimeSolverTest.almostWon());
+
+        assertTrue(playout.rollout(new Random(), 100));
+        assertTrue(playout.won());
+    }
+
+    @Test
+    public void testRolloutFinishesOnceNothingIsHidden() {
+        Playout playout = new Playout();
+        playout.load(AnytimeSolverTest.almostWon());
+        assertTrue(playout.triviallyWon());
+
+        // eight cards to go up, one move each
+        assertFalse(playout.rollout(new Random(), 7));
+        assertTrue(playout.rollout(new Random(), 8));
+        assertTrue(playout.won());
+        assertEquals(8, playout.moved);
+    }
+
+    @Test
+    public void testInitDealsLikeKlondike() {
+        Playout playout = new Playout(), expected = new Playout();
+        for (Klondike.Rules.Deal deal : Klondike.Rules.Deal.values()) {
+            Klondike.Rules rules = new Klondike.Rules(deal, Klondike.Rules.Passes.THREE);
+            for (long seed = 0; seed < 50; ++seed) {
+                Klondike klondike = new Klondike(rules);
+                klondike.init(seed);
+                expected.load(klondike);
+
+                playout.init(rules, seed);
+                assertSamePosition(expected, playout);
+                assertEquals(expected.dealCount, playout.dealCount);
+                assertEquals(expected.maxPasses, playout.maxPasses);
+            }
+        }
+    }
+
+    @Test
+    public void testDealingAndPlayingAllocateNothing() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE);
+        final Playout playout = new Playout();
+        final Random random = new Random();
+
+        Runnable games = new Runnable() {
+            @Override
+            public void run() {
+                for (long seed = 0; seed < 2000; ++seed) {
+                    playout.init(rules, seed);
+                    random.setSeed(seed);
+                    playout.rollout(random, Simulation.MAX_MOVES);
+                }
+            }
+        };
+        assertEquals(0, allocated(threads, games));
+    }
+
+    @Test
+    public void testMovesAllocateNothing() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE);
+        final Playout playout = new Playout();
+
+        // generate, apply and check for the end by hand, not through rollout()
+        Runnable moves = new Runnable() {
+            @Override
+            public void run() {
+                for (long seed = 0; seed < 2000; ++seed) {
+                    playout.init(rules, seed);
+                    for (int step = 0; step < Simulation.MAX_MOVES && !playout.won(); ++step) {
+                        int n = playout.generate();
+                        if (n == 0) {
+                            break;
+                        }
+                        playout.apply(playout.moves[step % n]);
+                    }
+                }
+            }
+        };
+        assertEquals(0, allocated(threads, moves));
+    }
+
+    @Test
+    public void testGreedySimulationAllocatesOnlyResults() {
+        com.sun.management.ThreadMXBean threads = allocationCounter();
+        final Simulation simulation = new Simulation(new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+        final int games = 2000;
+
+        Runnable play = new Runnable() {
+            @Override
+            public void run() {
+                for (long seed = 0; seed < games; ++seed) {
+                    simulation.play(seed);
+                }
+            }
+        };
+        // a Result is a couple of dozen bytes; anything per move would be far more than this
+        assertTrue(allocated(threads, play) <= games * 64L);
+    }
+
+    /**
+     * @return the JVM's per-thread allocation counter, or skip the test if it doesn't have one
+     */
+    static com.sun.management.ThreadMXBean allocationCounter() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /**
+     * Run something a few times to warm it up, then count the bytes it allocates on this thread, less
+     * what counting them costs.
+     */
+    static long allocated(com.sun.management.ThreadMXBean threads, Runnable runnable) {
+        for (int i = 0; i < 5; ++i) {
+            runnable.run();
+        }
+
+        long id = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(id);
+        long overhead = threads.getThreadAllocatedBytes(id) - start;
+
+        start = threads.getThreadAllocatedBytes(id);
+        runnable.run();
+        return Math.max(0, threads.getThreadAllocatedBytes(id) - start - overhead);
+    }
+
+    static void assertSamePosition(Playout expected, Playout actual) {
+        assertArrayEquals(Arrays.copyOfRange(expected.deck, expected.deckPos, expected.deckSize),
+                Arrays.copyOfRange(actual.deck, actual.deckPos, actual.deckSize));
+        assertArrayEquals(Arrays.copyOf(expected.waste, expected.wasteSize), Arrays.copyOf(actual.waste, actual.wasteSize));
+        for (int i = 0; i < 7; ++i) {
+            assertArrayEquals(Arrays.copyOf(expected.tableau[i], expected.size[i]), Arrays.copyOf(actual.tableau[i], actual.size[i]));
+            assertEquals(expected.facedown[i], actual.facedown[i]);
+        }
+        assertEquals(expected.hidden, actual.hidden);
+        assertArrayEquals(expected.foundation, actual.foundation);
+        assertEquals(expected.passes, actual.passes);
+        assertEquals(expected.didChange, actual.didChange);
+    }
+
+    private static long cardsIn(Playout playout) {
+        long cards = 0L;
+        for (int j = playout.deckPos; j < playout.deckSize; ++j) {
+            cards |= 1L << playout.deck[j];
+        }
+        for (int i = 0; i < 7; ++i) {
+            for (int j = 0; j < playout.size[i]; ++j) {
+                cards |= 1L << playout.tableau[i][j];
+            }
+        }
+        return cards;
+    }
+}
@@ -0,0 +1,128 @@
+package info.jayharris.klondike;
+
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Suit;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PositionTest {
+
+    Klondike klondike, other;
+
+    @Before
+    public void setUp() {
+        klondike = new Klondike();
+        klondike.init(42L);
+        other = new Klondike();
+        other.init(42L);
+    }
+
+    @Test
+    public void testSamePositionSameHash() {
+        assertEquals(Position.of(klondike), Position.of(other));
+        assertEquals(Position.hash(klondike), Position.hash(other));
+    }
+
+    @Test
+    public void testTableauOrderDoesNotMatter() {
+        swapTableaus(other, 0, 3);
+        swapTableaus(other, 6, 2);
+
+        assertEquals(Position.of(klondike), Position.of(other));
+        assertEquals(Position.hash(klondike), Position.hash(other));
+    }
+
+    @Test
+    public void testEmptyTableausAreInterchangeable() {
+        klondike.getTableau(1).clear();
+        other.getTableau(1).clear();
+        swapTableaus(other, 1, 5);
+
+        assertEquals(Position.hash(klondike), Position.hash(other));
+    }
+
+    @Test
+    public void testSameColorSuitsAreInterchangeable() {
+        relabel(other, Suit.HEARTS, Suit.DIAMONDS);
+        assertEquals(Position.of(klondike), Position.of(other));
+
+        relabel(other, Suit.CLUBS, Suit.SPADES);
+        assertEquals(Position.of(klondike), Position.of(other));
+    }
+
+    @Test
+    public void testSuitsWithDifferentFoundationsAreNotInterchangeable() {
+        klondike.getFoundation(Suit.HEARTS).add(removeCard(klondike, Suit.HEARTS));
+        other.getFoundation(Suit.HEARTS).add(removeCard(other, Suit.HEARTS));
+        relabel(other, Suit.HEARTS, Suit.DIAMONDS);
+
+        assertNotEquals(Position.of(klondike), Position.of(other));
+    }
+
+    @Test
+    public void testDifferentPositionsDifferentHash() {
+        assertTrue(other.deal());
+        assertNotEquals(Position.of(klondike), Position.of(other));
+        assertNotEquals(Position.hash(klondike), Position.hash(other));
+    }
+
+    private void swapTableaus(Klondike klondike, int i, int j) {
+        List<Card> temp = new LinkedList<>(klondike.getTableau(i));
+        klondike.getTableau(i).clear();
+        klondike.getTableau(i).addAll(klondike.getTableau(j));
+        klondike.getTableau(j).clear();
+        klondike.getTableau(j).addAll(temp);
+    }
+
+    /**
+     * Swap the suits {@code a} and {@code b} everywhere in the game.
+     */
+    private void relabel(Klondike klondike, Suit a, Suit b) {
+        relabel(klondike.getDeck(), a, b);
+        relabel(klondike.getWaste(), a, b);
+        for (int i = 0; i < 7; ++i) {
+            relabel(klondike.getTableau(i), a, b);
+        }
+    }
+
+    private void relabel(List<Card> pile, Suit a, Suit b) {
+        for (int i = 0; i < pile.size(); ++i) {
+            Card card = pile.get(i), swapped;
+            if (card.getSuit() == a || card.getSuit() == b) {
+                swapped = new Card(card.getRank(), card.getSuit() == a ? b : a);
+                if (swapped.isFacedown() != card.isFacedown()) {
+                    swapped.flip();
+                }
+                pile.set(i, swapped);
+            }
+        }
+    }
+
+    /**
+     * Take the ace of {@code suit} out of wherever it was dealt.
+     */
+    private Card removeCard(Klondike klondike, Suit suit) {
+        List<List<Card>> piles = new LinkedList<>();
+        piles.add(klondike.getDeck());
+        for (int i = 0; i < 7; ++i) {
+            piles.add(klondike.getTableau(i));
+        }
+        for (List<Card> pile : piles) {
+            for (Card card : pile) {
+                if (card.getSuit() == suit && CardCodes.rank(CardCodes.code(card)) == 0) {
+                    pile.remove(card);
+                    if (card.isFacedown()) {
+                        card.flip();
+                    }
+                    return card;
+                }
+            }
+        }
+        throw new AssertionError();
+    }
+}
@@ -0,0 +1,124 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RolloutEvaluatorTest {
+
+    @Test
+    public void testEasyPositionIsAlwaysWon() {
+        RolloutEvaluator evaluator = new RolloutEvaluator(2, 100, 1L);
+        try {
+            Map<Move, Double> values = evaluator.evaluate(AnytimeSolverTest.almostWon());
+
+            assertFalse(values.isEmpty());
+            assertEquals(1.0, values.values().iterator().next(), 0.0);
+        }
+        finally {
+            evaluator.shutdown();
+        }
+    }
+
+    @Test
+    public void testSameSeedSameResultOnAnyNumberOfThreads() {
+        Klondike klondike = new Klondike();
+        klondike.init(21L);
+
+        RolloutEvaluator one = new RolloutEvaluator(1, 500, 99L), four = new RolloutEvaluator(4, 500, 99L);
+        try {
+            Map<Move, Double> expected = one.evaluate(klondike);
+            assertEquals(expected, four.evaluate(klondike));
+            for (double value : expected.values()) {
+                assertTrue(value >= 0.0 && value <= 1.0);
+            }
+        }
+        finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    public void testReseededSameAsNew() {
+        Klondike klondike = new Klondike();
+        klondike.init(22L);
+
+        RolloutEvaluator reused = new RolloutEvaluator(2, 300, 7L), fresh = new RolloutEvaluator(2, 300, 8L);
+        try {
+            reused.evaluate(klondike);
+            reused.setSeed(8L);
+            assertEquals(fresh.evaluate(klondike), reused.evaluate(klondike));
+        }
+        finally {
+            reused.shutdown();
+            fresh.shutdown();
+        }
+    }
+
+    @Test
+    public void testDeckSeenOnceTurnedOver() {
+        for (Klondike.Rules.Deal deal : Klondike.Rules.Deal.values()) {
+            Klondike klondike = turnedOver(new Klondike.Rules(deal));
+            Playout playout = new Playout();
+            playout.load(klondike);
+            int[] deck = Arrays.copyOfRange(playout.deck, playout.deckPos, playout.deckSize);
+            int[][] tableau = copy(playout.tableau);
+
+            Random random = new Random(5L);
+            int[] scratch = new int[CardCodes.CARDS];
+            for (int i = 0; i < 20; ++i) {
+                playout.determinize(random, scratch);
+                assertArrayEquals(deal.toString(), deck, Arrays.copyOfRange(playout.deck, playout.deckPos, playout.deckSize));
+            }
+            // while the face-down cards still get shuffled
+            assertFalse(Arrays.deepEquals(tableau, playout.tableau));
+        }
+    }
+
+    @Test
+    public void testDeckShuffledUntilTurnedOver() {
+        Klondike klondike = new Klondike();
+        klondike.init(3L);
+        Playout playout = new Playout();
+        playout.load(klondike);
+        int[] deck = playout.deck.clone();
+
+        playout.determinize(new Random(5L), new int[CardCodes.CARDS]);
+        assertFalse(Arrays.equals(deck, playout.deck));
+    }
+
+    /**
+     * Find a deal that can be played through the deck once, moving a card off the waste along the way, and
+     * turn the deck over.
+     */
+    private static Klondike turnedOver(Klondike.Rules rules) {
+        for (long seed = 0; ; ++seed) {
+            Klondike klondike = new Klondike(rules);
+            klondike.init(seed);
+            while (!klondike.isDeckEmpty()) {
+                klondike.apply(Move.deal());
+                if (!klondike.apply(Move.wasteToFoundation())) {
+                    for (int i = 0; i < 7 && !klondike.apply(Move.wasteToTableau(i)); ++i) {
+                        // try the next one
+                    }
+                }
+            }
+            if (klondike.apply(Move.deal()) && klondike.getPasses() == 1 && klondike.getDeck().size() > 3) {
+                return klondike;
+            }
+        }
+    }
+
+    private static int[][] copy(int[][] piles) {
+        int[][] copy = new int[piles.length][];
+        for (int i = 0; i < piles.length; ++i) {
+            copy[i] = piles[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,163 @@
+package info.jayharris.klondike;
+
+import info.jayharris.cardgames.Suit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SnapshotTest {
+
+    private static Klondike publishing(long seed) {
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+        klondike.init(seed);
+        klondike.publishSnapshots();
+        return klondike;
+    }
+
+    private static int cards(Snapshot snapshot) {
+        int count = snapshot.getDeckSize() + snapshot.getWaste().size();
+        for (int i = 0; i < 7; ++i) {
+            count += snapshot.getTableau(i).size();
+        }
+        for (Suit suit : Suit.values()) {
+            count += snapshot.getFoundationSize(suit);
+        }
+        return count;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotPublishingByDefault() {
+        Klondike klondike = new Klondike(new Klondike.Rules());
+        klondike.init(1L);
+        klondike.getSnapshot();
+    }
+
+    @Test
+    public void testSnapshotFollowsMoves() {
+        Klondike klondike = publishing(5L);
+        Snapshot before = klondike.getSnapshot();
+        assertEquals(klondike.getVersion(), before.getVersion());
+        assertEquals(52, cards(before));
+        assertEquals(klondike.getDeck().size(), before.getDeckSize());
+
+        assertTrue(klondike.apply(Move.deal()));
+        Snapshot after = klondike.getSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(klondike.getWaste().size(), after.getWaste().size());
+        assertEquals(klondike.getWaste().peekLast().toString(), after.getWaste().get(after.getWaste().size() - 1).toString());
+
+        // the old snapshot hasn't moved
+        assertTrue(before.getWaste().isEmpty());
+
+        klondike.undo();
+        Snapshot undone = klondike.getSnapshot();
+        assertTrue(undone.getVersion() > after.getVersion());
+        assertTrue(undone.samePosition(before));
+        assertFalse(undone.samePosition(after));
+    }
+
+    @Test
+    public void testSnapshotCardsCantChangeIt() {
+        Klondike klondike = publishing(5L);
+        Snapshot snapshot = klondike.getSnapshot();
+        snapshot.getTableau(6).get(0).flip();
+        assertTrue(snapshot.getTableau(6).get(0).isFacedown());
+        assertTrue(klondike.getTableau(6).get(0).isFacedown());
+    }
+
+    @Test
+    public void testSearchesDontPublish() {
+        Klondike klondike = publishing(1L);
+        Snapshot before = klondike.getSnapshot();
+
+        new Solver(20000).solve(klondike);
+        new BeamSearchPlayer(2).play(klondike);
+
+        assertSame(before, klondike.getSnapshot());
+        assertTrue(klondike.getVersion() > before.getVersion());
+
+        // and publishing picks up again afterwards
+        assertTrue(klondike.apply(Move.deal()));
+        assertNotSame(before, klondike.getSnapshot());
+    }
+
+    @Test
+    public void testSearchesDontNotifyObservers() {
+        Klondike klondike = AnytimeSolverTest.almostWon();
+        klondike.publishSnapshots();
+        final List<Object> heard = new ArrayList<>();
+        klondike.addObserver(new Observer() {
+            @Override
+            public void update(Observable o, Object arg) {
+                heard.add(arg);
+            }
+        });
+
+        // the searches win the game, but only in the search
+        Solver.Result result = new Solver().solve(klondike);
+        assertTrue(result.solved());
+        assertTrue(new BeamSearchPlayer(2).play(klondike).won);
+        assertEquals(Collections.emptyList(), heard);
+
+        for (Move move : result.moves) {
+            assertTrue(klondike.apply(move));
+        }
+        assertEquals(result.moves.size() + 1, heard.size());
+        assertEquals(Klondike.GameOver.GAME_OVER, heard.get(heard.size() - 1));
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final Klondike klondike = publishing(11L);
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long last = -1;
+                try {
+                    while (!done.get()) {
+                        Snapshot snapshot = klondike.getSnapshot();
+                        assertTrue(snapshot.getVersion() >= last);
+                        assertEquals(52, cards(snapshot));
+                        last = snapshot.getVersion();
+                    }
+                }
+                catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+
+        MoveGenerator generator = new MoveGenerator(false);
+        Random random = new Random(11L);
+        for (int i = 0; i < 20000 && failure.get() == null; ++i) {
+            List<Move> moves = generator.generate(klondike);
+            if (moves.isEmpty() || klondike.historySize() > 50 || random.nextInt(4) == 0) {
+                if (klondike.historySize() > 0) {
+                    klondike.undo();
+                }
+                continue;
+            }
+            klondike.apply(moves.get(random.nextInt(moves.size())));
+        }
+        done.set(true);
+        reader.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(klondike.getVersion(), klondike.getSnapshot().getVersion());
+    }
+}
@@ -0,0 +1,97 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class SolverStatsTest {
+
+    private static Solver.Result solve(long seed) {
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE));
+        klondike.init(seed);
+        return new Solver(50000).solve(klondike);
+    }
+
+    @Test
+    public void testCountsSearches() {
+        solve(0);
+        SolverStats stats = SolverStats.get();
+        stats.reset();
+        assertEquals(0, stats.getNodes());
+
+        long nodes = solve(1).nodes + solve(2).nodes;
+        assertEquals(2, stats.getSearches());
+        assertEquals(nodes, stats.getNodes());
+        assertTrue(stats.getNodesPerSecond() > 0);
+        assertTrue(stats.getNodesPerSearchSecond() > 0);
+        assertTrue(stats.getTableHitRate() >= 0.0 && stats.getTableHitRate() < 1.0);
+        assertTrue(stats.getAverageBranchingFactor() > 1.0);
+        assertTrue(stats.getMaxDepth() > 0);
+
+        long phases = stats.getGenerateMillis() + stats.getHashMillis() + stats.getLookupMillis() +
+                stats.getApplyMillis() + stats.getUndoMillis();
+        assertTrue(phases >= 0);
+    }
+
+    @Test
+    public void testPublishedThroughJmx() throws Exception {
+        solve(0);
+        SolverStats.get().reset();
+        long nodes = solve(3).nodes;
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(SolverStats.NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(nodes, server.getAttribute(name, "Nodes"));
+        assertEquals(1L, server.getAttribute(name, "Searches"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "Nodes"));
+    }
+
+    @Test
+    public void testOtherThreadsAreCounted() throws Exception {
+        SolverStats.get().reset();
+        final long[] nodes = new long[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                nodes[0] = solve(4).nodes;
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(nodes[0], SolverStats.get().getNodes());
+    }
+
+    @Test
+    public void testFinishedThreadsAreFolded() throws Exception {
+        SolverStats.get().reset();
+        int live = SolverProfile.live();
+        final long[] nodes = new long[10];
+        for (int i = 0; i < nodes.length; ++i) {
+            final int seed = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    nodes[seed] = solve(seed).nodes;
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+
+        long total = 0;
+        for (long n : nodes) {
+            total += n;
+        }
+        assertEquals(total, SolverStats.get().getNodes());
+        assertEquals(nodes.length, SolverStats.get().getSearches());
+        assertTrue(SolverProfile.live() <= live);
+    }
+}
@@ -0,0 +1,178 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpectatorServerTest {
+
+    private static Klondike game(long seed) {
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+        klondike.init(seed);
+        klondike.publishSnapshots();
+        return klondike;
+    }
+
+    /**
+     * Make a random legal move, or sometimes take one back.
+     */
+    private static void wander(Klondike klondike, MoveGenerator generator, Random random) {
+        List<Move> moves = generator.generate(klondike);
+        if (moves.isEmpty() || klondike.historySize() > 50 || random.nextInt(4) == 0) {
+            if (klondike.historySize() > 0) {
+                klondike.undo();
+            }
+        }
+        else {
+            klondike.apply(moves.get(random.nextInt(moves.size())));
+        }
+    }
+
+    private static void write(ByteArrayOutputStream stream, ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.duplicate().get(bytes);
+        stream.write(bytes, 0, bytes.length);
+    }
+
+    private static void assertSees(Snapshot snapshot, Spectator spectator) {
+        assertEquals(snapshot.getVersion(), spectator.getVersion());
+        assertEquals(snapshot.getPasses(), spectator.getPasses());
+        for (int pile = 0; pile < Snapshot.PILES; ++pile) {
+            assertArrayEquals(SpectatorServer.visible(snapshot, pile), spectator.getPile(pile));
+        }
+    }
+
+    private static Spectator connect(SpectatorServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10000);
+        return new Spectator(socket.getInputStream(), socket);
+    }
+
+    private static void catchUp(Spectator spectator, long version) throws IOException {
+        while (spectator.getVersion() < version) {
+            spectator.read();
+        }
+    }
+
+    private static void awaitSpectators(SpectatorServer server, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && server.getSpectators() < count; ++i) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, server.getSpectators());
+    }
+
+    @Test
+    public void testFramesRoundTrip() throws IOException {
+        Klondike klondike = game(4L);
+        MoveGenerator generator = new MoveGenerator(false);
+        Random random = new Random(4L);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        Snapshot last = klondike.getSnapshot();
+        ByteBuffer snapshot = SpectatorServer.snapshotFrame(last);
+        write(stream, snapshot);
+
+        int diffBytes = 0, diffs = 500;
+        for (int i = 0; i < diffs; ++i) {
+            wander(klondike, generator, random);
+            Snapshot next = klondike.getSnapshot();
+            ByteBuffer diff = SpectatorServer.diffFrame(last, next);
+            diffBytes += diff.limit();
+            write(stream, diff);
+            last = next;
+        }
+        assertTrue(diffBytes / diffs < snapshot.limit() / 2);
+
+        Spectator spectator = new Spectator(new ByteArrayInputStream(stream.toByteArray()), stream);
+        assertTrue(spectator.read());
+        for (int i = 0; i < diffs; ++i) {
+            assertFalse(spectator.read());
+        }
+        assertSees(last, spectator);
+    }
+
+    @Test
+    public void testFaceDownCardsAreHidden() {
+        Snapshot snapshot = game(4L).getSnapshot();
+        byte[] tableau = SpectatorServer.visible(snapshot, 8);
+        assertEquals(7, tableau.length);
+        for (int i = 0; i < 6; ++i) {
+            assertEquals(SpectatorServer.HIDDEN, tableau[i]);
+        }
+        assertNotEquals(SpectatorServer.HIDDEN, tableau[6]);
+    }
+
+    @Test
+    public void testLiveAndLateSpectators() throws Exception {
+        Klondike klondike = game(9L);
+        MoveGenerator generator = new MoveGenerator(false);
+        Random random = new Random(9L);
+
+        try (SpectatorServer server = new SpectatorServer(klondike, 0);
+             Spectator early = connect(server)) {
+            awaitSpectators(server, 1);
+            assertTrue(early.read());
+
+            for (int i = 0; i < 200; ++i) {
+                wander(klondike, generator, random);
+            }
+            catchUp(early, klondike.getVersion());
+            assertSees(klondike.getSnapshot(), early);
+
+            try (Spectator late = connect(server)) {
+                // a late joiner starts from a snapshot of the game as it is now
+                assertTrue(late.read());
+                assertSees(klondike.getSnapshot(), late);
+
+                for (int i = 0; i < 200; ++i) {
+                    wander(klondike, generator, random);
+                }
+                catchUp(early, klondike.getVersion());
+                catchUp(late, klondike.getVersion());
+                assertSees(klondike.getSnapshot(), early);
+                assertSees(klondike.getSnapshot(), late);
+            }
+        }
+    }
+
+    @Test
+    public void testSlowSpectatorGetsASnapshot() throws Exception {
+        Klondike klondike = game(12L);
+        MoveGenerator generator = new MoveGenerator(false);
+        Random random = new Random(12L);
+
+        try (SpectatorServer server = new SpectatorServer(klondike, 0, SpectatorServer.MIN_BUFFER_BYTES)) {
+            Socket socket = new Socket();
+            socket.setReceiveBufferSize(1024);
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+            socket.setSoTimeout(10000);
+
+            try (Spectator slow = new Spectator(socket.getInputStream(), socket)) {
+                awaitSpectators(server, 1);
+
+                // nobody reads, so the socket fills up, then the server's buffer
+                for (int i = 0; i < 200000 && server.getResyncs() == 0; ++i) {
+                    wander(klondike, generator, random);
+                    if (i % 1000 == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+                assertTrue(server.getResyncs() > 0);
+                assertEquals(1, server.getSpectators());
+
+                catchUp(slow, klondike.getVersion());
+                assertSees(klondike.getSnapshot(), slow);
+            }
+        }
+    }
+}
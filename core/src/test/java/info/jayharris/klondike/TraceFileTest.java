@@ -0,0 +1,110 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TraceFileTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE);
+
+    @Test
+    public void testTraceAgreesWithResults() throws IOException {
+        File file = new File(Files.createTempDir(), "trace.bin");
+        List<Simulation.Result> results = Lists.newArrayList();
+        Simulation simulation = new Simulation(rules);
+        long moves = 0;
+        try (TraceFile.Writer writer = new TraceFile.Writer(file, rules)) {
+            for (long seed = 100; seed < 400; ++seed) {
+                Simulation.Result result = simulation.play(seed, writer);
+                // tracing doesn't change how the game goes
+                assertEquals(new Simulation(rules).play(seed), result);
+                results.add(result);
+                moves += result.moves;
+            }
+        }
+
+        try (TraceFile.Reader reader = new TraceFile.Reader(file)) {
+            assertEquals(moves, reader.rows());
+            assertEquals(rules.deal, reader.rules.deal);
+            assertEquals(rules.passes, reader.rules.passes);
+
+            TraceFile.Reader.Cursor game = reader.scan(TraceFile.Column.GAME), ply = reader.scan(TraceFile.Column.PLY),
+                    to = reader.scan(TraceFile.Column.TO), card = reader.scan(TraceFile.Column.CARD);
+            for (Simulation.Result result : results) {
+                int foundationCards = 0;
+                for (int i = 0; i < result.moves; ++i) {
+                    assertTrue(game.next() && ply.next() && to.next() && card.next());
+                    assertEquals(result.seed, game.get());
+                    assertEquals(i, ply.get());
+                    if (to.get() >= 9) {
+                        ++foundationCards;
+                        assertEquals(to.get() - 9, CardCodes.suit((int) card.get()));
+                    }
+                }
+                assertEquals(result.foundationCards, foundationCards);
+            }
+            assertFalse(game.next());
+        }
+    }
+
+    @Test
+    public void testManyBlocks() throws IOException {
+        File file = new File(Files.createTempDir(), "trace.bin");
+        int rows = TraceFile.BLOCK_ROWS * 2 + 123;
+        try (TraceFile.Writer writer = new TraceFile.Writer(file, rules)) {
+            for (int i = 0; i < rows; ++i) {
+                writer.write(i / 100, i % 100, i % 5, i % 13, (i + 1) % 13, i % 52, i % 4, i / 1000);
+            }
+            assertEquals(rows, writer.rows());
+        }
+
+        // well under the 17 bytes a row it would take uncompressed
+        assertTrue(file.length() < rows * 17L / 4);
+
+        try (TraceFile.Reader reader = new TraceFile.Reader(file)) {
+            assertEquals(rows, reader.rows());
+
+            // each column on its own, in whatever order
+            TraceFile.Reader.Cursor cursor = reader.scan(TraceFile.Column.PASS);
+            for (int i = 0; i < rows; ++i) {
+                assertTrue(cursor.next());
+                assertEquals(Math.min(i / 1000, 0xff), cursor.get());
+            }
+            assertFalse(cursor.next());
+
+            cursor = reader.scan(TraceFile.Column.GAME);
+            for (int i = 0; i < rows; ++i) {
+                assertTrue(cursor.next());
+                assertEquals(i / 100, cursor.get());
+            }
+            assertFalse(cursor.next());
+
+            cursor = reader.scan(TraceFile.Column.CARD);
+            for (int i = 0; i < rows; ++i) {
+                assertTrue(cursor.next());
+                assertEquals(i % 52, cursor.get());
+            }
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnfinishedFileIsRejected() throws IOException {
+        File file = new File(Files.createTempDir(), "trace.bin");
+        try (TraceFile.Writer writer = new TraceFile.Writer(file, rules)) {
+            writer.write(1, 0, 0, 0, 1, 5, 3, 0);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        new TraceFile.Reader(file).close();
+    }
+}
@@ -0,0 +1,139 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void testPutAndGet() {
+        TranspositionTable table = new TranspositionTable(1 << 16, TranspositionTable.Replacement.DEPTH_PREFERRED);
+
+        assertEquals(-1, table.get(12345L, -1));
+        table.put(12345L, 7, 10);
+        assertEquals(7, table.get(12345L, -1));
+        table.put(12345L, 8, 10);
+        assertEquals(8, table.get(12345L, -1));
+        assertEquals(1, table.size());
+
+        table.put(0L, 3, 10);
+        assertTrue(table.contains(0L));
+        assertEquals(3, table.get(0L, -1));
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        TranspositionTable table = new TranspositionTable(1 << 16, TranspositionTable.Replacement.CLOCK);
+
+        assertTrue(table.putIfAbsent(99L, 1, 0));
+        assertFalse(table.putIfAbsent(99L, 2, 0));
+        assertEquals(1, table.get(99L, -1));
+        assertEquals(2, table.hits());
+        assertEquals(1, table.misses());
+    }
+
+    @Test
+    public void testDepthPreferredEvictsLowestPriority() {
+        // a single bucket
+        TranspositionTable table = new TranspositionTable(TranspositionTable.BUCKET_BYTES,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        assertEquals(TranspositionTable.BUCKET_ENTRIES, table.capacity());
+
+        for (int i = 1; i <= 4; ++i) {
+            table.put(i, i, 100 * i);
+        }
+        table.put(5L, 5, 250);
+
+        assertFalse(table.contains(1L));
+        for (long key = 2; key <= 5; ++key) {
+            assertTrue(table.contains(key));
+        }
+        assertEquals(1, table.evictions());
+        assertEquals(4, table.size());
+    }
+
+    @Test
+    public void testClockSparesRecentlyUsedEntries() {
+        TranspositionTable table = new TranspositionTable(TranspositionTable.BUCKET_BYTES,
+                TranspositionTable.Replacement.CLOCK);
+
+        for (int i = 1; i <= 4; ++i) {
+            table.put(i, i, 0);
+        }
+        table.contains(1L);
+        table.contains(2L);
+        table.put(5L, 5, 0);
+
+        assertTrue(table.contains(1L));
+        assertTrue(table.contains(2L));
+        assertFalse(table.contains(3L));
+        assertTrue(table.contains(5L));
+    }
+
+    @Test
+    public void testClear() {
+        TranspositionTable table = new TranspositionTable(1 << 16, TranspositionTable.Replacement.CLOCK);
+        table.put(42L, 1, 1);
+        table.clear();
+
+        assertFalse(table.contains(42L));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("table", ".bin");
+        file.deleteOnExit();
+
+        TranspositionTable table = new TranspositionTable(1 << 16, TranspositionTable.Replacement.DEPTH_PREFERRED);
+        for (long key = 1; key <= 500; ++key) {
+            table.put(key * 0x9e3779b97f4a7c15L, (int) key, 0);
+        }
+        table.save(file);
+
+        TranspositionTable copy = new TranspositionTable(1 << 16, TranspositionTable.Replacement.DEPTH_PREFERRED);
+        copy.load(file);
+        assertEquals(table.size(), copy.size());
+        for (long key = 1; key <= 500; ++key) {
+            assertEquals(table.get(key * 0x9e3779b97f4a7c15L, -1), copy.get(key * 0x9e3779b97f4a7c15L, -1));
+        }
+
+        try {
+            new TranspositionTable(1 << 17, TranspositionTable.Replacement.DEPTH_PREFERRED).load(file);
+            fail("loaded a table of the wrong size");
+        }
+        catch (java.io.IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testResumeAbortedSolve() throws Exception {
+        File file = File.createTempFile("table", ".bin");
+        file.deleteOnExit();
+
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE));
+        klondike.init(1L);
+        Solver.Result expected = new Solver(200000).solve(klondike);
+        assertEquals(Solver.Status.SOLVED, expected.status);
+
+        TranspositionTable table = new TranspositionTable(Solver.DEFAULT_TABLE_BYTES,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        Solver.Result result = new Solver(expected.nodes / 3, table).solve(klondike);
+        assertEquals(Solver.Status.ABORTED, result.status);
+        table.save(file);
+
+        table = new TranspositionTable(Solver.DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED);
+        table.load(file);
+        long total = result.nodes;
+        for (int i = 0; i < 10 && result.status == Solver.Status.ABORTED; ++i) {
+            result = new Solver(expected.nodes / 3, table).resume(klondike);
+            total += result.nodes;
+        }
+        assertEquals(expected.status, result.status);
+        assertTrue(total < expected.nodes * 3);
+    }
+}
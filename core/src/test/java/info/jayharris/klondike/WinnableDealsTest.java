@@ -0,0 +1,53 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class WinnableDealsTest {
+
+    @Test
+    public void testSolutionWinsEveryDeal() {
+        for (Klondike.Rules.Deal deal : Klondike.Rules.Deal.values()) {
+            // one pass is the hardest
+            Klondike.Rules rules = new Klondike.Rules(deal, Klondike.Rules.Passes.SINGLE);
+            WinnableDeals deals = new WinnableDeals(rules);
+            for (long seed = 0; seed < 500; ++seed) {
+                Klondike klondike = new Klondike(rules);
+                deals.init(klondike, seed);
+
+                assertEquals(24, klondike.getDeck().size());
+                for (int i = 0; i < 7; ++i) {
+                    assertEquals(i + 1, klondike.getTableau(i).size());
+                    assertEquals(1, klondike.getTableau(i).countFaceup());
+                }
+                for (Move move : deals.solution()) {
+                    assertTrue(deal + " " + seed + " " + move, klondike.apply(move));
+                }
+                assertTrue(klondike.won());
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedSameDeal() {
+        Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE);
+        WinnableDeals deals = new WinnableDeals(rules);
+        int[] deal = deals.order(42);
+
+        assertArrayEquals(deal, new WinnableDeals(rules).order(42));
+        assertFalse(Arrays.equals(deal, deals.order(43)));
+        assertArrayEquals(deal, deals.order(42));
+    }
+
+    @Test
+    public void testSolverWins() {
+        Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE, Klondike.Rules.Passes.SINGLE);
+        Klondike klondike = new Klondike(rules);
+        new WinnableDeals(rules).init(klondike, 7);
+
+        assertTrue(new Solver().solve(klondike).solved());
+    }
+}
@@ -0,0 +1,230 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Screen} that writes ANSI escape sequences straight to a stream, usually the terminal the game
+ * was started from.
+ *
+ * Everything drawn goes into a buffer, and the buffer is written out in one go when the screen is
+ * {@link #refresh() refreshed}, so each frame costs a single write. Only the eight standard colors are
+ * available. Starting up needs nothing beyond the JDK, which makes this much quicker and lighter than a
+ * {@link BlackenScreen} and lets the game be played over ssh.
+ */
+public class AnsiScreen implements Screen {
+
+    private static final String ESC = "\u001b[";
+
+    private static final Map<String, Integer> COLORS = ImmutableMap.<String, Integer>builder()
+            .put("black", 0).put("red", 1).put("green", 2).put("yellow", 3)
+            .put("blue", 4).put("magenta", 5).put("cyan", 6).put("white", 7)
+            .build();
+
+    private final Reader in;
+    private final Writer out;
+    private final int height, width;
+    private int foreground = 7, background = 0;
+    private String savedSettings = null;
+    private boolean closed = false;
+
+    /**
+     * @param in where key presses come from
+     * @param out where to draw
+     * @param height the number of rows on the screen
+     * @param width the number of columns on the screen
+     */
+    public AnsiScreen(InputStream in, OutputStream out, int height, int width) {
+        this.in = new InputStreamReader(in, Charsets.UTF_8);
+        this.out = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8), 1 << 16);
+        this.height = height;
+        this.width = width;
+
+        write(ESC + "?1049h" + ESC + "?25l");       // alternate screen, hide the cursor
+        applyColors();
+    }
+
+    /**
+     * Take over the terminal this program is running in: put it into raw mode, so each key press is read
+     * as soon as it's typed and isn't echoed, until {@link #quit()} or the program exits.
+     *
+     * @return the screen
+     */
+    public static AnsiScreen open() throws IOException {
+        String saved = stty("-g").trim();
+        stty("-icanon", "-echo", "min", "1");
+
+        int height = 25, width = 80;
+        List<String> size = Lists.newArrayList(Splitter.on(' ').omitEmptyStrings().trimResults().split(stty("size")));
+        if (size.size() == 2) {
+            height = Integer.parseInt(size.get(0));
+            width = Integer.parseInt(size.get(1));
+        }
+
+        final AnsiScreen screen = new AnsiScreen(System.in, System.out, height, width);
+        screen.savedSettings = saved;
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                screen.quit();
+            }
+        });
+        return screen;
+    }
+
+    @Override
+    public void mvputs(int row, int column, String str) {
+        write(ESC + (row + 1) + ";" + (column + 1) + "H" + str);
+    }
+
+    @Override
+    public boolean hasColor(String color) {
+        return COLORS.containsKey(color.toLowerCase());
+    }
+
+    @Override
+    public void setCurBackground(String color) {
+        Integer code = COLORS.get(color.toLowerCase());
+        if (code != null && code != background) {
+            background = code;
+            applyColors();
+        }
+    }
+
+    @Override
+    public void setCurForeground(String color) {
+        Integer code = COLORS.get(color.toLowerCase());
+        if (code != null && code != foreground) {
+            foreground = code;
+            applyColors();
+        }
+    }
+
+    @Override
+    public void clear() {
+        write(ESC + "2J" + ESC + "H");
+    }
+
+    @Override
+    public void refresh() {
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public int getch() {
+        refresh();
+        return waitForKey();
+    }
+
+    @Override
+    public int waitForKey() {
+        try {
+            return in.read();
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public int poll() {
+        try {
+            return in.ready() ? in.read() : NO_KEY;
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public synchronized void quit() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        write(ESC + "0m" + ESC + "?25h" + ESC + "?1049l");
+        refresh();
+        if (savedSettings != null) {
+            try {
+                stty(savedSettings);
+            }
+            catch (IOException e) {
+                // nothing more we can do
+            }
+            savedSettings = null;
+        }
+    }
+
+    private void applyColors() {
+        write(ESC + (30 + foreground) + ";" + (40 + background) + "m");
+    }
+
+    private void write(String str) {
+        try {
+            out.write(str);
+        }
+        catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Run {@code stty} on the controlling terminal.
+     *
+     * @return whatever it printed
+     */
+    private static String stty(String... args) throws IOException {
+        List<String> command = Lists.newArrayList("stty");
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).redirectInput(new File("/dev/tty")).start();
+        String output;
+        try (Reader reader = new InputStreamReader(process.getInputStream(), Charsets.UTF_8)) {
+            output = CharStreams.toString(reader);
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("stty " + Iterables.toString(Arrays.asList(args)) + " failed");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        return output;
+    }
+}
@@ -0,0 +1,114 @@
+package info.jayharris.klondike;
+
+import com.googlecode.blacken.colors.ColorNames;
+import com.googlecode.blacken.colors.ColorPalette;
+import com.googlecode.blacken.swing.SwingTerminal;
+import com.googlecode.blacken.terminal.BlackenKeys;
+import com.googlecode.blacken.terminal.CursesLikeAPI;
+import com.googlecode.blacken.terminal.TerminalInterface;
+
+/**
+ * A {@link Screen} drawn by blacken, in a Swing window unless told otherwise.
+ *
+ * This is the only class that refers to blacken or Swing, so a game played on an {@link AnsiScreen}
+ * never loads them.
+ */
+public class BlackenScreen implements Screen {
+
+    private final CursesLikeAPI term;
+    private final ColorPalette palette;
+
+    /**
+     * Open a Swing window with the standard colors.
+     */
+    public BlackenScreen() {
+        this(null, null);
+    }
+
+    /**
+     * @param term the terminal interface, or {@code null} for a Swing window
+     * @param palette the color palette, or {@code null} for the standard colors
+     */
+    public BlackenScreen(TerminalInterface term, ColorPalette palette) {
+        if (term == null) {
+            this.term = new CursesLikeAPI(new SwingTerminal());
+            this.term.init("Klondike", 25, 80);
+        } else {
+            this.term = new CursesLikeAPI(term);
+        }
+
+        if (palette == null) {
+            palette = new ColorPalette();
+            palette.addAll(ColorNames.XTERM_256_COLORS, false);
+            palette.putMapping(ColorNames.SVG_COLORS);
+        }
+        this.palette = palette;
+        this.term.setPalette(palette);
+    }
+
+    @Override
+    public void mvputs(int row, int column, String str) {
+        term.mvputs(row, column, str);
+    }
+
+    @Override
+    public boolean hasColor(String color) {
+        return palette.containsKey(color);
+    }
+
+    @Override
+    public void setCurBackground(String color) {
+        term.setCurBackground(color);
+    }
+
+    @Override
+    public void setCurForeground(String color) {
+        term.setCurForeground(color);
+    }
+
+    @Override
+    public void clear() {
+        term.clear();
+    }
+
+    @Override
+    public void refresh() {
+        term.refresh();
+    }
+
+    @Override
+    public int getch() {
+        // getch automatically does a refresh
+        return term.getch();
+    }
+
+    /**
+     * blacken refreshes before it waits for a key whatever we do, but only redraws what has changed, so
+     * right after a {@link #refresh()} there's nothing left for it to do.
+     */
+    @Override
+    public int waitForKey() {
+        return term.getch();
+    }
+
+    @Override
+    public int poll() {
+        int key = term.getch(0);
+        return key == BlackenKeys.NO_KEY ? NO_KEY : key;
+    }
+
+    @Override
+    public int getWidth() {
+        return term.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return term.getHeight();
+    }
+
+    @Override
+    public void quit() {
+        term.quit();
+    }
+}
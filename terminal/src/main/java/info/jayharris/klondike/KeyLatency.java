@@ -0,0 +1,176 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * How long the {@link TerminalUI} takes to answer each key press, split up by where the time goes.
+ *
+ * The UI {@link #keyPressed says} when a key comes in, {@link #add adds} the time spent in each
+ * {@link Phase} as it goes, and says when it's {@link #finish finished} with the key. Keys typed ahead
+ * are handled together and drawn once, so they're timed together too, as one key press. The last few
+ * hundred key presses are kept, for percentiles, and each one can be logged as it's finished.
+ *
+ * Everything happens on the UI thread, so there's no locking.
+ */
+public class KeyLatency {
+
+    /**
+     * Where the time goes.
+     */
+    public enum Phase {
+        /** Handling the key: {@code onKeyPress} and any component's {@code doAction}, engine calls included. */
+        HANDLE,
+        /** Moving cards in the {@link Klondike} itself, and anything its observers do about it. */
+        ENGINE,
+        /** Drawing the components. */
+        DRAW,
+        /** Getting what was drawn onto the screen. */
+        REFRESH,
+        /** From the key press until it's on the screen: handling, drawing and refreshing. */
+        TOTAL
+    }
+
+    static final int DEFAULT_WINDOW = 512;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final long[][] window;
+    private final long[] current = new long[PHASES.length], scratch;
+    private long keys = 0;
+    private int key = -1, batch = 0;
+    private Writer log = null;
+
+    public KeyLatency() {
+        this(DEFAULT_WINDOW);
+    }
+
+    /**
+     * @param window how many of the latest key presses to take percentiles over
+     */
+    public KeyLatency(int window) {
+        Preconditions.checkArgument(window > 0);
+        this.window = new long[PHASES.length][window];
+        this.scratch = new long[window];
+    }
+
+    /**
+     * Write a line for every key press from now on: the key's code point, the number of keys handled
+     * along with it, then the nanoseconds spent in each {@link Phase}, in order, separated by tabs.
+     *
+     * @param log where to write, or {@code null} to stop
+     */
+    public void logTo(Writer log) {
+        this.log = log;
+    }
+
+    /**
+     * Start timing a key press, or if one is being timed already, count this one along with it.
+     *
+     * @param key the key's code point
+     */
+    void keyPressed(int key) {
+        if (this.key >= 0) {
+            ++batch;
+            return;
+        }
+        this.key = key;
+        batch = 1;
+        Arrays.fill(current, 0);
+    }
+
+    /**
+     * Charge a phase of the current key press with the time since {@code since}. Does nothing between
+     * key presses.
+     *
+     * @return the time now, to time the next phase from
+     */
+    long add(Phase phase, long since) {
+        long now = System.nanoTime();
+        charge(phase, now - since);
+        return now;
+    }
+
+    void charge(Phase phase, long nanos) {
+        if (key >= 0) {
+            current[phase.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     * Finish timing the current key press, if there is one.
+     */
+    void finish() {
+        if (key < 0) {
+            return;
+        }
+        current[Phase.TOTAL.ordinal()] = current[Phase.HANDLE.ordinal()] + current[Phase.DRAW.ordinal()] +
+                current[Phase.REFRESH.ordinal()];
+        int slot = (int) (keys++ % window[0].length);
+        for (int p = 0; p < PHASES.length; ++p) {
+            window[p][slot] = current[p];
+        }
+
+        if (log != null) {
+            StringBuilder sb = new StringBuilder().append(key).append('\t').append(batch);
+            for (long nanos : current) {
+                sb.append('\t').append(nanos);
+            }
+            try {
+                log.write(sb.append('\n').toString());
+                log.flush();
+            }
+            catch (IOException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        key = -1;
+    }
+
+    /**
+     * @return the number of key presses timed so far
+     */
+    public long getKeys() {
+        return keys;
+    }
+
+    /**
+     * @param phase the phase
+     * @param percentile between 0 and 100
+     * @return the time spent in the phase by the given percentile of the latest key presses, in
+     *         nanoseconds, or 0 before the first
+     */
+    public long percentile(Phase phase, double percentile) {
+        Preconditions.checkArgument(percentile >= 0 && percentile <= 100);
+        int n = (int) Math.min(keys, scratch.length);
+        if (n == 0) {
+            return 0;
+        }
+        System.arraycopy(window[phase.ordinal()], 0, scratch, 0, n);
+        Arrays.sort(scratch, 0, n);
+        // nearest rank
+        int rank = (int) Math.ceil(percentile / 100 * n);
+        return scratch[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * @return the phase's name and its 50th, 95th and 99th percentiles, in milliseconds
+     */
+    public String describe(Phase phase) {
+        return String.format("%s %.2f/%.2f/%.2f", phase.name().toLowerCase(),
+                percentile(phase, 50) / 1e6, percentile(phase, 95) / 1e6, percentile(phase, 99) / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : PHASES) {
+            sb.append(describe(phase)).append("  ");
+        }
+        return sb.append(String.format("(p50/p95/p99 ms, %d keys)", keys)).toString();
+    }
+}
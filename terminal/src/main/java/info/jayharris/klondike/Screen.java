@@ -0,0 +1,75 @@
+package info.jayharris.klondike;
+
+/**
+ * The curses-style drawing and keyboard calls {@link TerminalUI} needs from a terminal.
+ *
+ * Drawing calls may be buffered; nothing is guaranteed to be on screen until {@link #refresh()}, which
+ * {@link #getch()} calls before it waits for a key. {@link #waitForKey()} waits without refreshing, for
+ * callers that refresh for themselves.
+ */
+public interface Screen {
+
+    /**
+     * What {@link #getch()} and {@link #poll()} return when there's no key.
+     */
+    int NO_KEY = -1;
+
+    /**
+     * Write a string at a position on the screen in the current colors.
+     *
+     * @param row the row, counting from 0 at the top
+     * @param column the column, counting from 0 at the left
+     * @param str the string
+     */
+    void mvputs(int row, int column, String str);
+
+    /**
+     * @param color the name of a color, like {@code "White"}
+     * @return {@code true} iff this screen can show the color
+     */
+    boolean hasColor(String color);
+
+    void setCurBackground(String color);
+
+    void setCurForeground(String color);
+
+    /**
+     * Blank the whole screen in the current background color.
+     */
+    void clear();
+
+    /**
+     * Show everything drawn so far.
+     */
+    void refresh();
+
+    /**
+     * Refresh the screen, then wait for a key press.
+     *
+     * @return the key's code point, or {@link #NO_KEY} if no more keys will ever come
+     */
+    int getch();
+
+    /**
+     * Wait for a key press, without refreshing the screen first.
+     *
+     * @return the key's code point, or {@link #NO_KEY} if no more keys will ever come
+     */
+    int waitForKey();
+
+    /**
+     * Get a key that's already been pressed, without waiting and without refreshing the screen.
+     *
+     * @return the key's code point, or {@link #NO_KEY} if none is waiting
+     */
+    int poll();
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Put the terminal back the way it was.
+     */
+    void quit();
+}
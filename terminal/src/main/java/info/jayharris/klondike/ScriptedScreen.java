@@ -0,0 +1,112 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A {@link Screen} that draws on another screen, but takes its key presses from a script instead of the
+ * keyboard, as fast as the UI will take them, for load testing.
+ *
+ * Each line of the script is a burst of keys typed ahead: all the keys on a line are {@link #poll()
+ * waiting} at once, so the UI handles them together, and the next line only comes once the UI
+ * {@link #waitForKey() asks for} another key. When the script runs out, so do the keys.
+ */
+public class ScriptedScreen implements Screen {
+
+    private final Screen screen;
+    private final List<String> lines;
+    private int line = -1, column = 0;
+
+    /**
+     * @param screen where to draw
+     * @param lines the script
+     */
+    public ScriptedScreen(Screen screen, List<String> lines) {
+        this.screen = screen;
+        this.lines = lines;
+    }
+
+    /**
+     * @param screen where to draw
+     * @param script the script file
+     */
+    public static ScriptedScreen open(Screen screen, File script) throws IOException {
+        return new ScriptedScreen(screen, Files.readLines(script, Charsets.UTF_8));
+    }
+
+    @Override
+    public int getch() {
+        screen.refresh();
+        return waitForKey();
+    }
+
+    @Override
+    public int waitForKey() {
+        // on to the next line that has any keys
+        do {
+            if (++line >= lines.size()) {
+                line = lines.size();
+                return NO_KEY;
+            }
+            column = 0;
+        } while (lines.get(line).isEmpty());
+        return poll();
+    }
+
+    @Override
+    public int poll() {
+        if (line < 0 || line >= lines.size() || column >= lines.get(line).length()) {
+            return NO_KEY;
+        }
+        return lines.get(line).charAt(column++);
+    }
+
+    @Override
+    public void mvputs(int row, int column, String str) {
+        screen.mvputs(row, column, str);
+    }
+
+    @Override
+    public boolean hasColor(String color) {
+        return screen.hasColor(color);
+    }
+
+    @Override
+    public void setCurBackground(String color) {
+        screen.setCurBackground(color);
+    }
+
+    @Override
+    public void setCurForeground(String color) {
+        screen.setCurForeground(color);
+    }
+
+    @Override
+    public void clear() {
+        screen.clear();
+    }
+
+    @Override
+    public void refresh() {
+        screen.refresh();
+    }
+
+    @Override
+    public int getWidth() {
+        return screen.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return screen.getHeight();
+    }
+
+    @Override
+    public void quit() {
+        screen.quit();
+    }
+}
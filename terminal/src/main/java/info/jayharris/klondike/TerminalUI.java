@@ -3,23 +3,29 @@ package info.jayharris.klondike;
 import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
-import com.googlecode.blacken.colors.ColorNames;
-import com.googlecode.blacken.colors.ColorPalette;
-import com.googlecode.blacken.swing.SwingTerminal;
-import com.googlecode.blacken.terminal.*;
+import com.google.common.io.Files;
 import info.jayharris.cardgames.Deck;
 import org.apache.commons.collections4.iterators.LoopingListIterator;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class TerminalUI implements KlondikeUI, Observer {
 
     private Klondike klondike;
 
-    private ColorPalette palette;
-    private CursesLikeAPI term = null;
+    private Screen term = null;
+
+    private KeyLatency latency;
+    private boolean showLatency;
 
     private TerminalUIComponent<?> pointingTo, movingFrom = null;
     private List<TerminalUIComponent<?>> components;
@@ -39,13 +45,37 @@ public class TerminalUI implements KlondikeUI, Observer {
             FOUNDATION_START_COL = WASTE_START_COL + WASTE_MAX_WIDTH + SPACE_BETWEEN;
 
     /**
-     * Create a new curses-style UI.
+     * Create a new curses-style UI in a Swing window.
      *
      * @param klondike the game
      */
     public TerminalUI(Klondike klondike) {
+        this(klondike, null);
+    }
+
+    /**
+     * Create a new curses-style UI.
+     *
+     * @param klondike the game
+     * @param term the screen to play on, or {@code null} for a Swing window
+     */
+    public TerminalUI(Klondike klondike, Screen term) {
+        this(klondike, term, new KeyLatency(), false);
+    }
+
+    /**
+     * Create a new curses-style UI, timing every key press.
+     *
+     * @param klondike the game
+     * @param term the screen to play on, or {@code null} for a Swing window
+     * @param latency where to time key presses
+     * @param showLatency {@code true} to show the timings on status lines at the bottom of the screen
+     */
+    public TerminalUI(Klondike klondike, Screen term, KeyLatency latency, boolean showLatency) {
+        this.latency = latency;
+        this.showLatency = showLatency;
         setKlondike(klondike);
-        init(null, null);
+        init(term);
     }
 
     /* ************************************************************************
@@ -57,24 +87,10 @@ public class TerminalUI implements KlondikeUI, Observer {
      *
      * This only needs to be called once upon construction.
      *
-     * @param term the terminal interface
-     * @param palette the color palette
+     * @param term the screen, or {@code null} for a Swing window
      */
-    protected void init(TerminalInterface term, ColorPalette palette) {
-        if (term == null) {
-            this.term = new CursesLikeAPI(new SwingTerminal());
-            this.term.init("Klondike", 25, 80);
-        } else {
-            this.term = new CursesLikeAPI(term);
-        }
-
-        if (palette == null) {
-            palette = new ColorPalette();
-            palette.addAll(ColorNames.XTERM_256_COLORS, false);
-            palette.putMapping(ColorNames.SVG_COLORS);
-        }
-        this.palette = palette;
-        this.term.setPalette(palette);
+    protected void init(Screen term) {
+        this.term = term == null ? new BlackenScreen() : term;
 
         run();
     }
@@ -109,27 +125,71 @@ public class TerminalUI implements KlondikeUI, Observer {
     }
 
     /**
-     * Event handling loop.
+     * Event handling loop. Keys typed ahead are all handled, in order, before the screen is drawn again,
+     * so a burst of keys costs one frame rather than one each. Once the game is as good as won, it's
+     * finished off then and there.
+     *
+     * Returns once there are no more keys to come.
      */
     protected void loop() {
         int key;
-        if (palette.containsKey("White")) {
+        if (term.hasColor("White")) {
             term.setCurBackground("White");
         }
-        if (palette.containsKey("Black")) {
+        if (term.hasColor("Black")) {
             term.setCurForeground("Black");
         }
         term.clear();
 
-        //noinspection InfiniteLoopStatement
         while (true) {
+            long start = System.nanoTime();
             for (TerminalUIComponent<?> component : components) {
                 component.writeToTerminal();
             }
             pointingTo.drawPointer(false);
-            key = term.getch();
-            // getch automatically does a refresh
-            onKeyPress(key);
+            latency.add(KeyLatency.Phase.DRAW, start);
+            if (showLatency) {
+                drawLatency();
+            }
+
+            // refresh here rather than in getch, so it's timed, and only once
+            start = System.nanoTime();
+            term.refresh();
+            latency.add(KeyLatency.Phase.REFRESH, start);
+            latency.finish();
+
+            key = term.waitForKey();
+            if (key == Screen.NO_KEY) {
+                return;
+            }
+            start = System.nanoTime();
+            do {
+                latency.keyPressed(key);
+                onKeyPress(key);
+            } while ((key = term.poll()) != Screen.NO_KEY);
+            if (klondike.isTriviallyWon()) {
+                // no need to make the player put every last card up by hand
+                klondike.finish();
+            }
+            latency.add(KeyLatency.Phase.HANDLE, start);
+        }
+    }
+
+    /**
+     * Show the key press timings at the bottom of the screen, up to the one before the key being drawn
+     * for, which isn't finished until the screen is refreshed. Not timed itself.
+     */
+    private void drawLatency() {
+        String[] lines = {
+                String.format("%s  %s  %s", latency.describe(KeyLatency.Phase.HANDLE),
+                        latency.describe(KeyLatency.Phase.ENGINE), latency.describe(KeyLatency.Phase.DRAW)),
+                String.format("%s  %s  (p50/p95/p99 ms, %d keys)", latency.describe(KeyLatency.Phase.REFRESH),
+                        latency.describe(KeyLatency.Phase.TOTAL), latency.getKeys())
+        };
+        int width = term.getWidth() - 1;
+        for (int i = 0; i < lines.length; ++i) {
+            String line = Strings.padEnd(lines[i], width, ' ');
+            term.mvputs(term.getHeight() - 3 + i, 0, line.substring(0, width));
         }
     }
 
@@ -162,7 +222,9 @@ public class TerminalUI implements KlondikeUI, Observer {
 
                 @Override
                 public void doAction() {
+                    long start = System.nanoTime();
                     klondike.deal();
+                    latency.add(KeyLatency.Phase.ENGINE, start);
                 }
             });
 
@@ -240,12 +302,14 @@ public class TerminalUI implements KlondikeUI, Observer {
                 public void doAction() {
                     boolean legal = false;
                     if (movingFrom != null) {
+                        long start = System.nanoTime();
                         if (movingFrom.getClass() == TableauUIComponent.class) {
                             legal = klondike.moveFromTableauToFoundation((Klondike.Tableau) movingFrom.payload);
                         }
                         else {
                             legal = klondike.moveFromWasteToFoundation();
                         }
+                        latency.add(KeyLatency.Phase.ENGINE, start);
                     }
                     if (legal) {
                         movingFrom.writeToTerminal();
@@ -435,10 +499,14 @@ public class TerminalUI implements KlondikeUI, Observer {
             else if (movingFrom.getClass() == TableauUIComponent.class) {
                 TableauUIComponent _movingFrom = (TableauUIComponent) movingFrom;
                 int numCards = _movingFrom.payload.size() - _movingFrom.pointerIndex;
+                long start = System.nanoTime();
                 legal = klondike.moveFromTableauToTableau(_movingFrom.payload, this.payload, numCards);
+                latency.add(KeyLatency.Phase.ENGINE, start);
             }
             else {
+                long start = System.nanoTime();
                 legal = klondike.moveFromWasteToTableau(this.payload);
+                latency.add(KeyLatency.Phase.ENGINE, start);
             }
             if (legal) {
                 movingFrom.writeToTerminal();
@@ -500,29 +568,163 @@ public class TerminalUI implements KlondikeUI, Observer {
                 converter = PassesConverter.class)
         private Klondike.Rules.Passes passes = Klondike.Rules.Passes.INFINITY;
 
-        public class PassesConverter implements IStringConverter<Klondike.Rules.Passes> {
+        @Parameter(names = "--ansi", description = "Draw straight to this terminal instead of opening a window.")
+        private boolean ansi = false;
+
+        @Parameter(names = "--simulate", description = "Play this many deals without the UI.")
+        private Long simulate = null;
+
+        @Parameter(names = "--seed-range", description = "Play (or solve) deals FROM-TO, inclusive, without the UI.",
+                converter = SeedRangeConverter.class)
+        private long[] seedRange = null;
+
+        @Parameter(names = "--solve", description = "Solve the deals instead of playing them.")
+        private boolean solve = false;
+
+        @Parameter(names = "--policy", description = "How to play the deals: greedy, rollout or beam.",
+                converter = PolicyConverter.class)
+        private Simulation.Policy policy = Simulation.Policy.GREEDY;
+
+        @Parameter(names = "--threads", description = "Number of threads to play the deals on.")
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        @Parameter(names = "--output", description = "Write a line per deal to this file (instead of stdout).")
+        private File output = null;
+
+        @Parameter(names = "--solver-cache", description = "Keep what the solver makes of each deal in this file, " +
+                "and look there before solving a deal.")
+        private File solverCache = null;
+
+        @Parameter(names = "--solver-stats", description = "Log the solver's counters every this many seconds.")
+        private int solverStats = 0;
+
+        @Parameter(names = "--latency", description = "Show how long each key press takes on a status line.")
+        private boolean latency = false;
+
+        @Parameter(names = "--latency-log", description = "Write how long each key press takes to this file.")
+        private File latencyLog = null;
+
+        @Parameter(names = "--script", description = "Take key presses from this file, as fast as possible.")
+        private File script = null;
+
+        /**
+         * @return {@code true} iff we should skip the UI and play a batch of deals
+         */
+        boolean isBatch() {
+            return simulate != null || seedRange != null || solve;
+        }
+
+        /**
+         * @return the first deal to play and one more than the last
+         */
+        long[] deals() {
+            long from = seedRange == null ? 0 : seedRange[0],
+                    to = seedRange == null ? Long.MAX_VALUE : seedRange[1] + 1;
+            if (simulate != null) {
+                to = Math.min(to, from + simulate);
+            }
+            if (to == Long.MAX_VALUE) {
+                throw new ParameterException("which deals? use --simulate or --seed-range");
+            }
+            return new long[] { from, to };
+        }
+
+        public static class PassesConverter implements IStringConverter<Klondike.Rules.Passes> {
             @Override
             public Klondike.Rules.Passes convert(String value) {
-                switch(value) {
-                    case "1":
-                        return Klondike.Rules.Passes.SINGLE;
-                    case "3":
-                        return Klondike.Rules.Passes.THREE;
-                    default:
-                        return Klondike.Rules.Passes.INFINITY;
+                return Klondike.Rules.Passes.parse(value);
+            }
+        }
+
+        public static class SeedRangeConverter implements IStringConverter<long[]> {
+            @Override
+            public long[] convert(String value) {
+                int dash = value.indexOf('-', 1);
+                try {
+                    long from = Long.parseLong(value.substring(0, dash)), to = Long.parseLong(value.substring(dash + 1));
+                    if (from <= to) {
+                        return new long[] { from, to };
+                    }
+                }
+                catch (IndexOutOfBoundsException | NumberFormatException e) {
+                    // fall through
+                }
+                throw new ParameterException("expected a range of deals like 1000-1999, got " + value);
+            }
+        }
+
+        public static class PolicyConverter implements IStringConverter<Simulation.Policy> {
+            @Override
+            public Simulation.Policy convert(String value) {
+                try {
+                    return Simulation.Policy.valueOf(value.toUpperCase());
+                }
+                catch (IllegalArgumentException e) {
+                    throw new ParameterException("unknown policy " + value);
                 }
             }
         }
     }
 
-    public static void main(String... args) {
+    public static void main(String... args) throws IOException {
         CommandLineParams params = new TerminalUI.CommandLineParams();
         new JCommander(params, args);
 
         Klondike.Rules rules = new Klondike.Rules(
                 params.dealOne ? Klondike.Rules.Deal.DEAL_SINGLE : Klondike.Rules.Deal.DEAL_THREE, params.passes);
 
-        TerminalUI ui = new TerminalUI(new Klondike(rules));
-        ui.run();
+        if (params.isBatch()) {
+            runBatch(params, rules);
+            return;
+        }
+
+        KeyLatency latency = new KeyLatency();
+        if (params.latencyLog != null) {
+            latency.logTo(Files.newWriter(params.latencyLog, Charsets.UTF_8));
+        }
+        Screen screen = params.ansi ? AnsiScreen.open() : new BlackenScreen();
+        if (params.script != null) {
+            screen = ScriptedScreen.open(screen, params.script);
+        }
+        // plays until the keys run out
+        new TerminalUI(new Klondike(rules), screen, latency, params.latency);
+        screen.quit();
+        if (params.script != null) {
+            System.err.println(latency);
+        }
+        System.exit(0);
+    }
+
+    private static void runBatch(CommandLineParams params, Klondike.Rules rules) throws IOException {
+        long[] deals = params.deals();
+        Writer out = params.output == null ?
+                new OutputStreamWriter(System.out, Charsets.UTF_8) :
+                Files.newWriter(params.output, Charsets.UTF_8);
+
+        if (params.solverStats > 0) {
+            SolverStats.startLogging(params.solverStats, TimeUnit.SECONDS);
+        }
+        try {
+            Batch batch = new Batch(rules, deals[0], deals[1], params.threads, out);
+            if (params.solve && params.solverCache != null) {
+                try (SolverCache cache = new SolverCache(params.solverCache)) {
+                    System.err.println(batch.solve(cache));
+                    System.err.println(cache);
+                }
+            }
+            else if (params.solve) {
+                System.err.println(batch.solve());
+            }
+            else {
+                System.err.println(batch.simulate(params.policy));
+            }
+        }
+        finally {
+            SolverStats.stopLogging();
+            out.flush();
+            if (params.output != null) {
+                out.close();
+            }
+        }
     }
 }
@@ -0,0 +1,52 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class AnsiScreenTest {
+
+    @Test
+    public void testNothingIsWrittenUntilRefresh() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnsiScreen screen = new AnsiScreen(new ByteArrayInputStream(new byte[0]), out, 25, 80);
+
+        screen.mvputs(2, 5, "KH");
+        assertEquals(0, out.size());
+
+        screen.refresh();
+        assertTrue(out.toString("UTF-8").endsWith("\u001b[3;6HKH"));
+    }
+
+    @Test
+    public void testColorsAreOnlySentWhenTheyChange() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnsiScreen screen = new AnsiScreen(new ByteArrayInputStream(new byte[0]), out, 25, 80);
+        screen.refresh();
+        out.reset();
+
+        assertTrue(screen.hasColor("Yellow"));
+        assertFalse(screen.hasColor("Chartreuse"));
+
+        screen.setCurBackground("Yellow");
+        screen.setCurBackground("Yellow");
+        screen.setCurBackground("Chartreuse");
+        screen.refresh();
+        assertEquals("\u001b[37;43m", out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testGetchFlushesAndReadsKeys() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AnsiScreen screen = new AnsiScreen(new ByteArrayInputStream("ad".getBytes("UTF-8")), out, 25, 80);
+
+        screen.mvputs(0, 0, "x");
+        assertEquals('a', screen.getch());
+        assertTrue(out.toString("UTF-8").endsWith("x"));
+        assertEquals('d', screen.getch());
+        assertEquals(-1, screen.getch());
+    }
+}
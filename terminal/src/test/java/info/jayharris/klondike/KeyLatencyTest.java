@@ -0,0 +1,77 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class KeyLatencyTest {
+
+    @Test
+    public void testPercentilesOverLatestKeys() {
+        KeyLatency latency = new KeyLatency(100);
+        assertEquals(0, latency.percentile(KeyLatency.Phase.TOTAL, 50));
+
+        // 1 to 150 microseconds of drawing; only the last 100 count
+        for (int i = 1; i <= 150; ++i) {
+            press(latency, 'a', 0, 0, i * 1000L);
+        }
+        assertEquals(150, latency.getKeys());
+        assertEquals(51000, latency.percentile(KeyLatency.Phase.DRAW, 0));
+        assertEquals(100000, latency.percentile(KeyLatency.Phase.DRAW, 50));
+        assertEquals(149000, latency.percentile(KeyLatency.Phase.DRAW, 99));
+        assertEquals(150000, latency.percentile(KeyLatency.Phase.DRAW, 100));
+        assertEquals(0, latency.percentile(KeyLatency.Phase.ENGINE, 99));
+    }
+
+    @Test
+    public void testTotalAddsUpPhases() {
+        KeyLatency latency = new KeyLatency();
+        press(latency, ' ', 3000000, 2000000, 5000000);
+
+        assertEquals(2000000, latency.percentile(KeyLatency.Phase.ENGINE, 50));
+        // the engine is part of handling the key, so it isn't counted twice
+        assertEquals(3000000 + 5000000, latency.percentile(KeyLatency.Phase.TOTAL, 50));
+    }
+
+    @Test
+    public void testNothingIsTimedBetweenKeys() {
+        KeyLatency latency = new KeyLatency();
+        latency.add(KeyLatency.Phase.DRAW, System.nanoTime() - 1000000);
+        latency.finish();
+        assertEquals(0, latency.getKeys());
+    }
+
+    @Test
+    public void testLog() {
+        KeyLatency latency = new KeyLatency();
+        StringWriter log = new StringWriter();
+        latency.logTo(log);
+
+        press(latency, 'd', 0, 0, 0);
+        // typed ahead, so timed together
+        latency.keyPressed(' ');
+        latency.keyPressed('a');
+        latency.keyPressed(' ');
+        latency.finish();
+
+        String[] lines = log.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("100\t1\t"));
+        assertTrue(lines[1].startsWith("32\t3\t"));
+        assertEquals(2 + KeyLatency.Phase.values().length, lines[1].split("\t").length);
+        assertEquals(2, latency.getKeys());
+    }
+
+    /**
+     * Time a key press that spends the given nanoseconds in each phase.
+     */
+    private void press(KeyLatency latency, int key, long handle, long engine, long draw) {
+        latency.keyPressed(key);
+        latency.charge(KeyLatency.Phase.ENGINE, engine);
+        latency.charge(KeyLatency.Phase.HANDLE, handle);
+        latency.charge(KeyLatency.Phase.DRAW, draw);
+        latency.finish();
+    }
+}
@@ -0,0 +1,85 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableList;
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Rank;
+import info.jayharris.cardgames.Suit;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TerminalUITest {
+
+    @Test
+    public void testKeysTypedAheadAreDrawnOnce() {
+        final int[] refreshes = { 0 };
+        Screen screen = new AnsiScreen(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), 25, 80) {
+            @Override
+            public void refresh() {
+                ++refreshes[0];
+                super.refresh();
+            }
+        };
+        Klondike klondike = new Klondike(new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+        KeyLatency latency = new KeyLatency();
+
+        // the pointer starts on the deck: deal once, then twice more in one burst
+        new TerminalUI(klondike, new ScriptedScreen(screen, ImmutableList.of(" ", "", "  ")), latency, true);
+
+        assertEquals(24 - 9, klondike.getDeck().size());
+        assertEquals(9, klondike.getWaste().size());
+        assertEquals(2, latency.getKeys());
+        // a frame before each burst and one after the last, each refreshed once
+        assertEquals(3, refreshes[0]);
+    }
+
+    @Test
+    public void testAsGoodAsWonIsFinished() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Screen screen = new AnsiScreen(new ByteArrayInputStream(new byte[0]), out, 25, 80);
+        // everything is on the foundations but the queens and kings, face up on the tableaus
+        Klondike klondike = new Klondike() {
+            @Override
+            public void init() {
+                getDeck().clear();
+                for (Suit suit : Suit.values()) {
+                    Rank rank = Rank.ACE;
+                    for (int i = 0; i < 11; ++i, rank = rank.higher()) {
+                        getFoundation(suit).add(new Card(rank, suit));
+                    }
+                }
+                Suit[][] columns = {
+                        { Suit.SPADES, Suit.HEARTS }, { Suit.HEARTS, Suit.SPADES },
+                        { Suit.CLUBS, Suit.DIAMONDS }, { Suit.DIAMONDS, Suit.CLUBS }
+                };
+                for (int i = 0; i < columns.length; ++i) {
+                    getTableau(i).add(new Card(Rank.KING, columns[i][0]));
+                    getTableau(i).add(new Card(Rank.QUEEN, columns[i][1]));
+                }
+            }
+        };
+
+        // any key will do
+        new TerminalUI(klondike, new ScriptedScreen(screen, ImmutableList.of("d")), new KeyLatency(), false);
+
+        assertTrue(klondike.won());
+        assertTrue(out.toString().contains("YOU WIN!"));
+    }
+
+    @Test
+    public void testScriptRunsOut() {
+        Screen screen = new AnsiScreen(new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), 25, 80);
+        ScriptedScreen script = new ScriptedScreen(screen, ImmutableList.of("ad", "", "w"));
+
+        assertEquals(Screen.NO_KEY, script.poll());
+        assertEquals('a', script.getch());
+        assertEquals('d', script.poll());
+        assertEquals(Screen.NO_KEY, script.poll());
+        assertEquals('w', script.getch());
+        assertEquals(Screen.NO_KEY, script.getch());
+        assertEquals(Screen.NO_KEY, script.getch());
+    }
+}
@@ -0,0 +1,247 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays or solves a range of seeded deals without a UI, writing one line per deal as it goes.
+ *
+ * Deals are handed out to a pool of threads in chunks, but the lines are written in deal order, so the
+ * output is the same however many threads there are. Only a couple of chunks per thread are handed out
+ * ahead of the oldest one still to be written, so memory stays flat however long the range is. The output
+ * is flushed after each chunk, so a long run can be watched while it's going.
+ */
+public class Batch {
+
+    static final int CHUNK = 100;
+    static final long SOLVER_MAX_NODES = 1000000;
+
+    private final Klondike.Rules rules;
+    private final long from, to;
+    private final int threads;
+    private final Writer out;
+    private long maxNodes = SOLVER_MAX_NODES;
+
+    /**
+     * @param rules the rules to play by
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param threads how many threads to play on
+     * @param out where to write the results
+     */
+    public Batch(Klondike.Rules rules, long from, long to, int threads, Writer out) {
+        Preconditions.checkArgument(from <= to && threads > 0);
+        this.rules = rules;
+        this.from = from;
+        this.to = to;
+        this.threads = threads;
+        this.out = out;
+    }
+
+    /**
+     * @param maxNodes the most positions to search per deal when solving
+     * @return this batch
+     */
+    Batch maxNodes(long maxNodes) {
+        this.maxNodes = maxNodes;
+        return this;
+    }
+
+    /**
+     * Play each deal. Each line is the deal number, {@code won} or {@code lost}, the number of moves made
+     * and the number of cards on the foundations at the end, separated by tabs.
+     *
+     * @param policy how to play
+     * @return the totals
+     */
+    public SimulationReport simulate(final Simulation.Policy policy) throws IOException {
+        // each thread's simulation, kept to shut down at the end
+        final Queue<Simulation> started = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<Simulation> simulations = new ThreadLocal<Simulation>() {
+            @Override
+            protected Simulation initialValue() {
+                Simulation simulation = new Simulation(rules, policy);
+                started.add(simulation);
+                return simulation;
+            }
+        };
+        final SimulationReport report = new SimulationReport();
+
+        try {
+            run(new Task<Simulation.Result>() {
+                @Override
+                Simulation.Result play(long seed) {
+                    return simulations.get().play(seed);
+                }
+
+                @Override
+                void done(Simulation.Result result) {
+                    report.add(result);
+                }
+            });
+        }
+        finally {
+            for (Simulation simulation : started) {
+                simulation.shutdown();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Solve each deal. Each line is the deal number, the {@link Solver.Status}, the number of positions
+     * searched and the number of moves in the solution, separated by tabs.
+     *
+     * @return how many deals ended up with each status
+     */
+    public Map<Solver.Status, Long> solve() throws IOException {
+        return solve(null);
+    }
+
+    /**
+     * Solve each deal, unless the cache already has a result for it.
+     *
+     * @param cache where to look for results, and keep new ones, or {@code null}
+     * @return how many deals ended up with each status
+     * @see #solve()
+     */
+    public Map<Solver.Status, Long> solve(final SolverCache cache) throws IOException {
+        final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+            @Override
+            protected TranspositionTable initialValue() {
+                return new TranspositionTable(Solver.DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED);
+            }
+        };
+        final Supplier<Solver> solvers = new Supplier<Solver>() {
+            @Override
+            public Solver get() {
+                // a fresh ordering, so what this thread solved before doesn't change the answer
+                return new Solver(maxNodes, tables.get(), new HeuristicOrdering());
+            }
+        };
+        final Map<Solver.Status, Long> counts = new EnumMap<>(Solver.Status.class);
+        for (Solver.Status status : Solver.Status.values()) {
+            counts.put(status, 0L);
+        }
+
+        run(new Task<Solution>() {
+            @Override
+            Solution play(long seed) {
+                if (cache != null) {
+                    try {
+                        return new Solution(seed, cache.solve(seed, rules, maxNodes, solvers));
+                    }
+                    catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                }
+                Klondike klondike = new Klondike(rules);
+                klondike.init(seed);
+                return new Solution(seed, solvers.get().solve(klondike));
+            }
+
+            @Override
+            void done(Solution solution) {
+                counts.put(solution.result.status, counts.get(solution.result.status) + 1);
+            }
+        });
+        return counts;
+    }
+
+    private <T> void run(final Task<T> task) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("batch-%d").build());
+        try {
+            // no more than two chunks per thread at a time, so what's waiting to be written stays small
+            Deque<Future<List<T>>> pending = new ArrayDeque<>();
+            long next = from;
+            while (next < to || !pending.isEmpty()) {
+                while (next < to && pending.size() < 2 * threads) {
+                    long end = Math.min(next + CHUNK, to);
+                    pending.addLast(executor.submit(chunk(task, next, end)));
+                    next = end;
+                }
+
+                for (T result : get(pending.removeFirst())) {
+                    out.write(result.toString());
+                    out.write('\n');
+                    task.done(result);
+                }
+                out.flush();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> Callable<List<T>> chunk(final Task<T> task, final long first, final long end) {
+        return new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                List<T> results = Lists.newArrayListWithCapacity((int) (end - first));
+                for (long seed = first; seed < end; ++seed) {
+                    results.add(task.play(seed));
+                }
+                return results;
+            }
+        };
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static class Solution {
+        final long seed;
+        final Solver.Result result;
+
+        Solution(long seed, Solver.Result result) {
+            this.seed = seed;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d\t%s\t%d\t%d", seed, result.status, result.nodes, result.moves.size());
+        }
+    }
+
+    private abstract static class Task<T> {
+        /**
+         * Play or solve a deal. Called on any of the batch's threads.
+         *
+         * @return the result, whose {@code toString()} is the line written for the deal
+         */
+        abstract T play(long seed);
+
+        /**
+         * Called on the calling thread, in deal order, once the deal's line has been written.
+         */
+        abstract void done(T result);
+    }
+}
@@ -0,0 +1,165 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * The progress of a {@link SimulationJob}: which deals have been played, and the totals over those deals.
+ *
+ * Checkpoints are {@link #save(File) saved} by writing a new file and renaming it over the old one, so
+ * a checkpoint file is always either the old checkpoint or the new one, never a mixture.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x4b4c4350;      // "KLCP"
+    private static final short VERSION = 1;
+
+    final Klondike.Rules rules;
+    final long from, to;
+    private final RangeSet<Long> done = TreeRangeSet.create();
+    private final SimulationReport report = new SimulationReport();
+
+    /**
+     * Start a checkpoint for a job that hasn't done anything yet.
+     *
+     * @param rules the rules the job plays by
+     * @param from the job's first deal number
+     * @param to one more than the job's last deal number
+     */
+    public Checkpoint(Klondike.Rules rules, long from, long to) {
+        Preconditions.checkArgument(from <= to);
+        this.rules = rules;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Record that the deals in {@code [start, end)} have been played.
+     *
+     * @param start the first deal number
+     * @param end one more than the last deal number
+     * @param totals the totals over those deals
+     */
+    public void complete(long start, long end, SimulationReport totals) {
+        Range<Long> range = Range.closedOpen(start, end);
+        Preconditions.checkArgument(Range.closedOpen(from, to).encloses(range), "%s is out of range", range);
+        Preconditions.checkArgument(done.subRangeSet(range).isEmpty(), "%s was already done", range);
+
+        done.add(range);
+        report.merge(totals);
+    }
+
+    /**
+     * @return {@code true} iff every deal in {@code [start, end)} has been played
+     */
+    public boolean isComplete(long start, long end) {
+        return start >= end || done.encloses(Range.closedOpen(start, end));
+    }
+
+    /**
+     * @return the runs of deals in {@code [start, end)} that haven't been played yet, lowest first
+     */
+    public Set<Range<Long>> remaining(long start, long end) {
+        return done.complement().subRangeSet(Range.closedOpen(start, end)).asRanges();
+    }
+
+    /**
+     * @return {@code true} iff every deal in the job has been played
+     */
+    public boolean isComplete() {
+        return isComplete(from, to);
+    }
+
+    /**
+     * @return the totals over the deals played so far
+     */
+    public SimulationReport getReport() {
+        SimulationReport copy = new SimulationReport();
+        copy.merge(report);
+        return copy;
+    }
+
+    /* ************************************************************************
+     * Saving and loading
+     * ************************************************************************/
+
+    /**
+     * Write the checkpoint to a file, atomically replacing whatever was there.
+     *
+     * @param file the file
+     */
+    public void save(File file) throws IOException {
+        File temp = AtomicFiles.tempFile(file);
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(rules.deal.ordinal());
+            out.writeByte(rules.passes.ordinal());
+            out.writeLong(from);
+            out.writeLong(to);
+
+            out.writeLong(report.getGames());
+            out.writeLong(report.getWins());
+            out.writeLong(report.getMoves());
+            out.writeLong(report.getFoundationCards());
+
+            out.writeInt(done.asRanges().size());
+            for (Range<Long> range : done.asRanges()) {
+                out.writeLong(range.lowerEndpoint());
+                out.writeLong(range.upperEndpoint());
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        AtomicFiles.replace(temp, file);
+    }
+
+    /**
+     * Read a checkpoint written by {@link #save(File)}.
+     *
+     * @param file the file
+     * @return the checkpoint
+     */
+    public static Checkpoint load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("not a checkpoint: " + file);
+            }
+            Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.values()[in.readByte()],
+                    Klondike.Rules.Passes.values()[in.readByte()]);
+            Checkpoint checkpoint = new Checkpoint(rules, in.readLong(), in.readLong());
+
+            checkpoint.report.restore(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+
+            for (int n = in.readInt(); n > 0; --n) {
+                checkpoint.done.add(Range.closedOpen(in.readLong(), in.readLong()));
+            }
+            return checkpoint;
+        }
+    }
+
+    /**
+     * @return {@code true} iff this checkpoint is for a job over the same deals under the same rules
+     */
+    boolean matches(Klondike.Rules rules, long from, long to) {
+        return this.rules.deal == rules.deal && this.rules.passes == rules.passes && this.from == from && this.to == to;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Checkpoint[%d-%d, done=%s, %s]", from, to, done, report);
+    }
+}
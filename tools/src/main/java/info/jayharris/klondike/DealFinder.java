@@ -0,0 +1,422 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import info.jayharris.cardgames.Card;
+import info.jayharris.cardgames.Rank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches deal numbers for deals with particular properties, for puzzles of the day and tournaments:
+ * say, deals that can be won dealing one card at a time but not three, or that take a long line to win.
+ *
+ * Each deal is checked against a list of {@link Criterion criteria}. Criteria that only look at the deal,
+ * or play it out greedily, are checked before any that need the {@link Solver}, and a deal is dropped at
+ * the first criterion it fails, so most deals never get as far as the solver. Each deal is solved at most
+ * once under each rules variant, however many criteria ask, and not at all if a {@link SolverCache} given
+ * to the finder already knows the answer.
+ *
+ * Deal numbers are handed out to the threads in small chunks, in order. The search stops once it has the
+ * requested number of matches and every chunk that could hold an earlier match is done, so the matches
+ * found are always the lowest-numbered ones, however many threads there are.
+ */
+public class DealFinder {
+
+    static final long DEFAULT_MAX_NODES = 100000;
+    static final int CHUNK = 16;
+
+    private final List<Criterion> criteria;
+    private final long maxNodes;
+    private final SolverCache cache;
+
+    private final AtomicLong examined = new AtomicLong(), solved = new AtomicLong();
+
+    private static final Logger logger = LoggerFactory.getLogger(DealFinder.class);
+
+    /**
+     * Keep each thread's transposition table around between deals.
+     */
+    private final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+        @Override
+        protected TranspositionTable initialValue() {
+            return new TranspositionTable(Solver.DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED);
+        }
+    };
+
+    public DealFinder(List<Criterion> criteria) {
+        this(criteria, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param criteria what a deal has to be like
+     * @param maxNodes the most positions to let the solver search per deal and rules; a deal the solver
+     *                 gives up on matches no criterion that needs it
+     */
+    public DealFinder(List<Criterion> criteria, long maxNodes) {
+        this(criteria, maxNodes, null);
+    }
+
+    /**
+     * @param criteria what a deal has to be like
+     * @param maxNodes the most positions to let the solver search per deal and rules
+     * @param cache where to look for what the solver made of a deal before, and keep what it makes of
+     *              new ones, or {@code null}
+     */
+    public DealFinder(List<Criterion> criteria, long maxNodes, SolverCache cache) {
+        Preconditions.checkArgument(!criteria.isEmpty() && maxNodes > 0);
+
+        // the cheap ones first, otherwise in the order given
+        List<Criterion> sorted = Lists.newArrayList();
+        for (Criterion criterion : criteria) {
+            if (!criterion.solves) {
+                sorted.add(criterion);
+            }
+        }
+        for (Criterion criterion : criteria) {
+            if (criterion.solves) {
+                sorted.add(criterion);
+            }
+        }
+        this.criteria = ImmutableList.copyOf(sorted);
+        this.maxNodes = maxNodes;
+        this.cache = cache;
+    }
+
+    /**
+     * @param seed the deal number
+     * @return {@code true} iff the deal meets every criterion
+     */
+    public boolean matches(long seed) {
+        examined.incrementAndGet();
+        Candidate candidate = new Candidate(seed);
+        for (Criterion criterion : criteria) {
+            if (!criterion.test(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the lowest-numbered deals that meet every criterion.
+     *
+     * @param from the first deal number to look at
+     * @param to one more than the last deal number to look at
+     * @param count how many deals to find
+     * @param threads how many threads to search on
+     * @return the matching deal numbers, lowest first; fewer than {@code count} if the range runs out
+     */
+    public List<Long> find(final long from, final long to, final int count, int threads) throws InterruptedException {
+        Preconditions.checkArgument(from <= to && count > 0 && threads > 0);
+
+        final AtomicLong next = new AtomicLong(from);
+        final List<Long> matches = Lists.newArrayList();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("finder-%d").build());
+        try {
+            List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < threads; ++i) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        long start;
+                        while ((start = next.getAndAdd(CHUNK)) < to) {
+                            // chunks go out in order, so once this one starts past the count-th match, so
+                            // does every chunk after it
+                            synchronized (matches) {
+                                if (matches.size() >= count && start > matches.get(count - 1)) {
+                                    return null;
+                                }
+                            }
+                            for (long seed = start; seed < Math.min(start + CHUNK, to); ++seed) {
+                                if (matches(seed)) {
+                                    synchronized (matches) {
+                                        int at = Collections.binarySearch(matches, seed);
+                                        matches.add(-at - 1, seed);
+                                    }
+                                    logger.debug(String.format("found deal %d", seed));
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException e) {
+                    throw Throwables.propagate(e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return ImmutableList.copyOf(matches.subList(0, Math.min(count, matches.size())));
+    }
+
+    /**
+     * @return the number of deals looked at so far
+     */
+    public long getExamined() {
+        return examined.get();
+    }
+
+    /**
+     * @return the number of times the solver has been run so far
+     */
+    public long getSolved() {
+        return solved.get();
+    }
+
+    /* ************************************************************************
+     * Criteria
+     * ************************************************************************/
+
+    /**
+     * A deal under consideration. Whatever the criteria find out about it is remembered, so it's only
+     * worked out once.
+     */
+    public class Candidate {
+        private final long seed;
+        private final Solver.Result[] results = new Solver.Result[variant(Klondike.Rules.Deal.values().length, 0)];
+
+        Candidate(long seed) {
+            this.seed = seed;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * @param rules the rules to play by
+         * @return a new game of this deal
+         */
+        public Klondike deal(Klondike.Rules rules) {
+            Klondike klondike = new Klondike(rules);
+            klondike.init(seed);
+            return klondike;
+        }
+
+        /**
+         * @param rules the rules to play by
+         * @return what the solver makes of this deal under those rules
+         */
+        public Solver.Result solve(Klondike.Rules rules) {
+            int i = variant(rules.deal.ordinal(), rules.passes.ordinal());
+            if (results[i] == null) {
+                try {
+                    results[i] = cache == null ? null : cache.get(seed, rules, maxNodes);
+                    if (results[i] == null) {
+                        solved.incrementAndGet();
+                        // a fresh ordering, so what this thread solved before doesn't change the answer
+                        results[i] = new Solver(maxNodes, tables.get(), new HeuristicOrdering()).solve(deal(rules));
+                        if (cache != null) {
+                            cache.put(seed, rules, results[i]);
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            return results[i];
+        }
+    }
+
+    private static int variant(int deal, int passes) {
+        return deal * Klondike.Rules.Passes.values().length + passes;
+    }
+
+    /**
+     * Something a deal has to be like.
+     */
+    public abstract static class Criterion {
+        final boolean solves;
+
+        /**
+         * @param solves whether the criterion needs the solver, which makes it far more expensive
+         */
+        protected Criterion(boolean solves) {
+            this.solves = solves;
+        }
+
+        /**
+         * @return {@code true} iff the deal meets the criterion
+         */
+        public abstract boolean test(DealFinder.Candidate candidate);
+    }
+
+    /**
+     * The deal starts with at least {@code count} aces face up on the tableaus.
+     */
+    public static Criterion acesShowing(final int count) {
+        return new Criterion(false) {
+            @Override
+            public boolean test(Candidate candidate) {
+                Klondike klondike = candidate.deal(new Klondike.Rules());
+                int aces = 0;
+                for (int i = 0; i < 7; ++i) {
+                    Card card = klondike.getTableau(i).peekLast();
+                    if (card.getRank() == Rank.ACE) {
+                        ++aces;
+                    }
+                }
+                return aces >= count;
+            }
+        };
+    }
+
+    /**
+     * The greedy rollout policy, played once with the deal number as its seed, loses: the deal isn't
+     * one that wins itself.
+     */
+    public static Criterion greedyLoses(final Klondike.Rules rules) {
+        return new Criterion(false) {
+            @Override
+            public boolean test(Candidate candidate) {
+                Playout playout = new Playout();
+                playout.init(rules, candidate.getSeed());
+                return !playout.rollout(new Random(candidate.getSeed()), Simulation.MAX_MOVES);
+            }
+        };
+    }
+
+    /**
+     * The solver can win the deal.
+     */
+    public static Criterion solvable(final Klondike.Rules rules) {
+        return new Criterion(true) {
+            @Override
+            public boolean test(Candidate candidate) {
+                return candidate.solve(rules).solved();
+            }
+        };
+    }
+
+    /**
+     * The solver has proven that the deal can't be won.
+     */
+    public static Criterion unsolvable(final Klondike.Rules rules) {
+        return new Criterion(true) {
+            @Override
+            public boolean test(Candidate candidate) {
+                return candidate.solve(rules).status == Solver.Status.UNSOLVABLE;
+            }
+        };
+    }
+
+    /**
+     * The solver wins the deal in no fewer than {@code length} moves. The solver's line isn't always the
+     * shortest, so this is a guide rather than a guarantee.
+     */
+    public static Criterion minSolutionLength(final Klondike.Rules rules, final int length) {
+        return new Criterion(true) {
+            @Override
+            public boolean test(Candidate candidate) {
+                Solver.Result result = candidate.solve(rules);
+                return result.solved() && result.moves.size() >= length;
+            }
+        };
+    }
+
+    /**
+     * The deal can be won, but not without going back through the deck at least once.
+     */
+    public static Criterion needsRestart(final Klondike.Rules rules) {
+        Preconditions.checkArgument(rules.passes != Klondike.Rules.Passes.SINGLE, "can't restart the deck anyway");
+        final Klondike.Rules once = new Klondike.Rules(rules.deal, Klondike.Rules.Passes.SINGLE);
+        return new Criterion(true) {
+            @Override
+            public boolean test(Candidate candidate) {
+                return candidate.solve(rules).solved() &&
+                        candidate.solve(once).status == Solver.Status.UNSOLVABLE;
+            }
+        };
+    }
+
+    /**
+     * The deal can be won dealing one card at a time, but not dealing three.
+     */
+    public static Criterion onlyWinnableDealingOne(final Klondike.Rules.Passes passes) {
+        final Klondike.Rules one = new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE, passes),
+                three = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE, passes);
+        return new Criterion(true) {
+            @Override
+            public boolean test(Candidate candidate) {
+                return candidate.solve(one).solved() && candidate.solve(three).status == Solver.Status.UNSOLVABLE;
+            }
+        };
+    }
+
+    /**
+     * Usage: {@code DealFinder count from to threads criterion...}, where each criterion is one of
+     * {@code aces=N}, {@code greedy-loses}, {@code solvable}, {@code unsolvable}, {@code length=N},
+     * {@code needs-restart} or {@code deal-one-only}. All but the last are under the standard rules.
+     */
+    public static void main(String... args) throws Exception {
+        int count = Integer.parseInt(args[0]);
+        long from = Long.parseLong(args[1]), to = Long.parseLong(args[2]);
+        int threads = Integer.parseInt(args[3]);
+
+        Klondike.Rules rules = new Klondike.Rules();
+        List<Criterion> criteria = Lists.newArrayList();
+        for (int i = 4; i < args.length; ++i) {
+            String[] arg = args[i].split("=", 2);
+            switch (arg[0]) {
+                case "aces":
+                    criteria.add(acesShowing(Integer.parseInt(arg[1])));
+                    break;
+                case "greedy-loses":
+                    criteria.add(greedyLoses(rules));
+                    break;
+                case "solvable":
+                    criteria.add(solvable(rules));
+                    break;
+                case "unsolvable":
+                    criteria.add(unsolvable(rules));
+                    break;
+                case "length":
+                    criteria.add(minSolutionLength(rules, Integer.parseInt(arg[1])));
+                    break;
+                case "needs-restart":
+                    criteria.add(needsRestart(rules));
+                    break;
+                case "deal-one-only":
+                    criteria.add(onlyWinnableDealingOne(rules.passes));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown criterion " + args[i]);
+            }
+        }
+
+        DealFinder finder = new DealFinder(criteria);
+        long start = System.nanoTime();
+        for (long seed : finder.find(from, to, count, threads)) {
+            System.out.println(seed);
+        }
+        System.err.println(String.format("%d deals examined, %d solves, in %d ms",
+                finder.getExamined(), finder.getSolved(), (System.nanoTime() - start) / 1000000));
+    }
+}
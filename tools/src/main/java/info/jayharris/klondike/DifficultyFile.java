@@ -0,0 +1,215 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.Lists;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A file of {@link DifficultyRating difficulty ratings}, sorted by score.
+ *
+ * After a short header, the file is nothing but fixed-width records, so the ratings in a range of scores
+ * can be found by binary search without reading the rest of the file.
+ */
+public final class DifficultyFile {
+
+    static final int MAGIC = 0x4b4c4446;       // "KLDF"
+    static final int HEADER_BYTES = 8;
+
+    private DifficultyFile() {}
+
+    /**
+     * Write ratings, which must already be sorted, to a file.
+     */
+    static void write(List<DifficultyRating> ratings, File file) throws IOException {
+        try (Writer writer = new Writer(new FileOutputStream(file))) {
+            for (DifficultyRating rating : ratings) {
+                writer.write(rating);
+            }
+        }
+    }
+
+    /**
+     * Merge sorted files into one sorted file, which is replaced atomically.
+     *
+     * @param runs the sorted files
+     * @param output the merged file
+     */
+    static void merge(List<File> runs, File output) throws IOException {
+        PriorityQueue<Reader> queue = new PriorityQueue<>(Math.max(runs.size(), 1), new Comparator<Reader>() {
+            @Override
+            public int compare(Reader a, Reader b) {
+                return DifficultyRating.BY_SCORE.compare(a.current, b.current);
+            }
+        });
+
+        File temp = AtomicFiles.tempFile(output);
+        List<Reader> readers = Lists.newArrayList();
+        try (Writer writer = new Writer(new FileOutputStream(temp))) {
+            for (File run : runs) {
+                Reader reader = new Reader(new FileInputStream(run));
+                readers.add(reader);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                Reader reader = queue.poll();
+                writer.write(reader.current);
+                if (reader.advance()) {
+                    queue.add(reader);
+                }
+            }
+        }
+        finally {
+            for (Reader reader : readers) {
+                reader.close();
+            }
+        }
+        AtomicFiles.replace(temp, output);
+    }
+
+    /**
+     * @return the number of ratings in the file
+     */
+    public static long size(File file) {
+        return (file.length() - HEADER_BYTES) / DifficultyRating.RECORD_BYTES;
+    }
+
+    /**
+     * Find every rating with a score in {@code [min, max]}.
+     *
+     * @param file the file
+     * @param min the lowest score
+     * @param max the highest score
+     * @return the ratings, easiest first
+     */
+    public static List<DifficultyRating> range(File file, int min, int max) throws IOException {
+        List<DifficultyRating> ratings = Lists.newArrayList();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            checkHeader(channel, file);
+
+            ByteBuffer record = ByteBuffer.allocate(DifficultyRating.RECORD_BYTES);
+            long size = size(file), lo = 0, hi = size;
+
+            // the first record scoring at least min
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (read(channel, mid, record).score < min) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+
+            for (long i = lo; i < size; ++i) {
+                DifficultyRating rating = read(channel, i, record);
+                if (rating.score > max) {
+                    break;
+                }
+                ratings.add(rating);
+            }
+        }
+        return ratings;
+    }
+
+    private static DifficultyRating read(FileChannel channel, long index, ByteBuffer record) throws IOException {
+        record.clear();
+        long position = HEADER_BYTES + index * DifficultyRating.RECORD_BYTES;
+        while (record.hasRemaining()) {
+            if (channel.read(record, position + record.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        record.flip();
+        return DifficultyRating.read(record);
+    }
+
+    private static void checkHeader(FileChannel channel, File file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // keep reading
+        }
+        header.flip();
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC ||
+                header.getInt() != DifficultyRating.RECORD_BYTES) {
+            throw new IOException("not a difficulty file: " + file);
+        }
+    }
+
+    static class Writer implements Closeable {
+        private final OutputStream out;
+        private final ByteBuffer record = ByteBuffer.allocate(DifficultyRating.RECORD_BYTES);
+
+        Writer(OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out, 1 << 16);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(DifficultyRating.RECORD_BYTES);
+            this.out.write(header.array());
+        }
+
+        void write(DifficultyRating rating) throws IOException {
+            record.clear();
+            rating.write(record);
+            out.write(record.array());
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final byte[] bytes = new byte[DifficultyRating.RECORD_BYTES];
+        DifficultyRating current;
+
+        Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            if (this.in.readInt() != MAGIC || this.in.readInt() != DifficultyRating.RECORD_BYTES) {
+                throw new IOException("not a difficulty file");
+            }
+        }
+
+        /**
+         * Read the next rating into {@link #current}.
+         *
+         * @return {@code false} at the end of the file
+         */
+        boolean advance() throws IOException {
+            try {
+                in.readFully(bytes);
+            }
+            catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            current = DifficultyRating.read(ByteBuffer.wrap(bytes));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
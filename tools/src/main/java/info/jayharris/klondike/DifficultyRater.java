@@ -0,0 +1,223 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Rates how hard seeded deals are, in bulk.
+ *
+ * Each deal is solved, and played out many times with the greedy {@link Playout#rollout rollout policy},
+ * under each of the rules variants; see {@link DifficultyRating} for how that comes out as a score. Deals
+ * are rated in chunks on a pool of threads. Ratings are gathered into runs, each run is sorted by score
+ * and spilled to a temporary file, and the runs are merged into a {@link DifficultyFile}, so memory use
+ * doesn't grow with the number of deals.
+ */
+public class DifficultyRater {
+
+    static final long DEFAULT_MAX_NODES = 100000;
+    static final int DEFAULT_ROLLOUTS = 100;
+    static final int CHUNK = 50, RUN_SIZE = 1 << 20;
+
+    private final List<Klondike.Rules> variants;
+    private final long maxNodes;
+    private final int rollouts;
+
+    private static final Logger logger = LoggerFactory.getLogger(DifficultyRater.class);
+
+    /**
+     * Keep each thread's transposition table around between deals.
+     */
+    private final ThreadLocal<TranspositionTable> tables = new ThreadLocal<TranspositionTable>() {
+        @Override
+        protected TranspositionTable initialValue() {
+            return new TranspositionTable(Solver.DEFAULT_TABLE_BYTES, TranspositionTable.Replacement.DEPTH_PREFERRED);
+        }
+    };
+
+    private final ThreadLocal<Playout[]> playouts = new ThreadLocal<Playout[]>() {
+        @Override
+        protected Playout[] initialValue() {
+            return new Playout[] { new Playout(), new Playout() };
+        }
+    };
+
+    public DifficultyRater(List<Klondike.Rules> variants) {
+        this(variants, DEFAULT_MAX_NODES, DEFAULT_ROLLOUTS);
+    }
+
+    /**
+     * @param variants the rules to rate each deal under
+     * @param maxNodes the most positions to let the solver search per deal
+     * @param rollouts how many times to play out each deal
+     */
+    public DifficultyRater(List<Klondike.Rules> variants, long maxNodes, int rollouts) {
+        Preconditions.checkArgument(!variants.isEmpty() && maxNodes > 0 && rollouts > 0);
+        this.variants = ImmutableList.copyOf(variants);
+        this.maxNodes = maxNodes;
+        this.rollouts = rollouts;
+    }
+
+    /**
+     * Rate one deal.
+     *
+     * @param seed the deal number
+     * @param rules the rules to play it by
+     * @return the rating
+     */
+    public DifficultyRating rate(long seed, Klondike.Rules rules) {
+        Klondike klondike = new Klondike(rules);
+        klondike.init(seed);
+
+        Playout[] buffers = playouts.get();
+        Playout start = buffers[0], game = buffers[1];
+        start.load(klondike);
+        Random random = new Random(seed);
+        int wins = 0;
+        for (int i = 0; i < rollouts; ++i) {
+            game.copyFrom(start);
+            if (game.rollout(random, Simulation.MAX_MOVES)) {
+                ++wins;
+            }
+        }
+        int rolloutWins = (int) (10000L * wins / rollouts);
+
+        // a fresh ordering, so what this thread rated before doesn't change the rating
+        Solver.Result result = new Solver(maxNodes, tables.get(), new HeuristicOrdering()).solve(klondike);
+        int passesNeeded = 0;
+        if (result.solved()) {
+            for (Move move : result.moves) {
+                klondike.apply(move);
+            }
+            passesNeeded = klondike.getPasses();
+        }
+
+        int nodes = (int) Math.min(result.nodes, Integer.MAX_VALUE);
+        return new DifficultyRating(seed, rules.deal, rules.passes, result.status, nodes, result.moves.size(),
+                passesNeeded, rolloutWins,
+                DifficultyRating.score(result.status, result.nodes, result.moves.size(), passesNeeded, rolloutWins, maxNodes));
+    }
+
+    /**
+     * Rate a range of deals under every variant and write the ratings, sorted by score, to a file.
+     *
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param threads how many threads to rate on
+     * @param output the file to write
+     * @return the number of ratings written
+     */
+    public long rateAll(long from, long to, int threads, File output) throws IOException, InterruptedException {
+        Preconditions.checkArgument(from <= to && threads > 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rater-%d").build());
+        List<File> runs = Lists.newArrayList();
+        try {
+            CompletionService<List<DifficultyRating>> completion = new ExecutorCompletionService<>(executor);
+            List<DifficultyRating> run = Lists.newArrayList();
+            long next = from, count = 0;
+            int inFlight = 0;
+
+            // keep a few chunks per thread queued up, rather than every chunk at once
+            while (next < to || inFlight > 0) {
+                while (next < to && inFlight < threads * 4) {
+                    final long first = next, end = Math.min(next + CHUNK, to);
+                    completion.submit(new Callable<List<DifficultyRating>>() {
+                        @Override
+                        public List<DifficultyRating> call() {
+                            List<DifficultyRating> ratings = Lists.newArrayList();
+                            for (long seed = first; seed < end; ++seed) {
+                                for (Klondike.Rules rules : variants) {
+                                    ratings.add(rate(seed, rules));
+                                }
+                            }
+                            return ratings;
+                        }
+                    });
+                    next = end;
+                    ++inFlight;
+                }
+
+                List<DifficultyRating> ratings = get(completion);
+                --inFlight;
+                run.addAll(ratings);
+                count += ratings.size();
+                if (run.size() >= RUN_SIZE) {
+                    runs.add(spill(run, output));
+                    logger.info(String.format("rated %d deals", count / variants.size()));
+                }
+            }
+            if (!run.isEmpty() || runs.isEmpty()) {
+                runs.add(spill(run, output));
+            }
+
+            DifficultyFile.merge(runs, output);
+            return count;
+        }
+        finally {
+            executor.shutdownNow();
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * Sort a run and write it to a temporary file next to the output.
+     */
+    private static File spill(List<DifficultyRating> run, File output) throws IOException {
+        Collections.sort(run, DifficultyRating.BY_SCORE);
+        File file = File.createTempFile(output.getName() + ".run", null, output.getAbsoluteFile().getParentFile());
+        DifficultyFile.write(run, file);
+        run.clear();
+        return file;
+    }
+
+    private static <T> T get(CompletionService<T> completion) throws InterruptedException {
+        try {
+            return completion.take().get();
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Usage: {@code DifficultyRater from to threads output-file [max-nodes] [rollouts]}
+     */
+    public static void main(String... args) throws Exception {
+        long from = Long.parseLong(args[0]), to = Long.parseLong(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        File output = new File(args[3]);
+        long maxNodes = args.length > 4 ? Long.parseLong(args[4]) : DEFAULT_MAX_NODES;
+        int rollouts = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_ROLLOUTS;
+
+        List<Klondike.Rules> variants = Lists.newArrayList();
+        for (Klondike.Rules.Deal deal : Klondike.Rules.Deal.values()) {
+            for (Klondike.Rules.Passes passes : Klondike.Rules.Passes.values()) {
+                variants.add(new Klondike.Rules(deal, passes));
+            }
+        }
+
+        long start = System.nanoTime();
+        long count = new DifficultyRater(variants, maxNodes, rollouts).rateAll(from, to, threads, output);
+        System.out.println(String.format("%d ratings in %d ms", count, (System.nanoTime() - start) / 1000000));
+    }
+}
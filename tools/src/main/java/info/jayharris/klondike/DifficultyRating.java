@@ -0,0 +1,159 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ComparisonChain;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+/**
+ * How hard a seeded deal is under some rules, as worked out by the {@link DifficultyRater}.
+ *
+ * The {@link #score} sums up the rest in one number from 0 (easiest) up:
+ * <ul>
+ *     <li>Deals the solver wins score below {@link #ABORTED}: up to 5000 points for how rarely the
+ *     greedy rollout policy wins, up to 2000 for how many positions the solver had to search (on a log
+ *     scale), up to 1000 for the length of the solver's winning line and up to 999 for the number of
+ *     times it had to go through the deck.</li>
+ *     <li>Deals the solver gave up on score {@link #ABORTED}.</li>
+ *     <li>Deals that can't be won score {@link #UNSOLVABLE}.</li>
+ * </ul>
+ *
+ * Ratings are stored as fixed-width {@link #RECORD_BYTES}-byte records, so a file of them sorted by score
+ * can be searched without reading all of it.
+ */
+public class DifficultyRating {
+
+    public static final int ABORTED = 9000, UNSOLVABLE = 10000;
+
+    static final int RECORD_BYTES = 22;
+
+    public final long seed;
+    public final Klondike.Rules.Deal deal;
+    public final Klondike.Rules.Passes passes;
+    public final Solver.Status status;
+    public final int score;
+
+    /**
+     * The number of positions the solver searched.
+     */
+    public final int nodes;
+
+    /**
+     * The number of moves in the solver's winning line, which may be longer than the shortest win.
+     */
+    public final int length;
+
+    /**
+     * The number of times the solver's winning line goes back through the deck.
+     */
+    public final int passesNeeded;
+
+    /**
+     * The fraction of greedy rollouts that won, in ten-thousandths.
+     */
+    public final int rolloutWins;
+
+    DifficultyRating(long seed, Klondike.Rules.Deal deal, Klondike.Rules.Passes passes, Solver.Status status,
+                     int nodes, int length, int passesNeeded, int rolloutWins, int score) {
+        this.seed = seed;
+        this.deal = deal;
+        this.passes = passes;
+        this.status = status;
+        this.nodes = nodes;
+        this.length = length;
+        this.passesNeeded = passesNeeded;
+        this.rolloutWins = rolloutWins;
+        this.score = score;
+    }
+
+    /**
+     * Work out the score from everything else.
+     *
+     * @param maxNodes the most positions the solver was allowed to search
+     */
+    static int score(Solver.Status status, long nodes, int length, int passesNeeded, int rolloutWins, long maxNodes) {
+        switch (status) {
+            case UNSOLVABLE:
+                return UNSOLVABLE;
+            case ABORTED:
+                return ABORTED;
+            default:
+                double search = Math.log1p(nodes) / Math.log1p(Math.max(maxNodes, 1));
+                return (int) (5000 * (10000 - rolloutWins) / 10000.0
+                        + 2000 * Math.min(1.0, search)
+                        + 1000 * Math.min(1.0, length / 250.0))
+                        + Math.min(999, 111 * passesNeeded);
+        }
+    }
+
+    /**
+     * @return the rules the deal was rated under
+     */
+    public Klondike.Rules rules() {
+        return new Klondike.Rules(deal, passes);
+    }
+
+    public double rolloutWinRate() {
+        return rolloutWins / 10000.0;
+    }
+
+    void write(ByteBuffer buffer) {
+        buffer.putShort((short) score);
+        buffer.putLong(seed);
+        buffer.put((byte) deal.ordinal());
+        buffer.put((byte) passes.ordinal());
+        buffer.put((byte) status.ordinal());
+        buffer.put((byte) Math.min(passesNeeded, 0xff));
+        buffer.putShort((short) rolloutWins);
+        buffer.putShort((short) Math.min(length, 0xffff));
+        buffer.putInt(nodes);
+    }
+
+    static DifficultyRating read(ByteBuffer buffer) {
+        int score = buffer.getShort() & 0xffff;
+        long seed = buffer.getLong();
+        Klondike.Rules.Deal deal = Klondike.Rules.Deal.values()[buffer.get()];
+        Klondike.Rules.Passes passes = Klondike.Rules.Passes.values()[buffer.get()];
+        Solver.Status status = Solver.Status.values()[buffer.get()];
+        int passesNeeded = buffer.get() & 0xff, rolloutWins = buffer.getShort() & 0xffff,
+                length = buffer.getShort() & 0xffff, nodes = buffer.getInt();
+        return new DifficultyRating(seed, deal, passes, status, nodes, length, passesNeeded, rolloutWins, score);
+    }
+
+    /**
+     * Easiest first, then by rules and deal number.
+     */
+    static final Comparator<DifficultyRating> BY_SCORE = new Comparator<DifficultyRating>() {
+        @Override
+        public int compare(DifficultyRating a, DifficultyRating b) {
+            return ComparisonChain.start()
+                    .compare(a.score, b.score)
+                    .compare(a.deal, b.deal)
+                    .compare(a.passes, b.passes)
+                    .compare(a.seed, b.seed)
+                    .result();
+        }
+    };
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof DifficultyRating)) {
+            return false;
+        }
+        DifficultyRating that = (DifficultyRating) o;
+        return seed == that.seed && deal == that.deal && passes == that.passes && status == that.status &&
+                nodes == that.nodes && length == that.length && passesNeeded == that.passesNeeded &&
+                rolloutWins == that.rolloutWins && score == that.score;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (seed ^ (seed >>> 32)) * 31 + score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d\t%s\t%s\t%d\t%s\t%d\t%d\t%d\t%.4f",
+                score, deal, passes, seed, status, nodes, length, passesNeeded, rolloutWinRate());
+    }
+}
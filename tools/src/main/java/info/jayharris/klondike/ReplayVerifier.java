@@ -0,0 +1,489 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks that the games recorded in a {@link TraceFile} were played by the rules, for audits.
+ *
+ * Each game is dealt again from its deal number and every move is made again, in order, on a real
+ * {@link Klondike}, so it's only allowed if the tableau or foundation it goes to accepts it. Everything
+ * else the trace says about the move -- which card moved, how many cards were turned over, how many
+ * passes through the deck had been made -- has to match what actually happened, and so do the moves'
+ * numbers. Given a {@link ResultFile} as well, the verifier also checks that each game ended the way the
+ * result says: won or lost, after that many moves, with that many cards on the foundations.
+ *
+ * The trace is read on the calling thread, one block at a time, and handed out to the other threads in
+ * chunks of whole games, with only a few chunks waiting at once, so memory use doesn't grow with the
+ * size of the file. The claimed results, if any, are all held in memory.
+ */
+public class ReplayVerifier {
+
+    static final int CHUNK_ROWS = 1 << 15;
+
+    private final int threads;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayVerifier.class);
+
+    /**
+     * @param threads how many threads to verify games on
+     */
+    public ReplayVerifier(int threads) {
+        Preconditions.checkArgument(threads > 0);
+        this.threads = threads;
+    }
+
+    /**
+     * Check every game in a trace.
+     *
+     * @param trace the trace file
+     * @return what was found
+     */
+    public Report verify(File trace) throws IOException {
+        return verify(trace, null);
+    }
+
+    /**
+     * Check every game in a trace against the claimed results. Every claimed result needs a game in the
+     * trace, unless it claims no moves were made, and every game in the trace needs a claimed result.
+     *
+     * @param trace the trace file
+     * @param results the results file, or {@code null} to check the moves only
+     * @return what was found
+     */
+    public Report verify(File trace, File results) throws IOException {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("verifier-%d").build());
+
+        try (TraceFile.Reader reader = new TraceFile.Reader(trace)) {
+            Map<Long, Simulation.Result> claims = results == null ? null : readClaims(results, reader.rules);
+            Report report = new Report();
+            Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+            TraceFile.Reader.Cursor[] cursors = new TraceFile.Reader.Cursor[TraceFile.Column.values().length];
+            for (TraceFile.Column column : TraceFile.Column.values()) {
+                cursors[column.ordinal()] = reader.scan(column);
+            }
+
+            Chunk chunk = new Chunk(reader.rules, claims != null);
+            long game = -1;
+            boolean more = true;
+            while (more) {
+                for (TraceFile.Reader.Cursor cursor : cursors) {
+                    more &= cursor.next();
+                }
+                if (!more) {
+                    break;
+                }
+
+                int ply = (int) cursors[TraceFile.Column.PLY.ordinal()].get();
+                if (chunk.games == 0 || cursors[0].get() != game || ply == 0) {
+                    if (chunk.rows >= CHUNK_ROWS) {
+                        submit(executor, chunk, pending, report);
+                        chunk = new Chunk(reader.rules, claims != null);
+                    }
+                    game = cursors[0].get();
+                    chunk.startGame(game, claims == null ? null : claims.remove(game));
+                }
+                chunk.add(pack(ply, cursors));
+            }
+            if (chunk.games > 0) {
+                submit(executor, chunk, pending, report);
+            }
+            while (!pending.isEmpty()) {
+                collect(pending.removeFirst(), report);
+            }
+
+            if (claims != null) {
+                // games that were claimed, but not in the trace
+                for (Simulation.Result claim : claims.values()) {
+                    ++report.games;
+                    if (claim.moves > 0 || claim.won || claim.foundationCards > 0) {
+                        report.invalid.add(new Invalid(claim.seed, 0, "claimed result has no moves in the trace"));
+                    }
+                }
+            }
+
+            Collections.sort(report.invalid, Invalid.BY_GAME);
+            report.nanos = System.nanoTime() - start;
+            logger.debug(report.toString());
+            return report;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Map<Long, Simulation.Result> readClaims(File file, Klondike.Rules rules) throws IOException {
+        Map<Long, Simulation.Result> claims = Maps.newHashMap();
+        try (ResultFile.Reader reader = new ResultFile.Reader(file)) {
+            if (reader.rules.deal != rules.deal || reader.rules.passes != rules.passes) {
+                throw new IOException(String.format("%s isn't under the same rules as the trace", file));
+            }
+            for (Simulation.Result result = reader.next(); result != null; result = reader.next()) {
+                claims.put(result.seed, result);
+            }
+        }
+        return claims;
+    }
+
+    /**
+     * Start verifying a chunk, first waiting for the oldest if too many are waiting already.
+     */
+    private void submit(ExecutorService executor, final Chunk chunk, Deque<Future<Chunk>> pending, Report report) {
+        if (pending.size() >= 2 * threads) {
+            collect(pending.removeFirst(), report);
+        }
+        pending.addLast(executor.submit(new Callable<Chunk>() {
+            @Override
+            public Chunk call() {
+                chunk.verify();
+                return chunk;
+            }
+        }));
+    }
+
+    private static void collect(Future<Chunk> future, Report report) {
+        Chunk chunk;
+        try {
+            chunk = Uninterruptibles.getUninterruptibly(future);
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+        report.games += chunk.games;
+        report.moves += chunk.rows;
+        report.invalid.addAll(chunk.invalid);
+    }
+
+    /* ************************************************************************
+     * Checking one game
+     * ************************************************************************/
+
+    // a row, packed into a long: ply, type, from, to, card, flipped and pass, a byte each but the ply
+    private static long pack(int ply, TraceFile.Reader.Cursor[] cursors) {
+        long row = ply;
+        for (int c = TraceFile.Column.TYPE.ordinal(); c <= TraceFile.Column.PASS.ordinal(); ++c) {
+            row = row << 8 | (cursors[c].get() & 0xff);
+        }
+        return row;
+    }
+
+    private static int field(long row, TraceFile.Column column) {
+        return (int) (row >>> (8 * (TraceFile.Column.PASS.ordinal() - column.ordinal()))) &
+                (column == TraceFile.Column.PLY ? 0xffff : 0xff);
+    }
+
+    /**
+     * Make one recorded move.
+     *
+     * @return what's wrong with it, or {@code null} if nothing is
+     */
+    static String replay(Klondike klondike, long row) {
+        int type = field(row, TraceFile.Column.TYPE), from = field(row, TraceFile.Column.FROM),
+                to = field(row, TraceFile.Column.TO), card = field(row, TraceFile.Column.CARD),
+                flipped = field(row, TraceFile.Column.FLIPPED);
+        if (type >= Move.Type.values().length) {
+            return "unknown move type " + type;
+        }
+
+        Move move;
+        int expectFrom, expectTo, expectCard, expectFlipped = 0;
+        int facedown = klondike.countFacedown();
+
+        switch (Move.Type.values()[type]) {
+            case DEAL:
+                move = Move.deal();
+                if (klondike.isDeckEmpty()) {
+                    expectFrom = 1;
+                    expectTo = 0;
+                    expectCard = TraceFile.NONE;
+                    expectFlipped = klondike.getWaste().size();
+                }
+                else {
+                    expectFrom = 0;
+                    expectTo = 1;
+                    expectFlipped = Math.min(klondike.rules.getDeal(), klondike.getDeck().size());
+                    // whatever ends up on top of the waste; checked once it's there
+                    expectCard = card;
+                }
+                break;
+            case WASTE_TO_TABLEAU:
+                if (klondike.getWaste().isEmpty() || to < 2 || to > 8) {
+                    return "no such move";
+                }
+                move = Move.wasteToTableau(to - 2);
+                expectFrom = 1;
+                expectTo = to;
+                expectCard = CardCodes.code(klondike.getWaste().peekLast());
+                break;
+            case WASTE_TO_FOUNDATION:
+                if (klondike.getWaste().isEmpty()) {
+                    return "no such move";
+                }
+                move = Move.wasteToFoundation();
+                expectFrom = 1;
+                expectCard = CardCodes.code(klondike.getWaste().peekLast());
+                expectTo = 9 + CardCodes.suit(expectCard);
+                break;
+            case TABLEAU_TO_FOUNDATION:
+                if (from < 2 || from > 8 || klondike.getTableau(from - 2).isEmpty()) {
+                    return "no such move";
+                }
+                move = Move.tableauToFoundation(from - 2);
+                expectFrom = from;
+                expectCard = CardCodes.code(klondike.getTableau(from - 2).peekLast());
+                expectTo = 9 + CardCodes.suit(expectCard);
+                break;
+            default:
+                if (from < 2 || from > 8 || to < 2 || to > 8) {
+                    return "no such move";
+                }
+                // the trace only says which card was at the bottom of the stack, so find it
+                Klondike.Tableau tableau = klondike.getTableau(from - 2);
+                int count = 0;
+                for (int i = tableau.size() - 1; i >= 0 && !tableau.get(i).isFacedown(); --i) {
+                    if (CardCodes.code(tableau.get(i)) == card) {
+                        count = tableau.size() - i;
+                        break;
+                    }
+                }
+                if (count == 0) {
+                    return "card isn't face up on the tableau";
+                }
+                move = Move.tableauToTableau(from - 2, to - 2, count);
+                expectFrom = from;
+                expectTo = to;
+                expectCard = card;
+                break;
+        }
+
+        if (from != expectFrom || to != expectTo) {
+            return String.format("%s from %d to %d is recorded from %d to %d", move, expectFrom, expectTo, from, to);
+        }
+        if (card != expectCard) {
+            return String.format("%s moves %d, recorded as %d", move, expectCard, card);
+        }
+        if (!klondike.apply(move)) {
+            return "illegal " + move;
+        }
+        if (expectTo == 1 && card != CardCodes.code(klondike.getWaste().peekLast())) {
+            return String.format("%s dealt %d, recorded as %d", move, CardCodes.code(klondike.getWaste().peekLast()), card);
+        }
+
+        if (type != Move.Type.DEAL.ordinal()) {
+            expectFlipped = facedown - klondike.countFacedown();
+        }
+        if (flipped != expectFlipped) {
+            return String.format("%s turned over %d cards, recorded as %d", move, expectFlipped, flipped);
+        }
+        int pass = field(row, TraceFile.Column.PASS);
+        if (pass != Math.min(klondike.getPasses(), 0xff)) {
+            return String.format("%s leaves %d passes, recorded as %d", move, klondike.getPasses(), pass);
+        }
+        return null;
+    }
+
+    /**
+     * @return what's wrong with the claimed result of the game, or {@code null} if nothing is
+     */
+    static String checkClaim(Klondike klondike, int moves, Simulation.Result claim) {
+        if (claim == null) {
+            return "no claimed result";
+        }
+        int foundationCards = 0;
+        for (Klondike.Foundation foundation : klondike.getFoundations()) {
+            foundationCards += foundation.size();
+        }
+        if (claim.moves != moves || claim.won != klondike.won() || claim.foundationCards != foundationCards) {
+            return String.format("claimed %s after %d moves with %d cards up, but was %s with %d",
+                    claim.won ? "won" : "lost", claim.moves, claim.foundationCards,
+                    klondike.won() ? "won" : "lost", foundationCards);
+        }
+        return null;
+    }
+
+    /**
+     * Whole games, as read from the trace, and whatever's wrong with them once they're verified.
+     */
+    private static class Chunk {
+        final Klondike.Rules rules;
+        final boolean claimed;
+
+        long[] rowData = new long[CHUNK_ROWS + 256];
+        long[] gameNumbers = new long[256];
+        int[] gameStarts = new int[256];
+        Simulation.Result[] claims = new Simulation.Result[256];
+        int rows = 0, games = 0;
+
+        final List<Invalid> invalid = Lists.newArrayList();
+
+        Chunk(Klondike.Rules rules, boolean claimed) {
+            this.rules = rules;
+            this.claimed = claimed;
+        }
+
+        void startGame(long game, Simulation.Result claim) {
+            if (games == gameNumbers.length) {
+                gameNumbers = Arrays.copyOf(gameNumbers, games * 2);
+                gameStarts = Arrays.copyOf(gameStarts, games * 2);
+                claims = Arrays.copyOf(claims, games * 2);
+            }
+            gameNumbers[games] = game;
+            gameStarts[games] = rows;
+            claims[games] = claim;
+            ++games;
+        }
+
+        void add(long row) {
+            if (rows == rowData.length) {
+                rowData = Arrays.copyOf(rowData, rows * 2);
+            }
+            rowData[rows++] = row;
+        }
+
+        void verify() {
+            for (int g = 0; g < games; ++g) {
+                int start = gameStarts[g], end = g + 1 < games ? gameStarts[g + 1] : rows;
+                Klondike klondike = new Klondike(rules);
+                klondike.init(gameNumbers[g]);
+
+                String problem = null;
+                int ply;
+                for (ply = 0; ply < end - start; ++ply) {
+                    long row = rowData[start + ply];
+                    if (field(row, TraceFile.Column.PLY) != (ply & 0xffff)) {
+                        problem = "recorded as move " + field(row, TraceFile.Column.PLY);
+                        break;
+                    }
+                    try {
+                        problem = replay(klondike, row);
+                    }
+                    catch (RuntimeException e) {
+                        problem = e.toString();
+                    }
+                    if (problem != null) {
+                        break;
+                    }
+                }
+                if (problem == null && claimed) {
+                    problem = checkClaim(klondike, end - start, claims[g]);
+                }
+                if (problem != null) {
+                    invalid.add(new Invalid(gameNumbers[g], ply, problem));
+                }
+            }
+        }
+    }
+
+    /* ************************************************************************
+     * Results
+     * ************************************************************************/
+
+    /**
+     * A game that wasn't played by the rules, or didn't end the way it was said to.
+     */
+    public static class Invalid {
+        public final long game;
+        public final int ply;
+        public final String reason;
+
+        static final Comparator<Invalid> BY_GAME = new Comparator<Invalid>() {
+            @Override
+            public int compare(Invalid o1, Invalid o2) {
+                return o1.game < o2.game ? -1 : o1.game > o2.game ? 1 : Integer.compare(o1.ply, o2.ply);
+            }
+        };
+
+        /**
+         * @param game the deal number
+         * @param ply the number of the first bad move, or the number of moves if the moves are fine but
+         *            the result isn't
+         * @param reason what's wrong
+         */
+        Invalid(long game, int ply, String reason) {
+            this.game = game;
+            this.ply = ply;
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d\t%d\t%s", game, ply, reason);
+        }
+    }
+
+    public static class Report {
+        private long games, moves, nanos;
+        private final List<Invalid> invalid = Lists.newArrayList();
+
+        public long getGames() {
+            return games;
+        }
+
+        public long getMoves() {
+            return moves;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the bad games, in order of deal number
+         */
+        public List<Invalid> getInvalid() {
+            return ImmutableList.copyOf(invalid);
+        }
+
+        public double gamesPerSecond() {
+            return nanos == 0 ? 0 : games * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games, %d moves in %d ms (%.0f games/s, %.0f moves/s); %d invalid",
+                    games, moves, nanos / 1000000, gamesPerSecond(), nanos == 0 ? 0 : moves * 1e9 / nanos,
+                    invalid.size());
+        }
+    }
+
+    /**
+     * Usage: {@code ReplayVerifier trace-file [result-file] [threads]}. Prints a line for each bad game:
+     * the deal number, the number of the first bad move and what's wrong, separated by tabs.
+     */
+    public static void main(String... args) throws Exception {
+        File trace = new File(args[0]);
+        File results = args.length > 1 && !args[1].isEmpty() ? new File(args[1]) : null;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Report report = new ReplayVerifier(threads).verify(trace, results);
+        for (Invalid invalid : report.getInvalid()) {
+            System.out.println(invalid);
+        }
+        System.err.println(report);
+    }
+}
@@ -0,0 +1,111 @@
+package info.jayharris.klondike;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A compact binary file of {@link Simulation.Result simulation results}.
+ *
+ * The file starts with a header naming the rules the games were played under, followed by one 12-byte
+ * record per game: the seed, the number of moves, the number of cards on the foundations and whether
+ * the game was won.
+ */
+public final class ResultFile {
+
+    static final int MAGIC = 0x4b4c5352;       // "KLSR"
+    static final short VERSION = 1;
+
+    private ResultFile() {}
+
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+
+        public Writer(File file, Klondike.Rules rules) throws IOException {
+            this(new FileOutputStream(file), rules);
+        }
+
+        public Writer(OutputStream out, Klondike.Rules rules) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            this.out.writeInt(MAGIC);
+            this.out.writeShort(VERSION);
+            this.out.writeByte(rules.deal.ordinal());
+            this.out.writeByte(rules.passes.ordinal());
+        }
+
+        public void write(Simulation.Result result) throws IOException {
+            out.writeLong(result.seed);
+            out.writeShort(result.moves);
+            out.writeByte(result.foundationCards);
+            out.writeByte(result.won ? 1 : 0);
+        }
+
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        public final Klondike.Rules rules;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                in.close();
+                throw new IOException("not a result file: " + file);
+            }
+            rules = new Klondike.Rules(Klondike.Rules.Deal.values()[in.readByte()],
+                    Klondike.Rules.Passes.values()[in.readByte()]);
+        }
+
+        /**
+         * @return the next result, or {@code null} at the end of the file
+         */
+        public Simulation.Result next() throws IOException {
+            long seed;
+            try {
+                seed = in.readLong();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+            int moves = in.readUnsignedShort(), foundationCards = in.readUnsignedByte();
+            return new Simulation.Result(seed, in.readByte() != 0, moves, foundationCards);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Add up the results in a file.
+     *
+     * @param file the file
+     * @return the totals
+     */
+    public static SimulationReport summarize(File file) throws IOException {
+        SimulationReport report = new SimulationReport();
+        try (Reader reader = new Reader(file)) {
+            for (Simulation.Result result = reader.next(); result != null; result = reader.next()) {
+                report.add(result);
+            }
+        }
+        return report;
+    }
+}
@@ -0,0 +1,278 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Simulates a range of seeded deals across several worker JVMs on this machine and merges the results.
+ *
+ * The range is cut into shards. Each {@link SimulationWorker} connects back to the coordinator over a
+ * loopback socket, asks for a shard, simulates it, writes its results to a {@link ResultFile} in the
+ * output directory, and asks for another. If a worker dies with a shard unfinished, the shard goes back
+ * on the queue and another worker is started in its place. Once every shard is done, the shard files are
+ * merged, in order, into a single result file.
+ *
+ * Usage: {@code SimulationCoordinator from to shard-size workers output-dir [deal-one] [passes]}
+ */
+public class SimulationCoordinator {
+
+    static final byte REQUEST = 'R', SHARD = 'S', COMPLETE = 'C', DONE = 'D';
+
+    private final Klondike.Rules rules;
+    private final File directory;
+    private final int workers, maxRestarts;
+
+    private final Deque<Shard> pending = new ArrayDeque<>();
+    private final List<Shard> shards = Lists.newArrayList();
+    private final List<Process> processes = Lists.newArrayList();
+    private int completed = 0, restarts = 0;
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationCoordinator.class);
+
+    /**
+     * @param rules the rules to play by
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param shardSize how many deals to hand a worker at once
+     * @param workers how many worker JVMs to run at a time
+     * @param directory where the workers write their results
+     */
+    public SimulationCoordinator(Klondike.Rules rules, long from, long to, int shardSize, int workers, File directory) {
+        Preconditions.checkArgument(from < to && shardSize > 0 && workers > 0);
+
+        this.rules = rules;
+        this.directory = directory;
+        this.workers = workers;
+        this.maxRestarts = workers * 4;
+
+        for (long start = from; start < to; start += shardSize) {
+            Shard shard = new Shard(start, Math.min(start + shardSize, to));
+            shards.add(shard);
+            pending.add(shard);
+        }
+    }
+
+    /**
+     * Run every shard to completion, then merge the shard files into {@code results.bin}.
+     *
+     * @return the totals over the whole range
+     */
+    public SimulationReport run() throws IOException, InterruptedException {
+        directory.mkdirs();
+
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(500);
+            for (int i = 0; i < workers; ++i) {
+                launch(server.getLocalPort());
+            }
+
+            while (!isFinished()) {
+                try {
+                    final Socket socket = server.accept();
+                    Thread handler = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            serve(socket);
+                        }
+                    }, "coordinator-" + socket.getPort());
+                    handler.setDaemon(true);
+                    handler.start();
+                }
+                catch (SocketTimeoutException e) {
+                    // time to check up on the workers
+                }
+                replaceDeadWorkers(server.getLocalPort());
+            }
+        }
+        finally {
+            synchronized (this) {
+                for (Process process : processes) {
+                    process.destroy();
+                }
+            }
+        }
+
+        return merge(new File(directory, "results.bin"));
+    }
+
+    /**
+     * Talk to one worker until it's done or dead.
+     */
+    private void serve(Socket socket) {
+        Shard shard = null;
+        try (DataInputStream in = new DataInputStream(socket.getInputStream());
+             DataOutputStream out = new DataOutputStream(socket.getOutputStream())) {
+
+            out.writeByte(rules.deal.ordinal());
+            out.writeByte(rules.passes.ordinal());
+            out.writeUTF(directory.getAbsolutePath());
+            out.flush();
+
+            while (true) {
+                byte request = in.readByte();
+                if (request == COMPLETE) {
+                    complete(shard);
+                    shard = null;
+                    continue;
+                }
+                Preconditions.checkState(request == REQUEST);
+
+                shard = take();
+                if (shard == null) {
+                    out.writeByte(DONE);
+                    out.flush();
+                    return;
+                }
+                out.writeByte(SHARD);
+                out.writeLong(shard.from);
+                out.writeLong(shard.to);
+                out.flush();
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn("lost a worker: " + e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            if (shard != null) {
+                requeue(shard);
+            }
+        }
+    }
+
+    /**
+     * @return the next shard to work on, or {@code null} if there are none left, waiting if all the
+     *         remaining shards are in progress
+     */
+    private synchronized Shard take() throws InterruptedException {
+        while (pending.isEmpty() && completed < shards.size()) {
+            wait();
+        }
+        Shard shard = pending.poll();
+        if (shard != null) {
+            shard.attempts++;
+        }
+        return shard;
+    }
+
+    private synchronized void complete(Shard shard) {
+        Preconditions.checkState(shard != null && !shard.done);
+        shard.done = true;
+        ++completed;
+        logger.info(String.format("finished deals %d-%d (%d/%d shards)", shard.from, shard.to, completed, shards.size()));
+        notifyAll();
+    }
+
+    private synchronized void requeue(Shard shard) {
+        if (!shard.done) {
+            logger.warn(String.format("reassigning deals %d-%d", shard.from, shard.to));
+            pending.addFirst(shard);
+            notifyAll();
+        }
+    }
+
+    private synchronized boolean isFinished() {
+        return completed == shards.size();
+    }
+
+    private synchronized void replaceDeadWorkers(int port) throws IOException {
+        for (Iterator<Process> iter = processes.iterator(); iter.hasNext(); ) {
+            if (!isAlive(iter.next())) {
+                iter.remove();
+            }
+        }
+        while (processes.size() < workers && !pending.isEmpty() && completed < shards.size()) {
+            if (restarts++ >= maxRestarts) {
+                throw new IOException("workers keep dying, giving up");
+            }
+            launch(port);
+        }
+    }
+
+    private synchronized void launch(int port) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                SimulationWorker.class.getName(), Integer.toString(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.appendTo(new File(directory, "workers.log")));
+        processes.add(builder.start());
+    }
+
+    private static boolean isAlive(Process process) {
+        try {
+            process.exitValue();
+            return false;
+        }
+        catch (IllegalThreadStateException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Concatenate the shard files, in order, and add up the results.
+     */
+    private SimulationReport merge(File output) throws IOException {
+        SimulationReport report = new SimulationReport();
+        try (ResultFile.Writer writer = new ResultFile.Writer(output, rules)) {
+            for (Shard shard : shards) {
+                try (ResultFile.Reader reader = new ResultFile.Reader(shard.file(directory))) {
+                    for (Simulation.Result result = reader.next(); result != null; result = reader.next()) {
+                        writer.write(result);
+                        report.add(result);
+                    }
+                }
+            }
+        }
+        return report;
+    }
+
+    static class Shard {
+        final long from, to;
+        boolean done;
+        int attempts;
+
+        Shard(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        File file(File directory) {
+            return shardFile(directory, from, to);
+        }
+    }
+
+    static File shardFile(File directory, long from, long to) {
+        return new File(directory, String.format("shard-%d-%d.bin", from, to));
+    }
+
+    public static void main(String... args) throws Exception {
+        long from = Long.parseLong(args[0]), to = Long.parseLong(args[1]);
+        int shardSize = Integer.parseInt(args[2]), workers = Integer.parseInt(args[3]);
+        File directory = new File(args[4]);
+        boolean dealOne = args.length > 5 && Boolean.parseBoolean(args[5]);
+        Klondike.Rules.Passes passes = args.length > 6 ?
+                Klondike.Rules.Passes.parse(args[6]) : Klondike.Rules.Passes.INFINITY;
+
+        Klondike.Rules rules = new Klondike.Rules(
+                dealOne ? Klondike.Rules.Deal.DEAL_SINGLE : Klondike.Rules.Deal.DEAL_THREE, passes);
+        System.out.println(new SimulationCoordinator(rules, from, to, shardSize, workers, directory).run());
+    }
+}
@@ -0,0 +1,181 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Range;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long run of {@link Simulation simulated} deals that can be stopped and started again.
+ *
+ * The deals are played in chunks on a pool of threads. Every so often the job {@link Checkpoint#save(File)
+ * saves a checkpoint} of the chunks it has finished and the totals over them. If a checkpoint file is
+ * already there when the job starts, the deals it records are skipped, even if it was saved by a job
+ * playing chunks of another size. Every deal plays out the same way no matter when or where it's played,
+ * so a job that was stopped and resumed comes up with exactly the same totals as one that ran straight
+ * through.
+ *
+ * Usage: {@code SimulationJob from to threads checkpoint-file [deal-one] [passes]}
+ */
+public class SimulationJob {
+
+    static final int DEFAULT_CHUNK = 1000;
+
+    private final Klondike.Rules rules;
+    private final long from, to;
+    private final int threads, chunk;
+    private final File checkpointFile;
+    private final long intervalNanos;
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationJob.class);
+
+    /**
+     * @param rules the rules to play by
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param threads how many threads to play on
+     * @param checkpointFile where to keep the checkpoint
+     */
+    public SimulationJob(Klondike.Rules rules, long from, long to, int threads, File checkpointFile) {
+        this(rules, from, to, threads, checkpointFile, DEFAULT_CHUNK, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param rules the rules to play by
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param threads how many threads to play on
+     * @param checkpointFile where to keep the checkpoint
+     * @param chunk how many deals to play at a time
+     * @param interval how often to save a checkpoint, or 0 to save after every chunk
+     * @param unit the unit of {@code interval}
+     */
+    public SimulationJob(Klondike.Rules rules, long from, long to, int threads, File checkpointFile,
+                         int chunk, long interval, TimeUnit unit) {
+        Preconditions.checkArgument(from <= to && threads > 0 && chunk > 0);
+
+        this.rules = rules;
+        this.from = from;
+        this.to = to;
+        this.threads = threads;
+        this.checkpointFile = checkpointFile;
+        this.chunk = chunk;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Play every deal not already recorded in the checkpoint, then save a final checkpoint.
+     *
+     * @return the totals over every deal in the job
+     */
+    public SimulationReport run() throws IOException, InterruptedException {
+        Checkpoint checkpoint = loadCheckpoint();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("simulation-%d").build());
+        try {
+            CompletionService<Chunk> completion = new ExecutorCompletionService<>(executor);
+            int submitted = 0;
+            for (long start = from; start < to; start += chunk) {
+                // just the parts not played yet, in case the checkpoint was made with another chunk size
+                for (Range<Long> range : checkpoint.remaining(start, Math.min(start + chunk, to))) {
+                    final long first = range.lowerEndpoint(), end = range.upperEndpoint();
+                    completion.submit(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() {
+                            return play(first, end);
+                        }
+                    });
+                    ++submitted;
+                }
+            }
+
+            long lastSave = System.nanoTime();
+            for (int i = 0; i < submitted; ++i) {
+                Chunk done = get(completion);
+                checkpoint.complete(done.start, done.end, done.report);
+
+                if (System.nanoTime() - lastSave >= intervalNanos) {
+                    checkpoint.save(checkpointFile);
+                    lastSave = System.nanoTime();
+                    logger.info(checkpoint.toString());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        checkpoint.save(checkpointFile);
+        return checkpoint.getReport();
+    }
+
+    private Checkpoint loadCheckpoint() throws IOException {
+        if (!checkpointFile.exists()) {
+            return new Checkpoint(rules, from, to);
+        }
+
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+        if (!checkpoint.matches(rules, from, to)) {
+            throw new IOException(checkpointFile + " is a checkpoint for a different job");
+        }
+        logger.info("resuming from " + checkpoint);
+        return checkpoint;
+    }
+
+    private Chunk play(long start, long end) {
+        Simulation simulation = new Simulation(rules);
+        SimulationReport report = new SimulationReport();
+        for (long seed = start; seed < end; ++seed) {
+            report.add(simulation.play(seed));
+        }
+        return new Chunk(start, end, report);
+    }
+
+    private static Chunk get(CompletionService<Chunk> completion) throws InterruptedException {
+        try {
+            return completion.take().get();
+        }
+        catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static class Chunk {
+        final long start, end;
+        final SimulationReport report;
+
+        Chunk(long start, long end, SimulationReport report) {
+            this.start = start;
+            this.end = end;
+            this.report = report;
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        long from = Long.parseLong(args[0]), to = Long.parseLong(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        File checkpointFile = new File(args[3]);
+        boolean dealOne = args.length > 4 && Boolean.parseBoolean(args[4]);
+        Klondike.Rules.Passes passes = args.length > 5 ?
+                Klondike.Rules.Passes.parse(args[5]) : Klondike.Rules.Passes.INFINITY;
+
+        Klondike.Rules rules = new Klondike.Rules(
+                dealOne ? Klondike.Rules.Deal.DEAL_SINGLE : Klondike.Rules.Deal.DEAL_THREE, passes);
+        System.out.println(new SimulationJob(rules, from, to, threads, checkpointFile).run());
+    }
+}
@@ -0,0 +1,61 @@
+package info.jayharris.klondike;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * One worker process for a {@link SimulationCoordinator}. Connects to the coordinator on the given port
+ * and simulates whatever shards it's handed until there are none left.
+ *
+ * Each shard's results are written to a temporary file and moved into place only when they're complete,
+ * so the coordinator never sees half a shard.
+ *
+ * Usage: {@code SimulationWorker port}
+ */
+public class SimulationWorker {
+
+    public static void main(String... args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+
+            Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.values()[in.readByte()],
+                    Klondike.Rules.Passes.values()[in.readByte()]);
+            File directory = new File(in.readUTF());
+            Simulation simulation = new Simulation(rules);
+
+            while (true) {
+                out.writeByte(SimulationCoordinator.REQUEST);
+                out.flush();
+                if (in.readByte() != SimulationCoordinator.SHARD) {
+                    return;
+                }
+
+                long from = in.readLong(), to = in.readLong();
+                run(simulation, from, to, SimulationCoordinator.shardFile(directory, from, to));
+
+                out.writeByte(SimulationCoordinator.COMPLETE);
+            }
+        }
+    }
+
+    static void run(Simulation simulation, long from, long to, File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (ResultFile.Writer writer = new ResultFile.Writer(temp, simulation.getRules())) {
+            for (long seed = from; seed < to; ++seed) {
+                writer.write(simulation.play(seed));
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,55 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Solve a range of seeded deals under each move ordering and report how much work it took.
+ *
+ * Usage: {@code SolverBenchmark [deals] [max nodes per deal]}
+ */
+public class SolverBenchmark {
+
+    public static void main(String... args) {
+        int deals = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long maxNodes = args.length > 1 ? Long.parseLong(args[1]) : 200000;
+
+        Map<String, Klondike.Rules> variants = ImmutableMap.of(
+                "deal-1", new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE),
+                "deal-3", new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE));
+
+        System.out.println(String.format("%-8s %-10s %8s %8s %14s %10s %12s",
+                "rules", "ordering", "solved", "aborted", "nodes", "ms", "nodes/solve"));
+
+        TranspositionTable table = new TranspositionTable(Solver.DEFAULT_TABLE_BYTES,
+                TranspositionTable.Replacement.DEPTH_PREFERRED);
+        for (Map.Entry<String, Klondike.Rules> variant : variants.entrySet()) {
+            for (String name : new String[] { "none", "heuristic" }) {
+                MoveOrdering ordering = name.equals("none") ? MoveOrdering.NONE : new HeuristicOrdering();
+                Solver solver = new Solver(maxNodes, table, ordering);
+                int solved = 0, aborted = 0;
+                long nodes = 0, solvedNodes = 0, start = System.nanoTime();
+
+                for (long seed = 0; seed < deals; ++seed) {
+                    Klondike klondike = new Klondike(variant.getValue());
+                    klondike.init(seed);
+                    Solver.Result result = solver.solve(klondike);
+
+                    nodes += result.nodes;
+                    if (result.solved()) {
+                        ++solved;
+                        solvedNodes += result.nodes;
+                    }
+                    else if (result.status == Solver.Status.ABORTED) {
+                        ++aborted;
+                    }
+                }
+
+                long ms = (System.nanoTime() - start) / 1000000;
+                System.out.println(String.format("%-8s %-10s %8d %8d %14d %10d %12d",
+                        variant.getKey(), name, solved, aborted, nodes, ms, solved == 0 ? 0 : solvedNodes / solved));
+            }
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * What the {@link Solver} made of each deal it's been asked about, kept on disk so the same deal isn't
+ * solved again by the next job, or after a restart.
+ *
+ * Results are kept by deal number and {@link Klondike.Rules}. The latest few thousand looked at are kept in
+ * memory too; the rest are read from disk when they're asked for. The data file is append-only: a result
+ * is written once, at the end, and replaced by writing it again. A separate index file says where each
+ * result is, least recently used first, and is written when the cache is closed. If it's missing, or
+ * behind the data file, the data file is read through instead, so a job that dies loses nothing it had
+ * written.
+ *
+ * Once the data file grows past its limit, it's compacted: the least recently used results are dropped
+ * until what's left fits in half the limit, and the rest are written to a new file, which replaces the
+ * old one.
+ *
+ * Safe to share between threads.
+ */
+public final class SolverCache implements Closeable {
+
+    static final int MAGIC = 0x4b4c5343;            // "KLSC"
+    static final int INDEX_MAGIC = 0x4b4c5349;      // "KLSI"
+    static final int HEADER_BYTES = 12;
+
+    static final int DEFAULT_MEMORY_ENTRIES = 4096;
+    static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    // each record is its length, then the seed, the rules, the status, the nodes searched and the moves
+    private static final int RECORD_BYTES = 4 + 8 + 1 + 1 + 1 + 8, MOVE_BYTES = 4;
+
+    private final File file, indexFile;
+    private final long maxBytes;
+
+    // everything on disk, least recently used first
+    private final LinkedHashMap<Key, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Solver.Result> memory;
+    private long liveBytes;
+
+    // the data file, and which compaction of it this is, so a stale index isn't believed
+    private RandomAccessFile data;
+    private long generation;
+
+    private long memoryHits = 0, diskHits = 0, misses = 0;
+
+    public SolverCache(File file) throws IOException {
+        this(file, DEFAULT_MEMORY_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param file the data file, created if it doesn't exist; the index goes next to it
+     * @param memoryEntries how many results to keep in memory
+     * @param maxBytes how big the data file can get before it's compacted
+     */
+    public SolverCache(File file, final int memoryEntries, long maxBytes) throws IOException {
+        Preconditions.checkArgument(memoryEntries > 0 && maxBytes > HEADER_BYTES);
+        this.file = file;
+        this.indexFile = new File(file.getPath() + ".idx");
+        this.maxBytes = maxBytes;
+        this.memory = new LinkedHashMap<Key, Solver.Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Solver.Result> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+
+        if (!file.exists() || file.length() == 0) {
+            create(file, new Random().nextLong());
+        }
+        data = new RandomAccessFile(file, "rw");
+        generation = readHeader();
+        scan(loadIndex());
+    }
+
+    /**
+     * Look up what the solver made of a deal.
+     *
+     * A search that was given up on is only good enough if it searched further than {@code maxNodes}
+     * positions, since a longer search might have got somewhere. One that got an answer is always good
+     * enough, however long it took.
+     *
+     * @param seed the deal number
+     * @param rules the rules it was solved under
+     * @param maxNodes how far the solver would search now
+     * @return the result, or {@code null} if there isn't one good enough
+     */
+    public synchronized Solver.Result get(long seed, Klondike.Rules rules, long maxNodes) throws IOException {
+        Key key = new Key(seed, rules);
+        Solver.Result result = memory.get(key);
+        if (result != null) {
+            index.get(key);
+            ++memoryHits;
+        }
+        else {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                ++misses;
+                return null;
+            }
+            result = read(entry);
+            memory.put(key, result);
+            ++diskHits;
+        }
+
+        if (result.status == Solver.Status.ABORTED && result.nodes <= maxNodes) {
+            ++misses;
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * Remember what the solver made of a deal, in place of anything remembered before.
+     */
+    public synchronized void put(long seed, Klondike.Rules rules, Solver.Result result) throws IOException {
+        Key key = new Key(seed, rules);
+        ByteBuffer record = encode(key, result);
+        long offset = data.length();
+        data.seek(offset);
+        data.write(record.array());
+
+        Entry old = index.put(key, new Entry(offset, record.capacity()));
+        if (old != null) {
+            liveBytes -= old.bytes;
+        }
+        liveBytes += record.capacity();
+        memory.put(key, result);
+
+        if (data.length() > maxBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Solve a deal, unless there's a good enough result already, and remember the result.
+     *
+     * @param seed the deal number
+     * @param rules the rules to play by
+     * @param maxNodes the most positions to search
+     * @return the result
+     */
+    public Solver.Result solve(long seed, Klondike.Rules rules, final long maxNodes) throws IOException {
+        return solve(seed, rules, maxNodes, new Supplier<Solver>() {
+            @Override
+            public Solver get() {
+                return new Solver(maxNodes);
+            }
+        });
+    }
+
+    /**
+     * @param solvers makes a solver that searches at most {@code maxNodes} positions; only asked if there's
+     *        no result already, since a solver's table is expensive to set up
+     */
+    public Solver.Result solve(long seed, Klondike.Rules rules, long maxNodes, Supplier<Solver> solvers)
+            throws IOException {
+        Solver.Result result = get(seed, rules, maxNodes);
+        if (result == null) {
+            Klondike klondike = new Klondike(rules);
+            klondike.init(seed);
+            result = solvers.get().solve(klondike);
+            put(seed, rules, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return how many deals there are results for
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d results; %d found in memory, %d on disk, %d not found",
+                index.size(), memoryHits, diskHits, misses);
+    }
+
+    /**
+     * Write the index and close the data file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (data == null) {
+            return;
+        }
+        try {
+            writeIndex();
+        }
+        finally {
+            data.close();
+            data = null;
+        }
+    }
+
+    /* ************************************************************************
+     * The data file
+     * ************************************************************************/
+
+    private static void create(File file, long generation) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeLong(generation);
+        }
+    }
+
+    private long readHeader() throws IOException {
+        data.seek(0);
+        if (data.length() < HEADER_BYTES || data.readInt() != MAGIC) {
+            throw new IOException("not a solver cache: " + file);
+        }
+        return data.readLong();
+    }
+
+    /**
+     * Index the records from {@code from} to the end of the data file. A record cut short at the end is
+     * cut off.
+     */
+    private void scan(long from) throws IOException {
+        long length = data.length(), offset = from;
+        byte[] head = new byte[RECORD_BYTES];
+        while (offset + RECORD_BYTES <= length) {
+            data.seek(offset);
+            data.readFully(head);
+            ByteBuffer record = ByteBuffer.wrap(head);
+            int bytes = record.getInt();
+            if (bytes < RECORD_BYTES || offset + bytes > length) {
+                break;
+            }
+            Key key = new Key(record.getLong(), record.get(), record.get());
+
+            Entry old = index.put(key, new Entry(offset, bytes));
+            if (old != null) {
+                liveBytes -= old.bytes;
+            }
+            liveBytes += bytes;
+            offset += bytes;
+        }
+        if (offset < length) {
+            data.setLength(offset);
+        }
+    }
+
+    private Solver.Result read(Entry entry) throws IOException {
+        byte[] bytes = new byte[entry.bytes];
+        data.seek(entry.offset);
+        data.readFully(bytes);
+
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        record.position(4 + 8 + 1 + 1);
+        Solver.Status status = Solver.Status.values()[record.get()];
+        long nodes = record.getLong();
+        List<Move> moves = Lists.newArrayListWithCapacity(record.remaining() / MOVE_BYTES);
+        while (record.hasRemaining()) {
+            moves.add(unpack(record.getInt()));
+        }
+        return new Solver.Result(status, moves, nodes);
+    }
+
+    private static ByteBuffer encode(Key key, Solver.Result result) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES + MOVE_BYTES * result.moves.size());
+        record.putInt(record.capacity()).putLong(key.seed).put(key.deal).put(key.passes)
+                .put((byte) result.status.ordinal()).putLong(result.nodes);
+        for (Move move : result.moves) {
+            record.putInt(pack(move));
+        }
+        return record;
+    }
+
+    /**
+     * Drop the least recently used results until the rest fit in half the limit, and write those to a
+     * new data file.
+     */
+    private void compact() throws IOException {
+        Iterator<Map.Entry<Key, Entry>> it = index.entrySet().iterator();
+        while (HEADER_BYTES + liveBytes > maxBytes / 2 && it.hasNext()) {
+            Map.Entry<Key, Entry> eldest = it.next();
+            liveBytes -= eldest.getValue().bytes;
+            memory.remove(eldest.getKey());
+            it.remove();
+        }
+
+        File temp = AtomicFiles.tempFile(file);
+        long next = generation + 1, offset = HEADER_BYTES;
+        LinkedHashMap<Key, Entry> moved = Maps.newLinkedHashMap();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeLong(next);
+            for (Map.Entry<Key, Entry> e : index.entrySet()) {
+                byte[] bytes = new byte[e.getValue().bytes];
+                data.seek(e.getValue().offset);
+                data.readFully(bytes);
+                out.write(bytes);
+                moved.put(e.getKey(), new Entry(offset, bytes.length));
+                offset += bytes.length;
+            }
+        }
+
+        data.close();
+        AtomicFiles.replace(temp, file);
+        data = new RandomAccessFile(file, "rw");
+        generation = next;
+        // the same order, so still least recently used first
+        index.putAll(moved);
+        writeIndex();
+    }
+
+    /* ************************************************************************
+     * The index file
+     * ************************************************************************/
+
+    /**
+     * Load the index, if it's for this data file.
+     *
+     * @return how much of the data file it covers
+     */
+    private long loadIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return HEADER_BYTES;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 1 << 16))) {
+            if (in.readInt() != INDEX_MAGIC || in.readLong() != generation) {
+                return HEADER_BYTES;
+            }
+            long covered = in.readLong();
+            int entries = in.readInt();
+            if (covered > data.length()) {
+                return HEADER_BYTES;
+            }
+            for (int i = 0; i < entries; ++i) {
+                Key key = new Key(in.readLong(), in.readByte(), in.readByte());
+                Entry entry = new Entry(in.readLong(), in.readInt());
+                index.put(key, entry);
+                liveBytes += entry.bytes;
+            }
+            return covered;
+        }
+        catch (EOFException e) {
+            index.clear();
+            liveBytes = 0;
+            return HEADER_BYTES;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File temp = AtomicFiles.tempFile(indexFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeLong(generation);
+            out.writeLong(data.length());
+            out.writeInt(index.size());
+            for (Map.Entry<Key, Entry> e : index.entrySet()) {
+                out.writeLong(e.getKey().seed);
+                out.writeByte(e.getKey().deal);
+                out.writeByte(e.getKey().passes);
+                out.writeLong(e.getValue().offset);
+                out.writeInt(e.getValue().bytes);
+            }
+        }
+        AtomicFiles.replace(temp, indexFile);
+    }
+
+    /* ************************************************************************
+     * Moves
+     * ************************************************************************/
+
+    static int pack(Move move) {
+        return move.type.ordinal() << 24 | (move.from + 1) << 20 | (move.to + 1) << 16 | move.count << 8 | move.deals;
+    }
+
+    static Move unpack(int packed) {
+        int from = ((packed >>> 20) & 0xf) - 1, to = ((packed >>> 16) & 0xf) - 1, deals = packed & 0xff;
+        switch (Move.Type.values()[packed >>> 24]) {
+            case DEAL:
+                return Move.deal();
+            case WASTE_TO_TABLEAU:
+                return Move.wasteToTableau(to, deals);
+            case WASTE_TO_FOUNDATION:
+                return Move.wasteToFoundation(deals);
+            case TABLEAU_TO_FOUNDATION:
+                return Move.tableauToFoundation(from);
+            default:
+                return Move.tableauToTableau(from, to, (packed >>> 8) & 0xff);
+        }
+    }
+
+    private static final class Key {
+        final long seed;
+        final byte deal, passes;
+
+        Key(long seed, Klondike.Rules rules) {
+            this(seed, (byte) rules.deal.ordinal(), (byte) rules.passes.ordinal());
+        }
+
+        Key(long seed, byte deal, byte passes) {
+            this.seed = seed;
+            this.deal = deal;
+            this.passes = passes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return seed == that.seed && deal == that.deal && passes == that.passes;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.valueOf(seed).hashCode() * 31 + deal) * 31 + passes;
+        }
+    }
+
+    private static final class Entry {
+        final long offset;
+        final int bytes;
+
+        Entry(long offset, int bytes) {
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Play a range of seeded deals with the greedy policy and write a {@link TraceFile} of every move.
+ *
+ * Usage: {@code TraceExport from to output-file [deal-one] [passes]}
+ */
+public class TraceExport {
+
+    /**
+     * @param rules the rules to play by
+     * @param from the first deal number
+     * @param to one more than the last deal number
+     * @param file the trace file
+     * @return the totals
+     */
+    public static SimulationReport export(Klondike.Rules rules, long from, long to, File file) throws IOException {
+        Preconditions.checkArgument(from <= to);
+        SimulationReport report = new SimulationReport();
+        Simulation simulation = new Simulation(rules);
+        try (TraceFile.Writer writer = new TraceFile.Writer(file, rules)) {
+            for (long seed = from; seed < to; ++seed) {
+                report.add(simulation.play(seed, writer));
+            }
+        }
+        return report;
+    }
+
+    public static void main(String... args) throws Exception {
+        long from = Long.parseLong(args[0]), to = Long.parseLong(args[1]);
+        File output = new File(args[2]);
+        boolean dealOne = args.length > 3 && Boolean.parseBoolean(args[3]);
+        Klondike.Rules.Passes passes = args.length > 4 ?
+                Klondike.Rules.Passes.parse(args[4]) : Klondike.Rules.Passes.INFINITY;
+        Klondike.Rules rules = new Klondike.Rules(
+                dealOne ? Klondike.Rules.Deal.DEAL_SINGLE : Klondike.Rules.Deal.DEAL_THREE, passes);
+
+        long start = System.nanoTime();
+        SimulationReport report = export(rules, from, to, output);
+        System.out.println(String.format("%s; %d bytes in %d ms",
+                report, output.length(), (System.nanoTime() - start) / 1000000));
+    }
+}
@@ -0,0 +1,38 @@
+package info.jayharris.klondike;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BatchTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE);
+
+    @Test
+    public void testOutputIsInDealOrderOnAnyNumberOfThreads() throws Exception {
+        StringWriter one = new StringWriter(), four = new StringWriter();
+
+        SimulationReport report = new Batch(rules, 50, 300, 1, one).simulate(Simulation.Policy.GREEDY);
+        assertEquals(report, new Batch(rules, 50, 300, 4, four).simulate(Simulation.Policy.GREEDY));
+        assertEquals(one.toString(), four.toString());
+
+        String[] lines = one.toString().split("\n");
+        assertEquals(250, lines.length);
+        assertEquals(new Simulation(rules).play(50).toString(), lines[0]);
+        assertEquals(new Simulation(rules).play(299).toString(), lines[249]);
+    }
+
+    @Test
+    public void testSolve() throws Exception {
+        StringWriter one = new StringWriter(), four = new StringWriter();
+        Map<Solver.Status, Long> counts = new Batch(rules, 0, 300, 1, one).maxNodes(20000).solve();
+
+        assertEquals(counts, new Batch(rules, 0, 300, 4, four).maxNodes(20000).solve());
+        assertEquals(one.toString(), four.toString());
+        assertTrue(counts.get(Solver.Status.SOLVED) > 0);
+        assertTrue(one.toString().contains("\n4\tSOLVED\t"));
+    }
+}
@@ -0,0 +1,63 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DealFinderTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules();
+
+    @Test
+    public void testFindsTheLowestMatchesWhateverTheThreads() throws Exception {
+        // the solver first, to show it gets put last
+        List<DealFinder.Criterion> criteria = ImmutableList.of(DealFinder.solvable(rules), DealFinder.acesShowing(2));
+
+        DealFinder one = new DealFinder(criteria, 20000), three = new DealFinder(criteria, 20000);
+        List<Long> found = one.find(0, 400, 2, 1);
+        assertEquals(2, found.size());
+        assertEquals(found, three.find(0, 400, 2, 3));
+
+        DealFinder check = new DealFinder(criteria, 20000);
+        for (long seed = 0; seed <= found.get(1); ++seed) {
+            assertEquals(found.contains(seed), check.matches(seed));
+        }
+
+        // the cheap filter kept most deals away from the solver
+        assertTrue(one.getSolved() * 4 < one.getExamined());
+        // and the search stopped not long after the last match
+        assertTrue(one.getExamined() <= found.get(1) + 1);
+        assertTrue(three.getExamined() < 400);
+    }
+
+    @Test
+    public void testRangeRunsOut() throws Exception {
+        DealFinder finder = new DealFinder(ImmutableList.of(DealFinder.acesShowing(4)));
+        assertTrue(finder.find(0, 50, 1, 2).isEmpty());
+        assertEquals(50, finder.getExamined());
+        assertEquals(0, finder.getSolved());
+    }
+
+    @Test
+    public void testNeedsRestart() throws Exception {
+        DealFinder finder = new DealFinder(ImmutableList.of(DealFinder.needsRestart(rules)), 20000);
+        List<Long> found = finder.find(0, 50, 1, 2);
+        assertEquals(1, found.size());
+
+        Klondike klondike = new Klondike(new Klondike.Rules(rules.deal, Klondike.Rules.Passes.SINGLE));
+        klondike.init(found.get(0));
+        assertEquals(Solver.Status.UNSOLVABLE, new Solver(20000).solve(klondike).status);
+
+        klondike = new Klondike(rules);
+        klondike.init(found.get(0));
+        assertTrue(new Solver(20000).solve(klondike).solved());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeedsRestartWithOnePass() {
+        DealFinder.needsRestart(new Klondike.Rules(Klondike.Rules.Passes.SINGLE));
+    }
+}
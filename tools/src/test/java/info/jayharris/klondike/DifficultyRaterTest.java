@@ -0,0 +1,78 @@
+package info.jayharris.klondike;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DifficultyRaterTest {
+
+    private final List<Klondike.Rules> variants = ImmutableList.of(
+            new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE),
+            new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE, Klondike.Rules.Passes.THREE));
+
+    @Test
+    public void testRateAllWritesEveryRatingSortedByScore() throws Exception {
+        File directory = Files.createTempDir();
+        File output = new File(directory, "ratings.bin");
+        DifficultyRater rater = new DifficultyRater(variants, 20000, 20);
+
+        assertEquals(40, rater.rateAll(0, 20, 3, output));
+        assertEquals(40, DifficultyFile.size(output));
+        assertEquals(1, directory.list().length);
+
+        List<DifficultyRating> all = DifficultyFile.range(output, 0, DifficultyRating.UNSOLVABLE);
+        assertEquals(40, all.size());
+        List<DifficultyRating> sorted = Lists.newArrayList(all);
+        Collections.sort(sorted, DifficultyRating.BY_SCORE);
+        assertEquals(sorted, all);
+
+        DifficultyRating first = all.get(0);
+        assertEquals(first, rater.rate(first.seed, first.rules()));
+        if (first.status == Solver.Status.SOLVED) {
+            assertTrue(first.score < DifficultyRating.ABORTED);
+            assertTrue(first.length > 0);
+        }
+    }
+
+    @Test
+    public void testRangeQueryAcrossMergedRuns() throws Exception {
+        File directory = Files.createTempDir();
+        List<File> runs = Lists.newArrayList();
+        List<DifficultyRating> everything = Lists.newArrayList();
+
+        for (int r = 0; r < 3; ++r) {
+            List<DifficultyRating> run = Lists.newArrayList();
+            for (int i = 0; i < 100; ++i) {
+                int score = (i * 37 + r * 11) % 500;
+                run.add(new DifficultyRating(r * 100 + i, Klondike.Rules.Deal.DEAL_THREE,
+                        Klondike.Rules.Passes.INFINITY, Solver.Status.SOLVED, i, i, 0, 0, score));
+            }
+            Collections.sort(run, DifficultyRating.BY_SCORE);
+            everything.addAll(run);
+            File file = new File(directory, "run" + r);
+            DifficultyFile.write(run, file);
+            runs.add(file);
+        }
+
+        File output = new File(directory, "merged.bin");
+        DifficultyFile.merge(runs, output);
+        assertEquals(300, DifficultyFile.size(output));
+
+        List<DifficultyRating> expected = Lists.newArrayList();
+        for (DifficultyRating rating : everything) {
+            if (rating.score >= 100 && rating.score <= 120) {
+                expected.add(rating);
+            }
+        }
+        Collections.sort(expected, DifficultyRating.BY_SCORE);
+        assertEquals(expected, DifficultyFile.range(output, 100, 120));
+        assertTrue(DifficultyFile.range(output, 600, 700).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package info.jayharris.klondike;
+
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ReplayVerifierTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE);
+
+    private File dir, trace, results;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDir();
+        trace = new File(dir, "trace.bin");
+        results = new File(dir, "results.bin");
+
+        Simulation simulation = new Simulation(rules);
+        try (TraceFile.Writer writer = new TraceFile.Writer(trace, rules);
+             ResultFile.Writer out = new ResultFile.Writer(results, rules)) {
+            for (long seed = 0; seed < 300; ++seed) {
+                out.write(simulation.play(seed, writer));
+            }
+        }
+    }
+
+    @Test
+    public void testRecordedGamesAreValid() throws IOException {
+        ReplayVerifier.Report report = new ReplayVerifier(4).verify(trace, results);
+
+        assertEquals(300, report.getGames());
+        try (TraceFile.Reader reader = new TraceFile.Reader(trace)) {
+            assertEquals(reader.rows(), report.getMoves());
+        }
+        assertTrue(report.getInvalid().toString(), report.getInvalid().isEmpty());
+    }
+
+    @Test
+    public void testForgedMoveIsCaught() throws IOException {
+        File forged = new File(dir, "forged.bin");
+        // game 7 puts a card somewhere else; game 200 skips a move number
+        copy(trace, forged, 7, TraceFile.Column.TO);
+        copy(forged, trace, 200, TraceFile.Column.PLY);
+
+        ReplayVerifier.Report report = new ReplayVerifier(3).verify(trace);
+        assertEquals(2, report.getInvalid().size());
+        assertEquals(7, report.getInvalid().get(0).game);
+        assertEquals(200, report.getInvalid().get(1).game);
+        assertEquals(4, report.getInvalid().get(1).ply);
+    }
+
+    @Test
+    public void testFalseClaimIsCaught() throws IOException {
+        Simulation.Result lost = null;
+        try (ResultFile.Reader reader = new ResultFile.Reader(results)) {
+            for (Simulation.Result result = reader.next(); lost == null; result = reader.next()) {
+                if (!result.won) {
+                    lost = result;
+                }
+            }
+        }
+
+        File claims = new File(dir, "claims.bin");
+        try (ResultFile.Reader reader = new ResultFile.Reader(results);
+             ResultFile.Writer out = new ResultFile.Writer(claims, rules)) {
+            for (Simulation.Result result = reader.next(); result != null; result = reader.next()) {
+                out.write(result.seed == lost.seed ?
+                        new Simulation.Result(result.seed, true, result.moves, CardCodes.CARDS) : result);
+            }
+            // and a game that was never played
+            out.write(new Simulation.Result(1000, true, 120, CardCodes.CARDS));
+        }
+
+        ReplayVerifier.Report report = new ReplayVerifier(2).verify(trace, claims);
+        assertEquals(301, report.getGames());
+        assertEquals(2, report.getInvalid().size());
+        assertEquals(lost.seed, report.getInvalid().get(0).game);
+        assertEquals(lost.moves, report.getInvalid().get(0).ply);
+        assertEquals(1000, report.getInvalid().get(1).game);
+    }
+
+    /**
+     * Copy a trace, changing one column of the fifth move of a game.
+     */
+    private void copy(File from, File to, long game, TraceFile.Column column) throws IOException {
+        TraceFile.Column[] columns = TraceFile.Column.values();
+        try (TraceFile.Reader reader = new TraceFile.Reader(from);
+             TraceFile.Writer writer = new TraceFile.Writer(to, reader.rules)) {
+            TraceFile.Reader.Cursor[] cursors = new TraceFile.Reader.Cursor[columns.length];
+            for (TraceFile.Column c : columns) {
+                cursors[c.ordinal()] = reader.scan(c);
+            }
+
+            long[] row = new long[columns.length];
+            while (cursors[0].next()) {
+                for (int c = 0; c < columns.length; ++c) {
+                    if (c > 0) {
+                        assertTrue(cursors[c].next());
+                    }
+                    row[c] = cursors[c].get();
+                }
+                if (row[0] == game && row[1] == 4) {
+                    ++row[column.ordinal()];
+                }
+                writer.write(row[0], (int) row[1], (int) row[2], (int) row[3], (int) row[4], (int) row[5],
+                        (int) row[6], (int) row[7]);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package info.jayharris.klondike;
+
+import com.google.common.io.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SimulationTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE);
+
+    @Test
+    public void testSameSeedSamePlayout() {
+        assertEquals(new Simulation(rules).play(7L), new Simulation(rules).play(7L));
+    }
+
+    @Test
+    public void testResultFileRoundTrip() throws Exception {
+        File file = File.createTempFile("results", ".bin");
+        file.deleteOnExit();
+
+        Simulation simulation = new Simulation(rules);
+        SimulationReport expected = new SimulationReport();
+        try (ResultFile.Writer writer = new ResultFile.Writer(file, rules)) {
+            for (long seed = 0; seed < 50; ++seed) {
+                Simulation.Result result = simulation.play(seed);
+                writer.write(result);
+                expected.add(result);
+            }
+        }
+
+        try (ResultFile.Reader reader = new ResultFile.Reader(file)) {
+            assertEquals(rules.deal, reader.rules.deal);
+            assertEquals(rules.passes, reader.rules.passes);
+            for (long seed = 0; seed < 50; ++seed) {
+                assertEquals(simulation.play(seed), reader.next());
+            }
+            assertNull(reader.next());
+        }
+        assertEquals(expected, ResultFile.summarize(file));
+    }
+
+    @Test
+    public void testCoordinatorMatchesInProcess() throws Exception {
+        File directory = Files.createTempDir();
+
+        SimulationReport report = new SimulationCoordinator(rules, 100, 160, 16, 2, directory).run();
+
+        Simulation simulation = new Simulation(rules);
+        SimulationReport expected = new SimulationReport();
+        for (long seed = 100; seed < 160; ++seed) {
+            expected.add(simulation.play(seed));
+        }
+        assertEquals(expected, report);
+
+        try (ResultFile.Reader reader = new ResultFile.Reader(new File(directory, "results.bin"))) {
+            for (long seed = 100; seed < 160; ++seed) {
+                assertEquals(seed, reader.next().seed);
+            }
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void testCheckpointRoundTrip() throws Exception {
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+
+        Checkpoint checkpoint = new Checkpoint(rules, 0, 100);
+        checkpoint.complete(0, 10, play(0, 10));
+        checkpoint.complete(40, 50, play(40, 50));
+        checkpoint.save(file);
+
+        Checkpoint copy = Checkpoint.load(file);
+        assertTrue(copy.matches(rules, 0, 100));
+        assertTrue(copy.isComplete(0, 10));
+        assertTrue(copy.isComplete(40, 50));
+        assertFalse(copy.isComplete(0, 11));
+        assertFalse(copy.isComplete());
+        assertEquals(checkpoint.getReport(), copy.getReport());
+    }
+
+    @Test
+    public void testResumedJobMatchesUninterrupted() throws Exception {
+        File directory = Files.createTempDir();
+        File straight = new File(directory, "straight.ckpt"), resumed = new File(directory, "resumed.ckpt");
+
+        SimulationReport expected = new SimulationJob(rules, 0, 90, 3, straight, 10, 0, TimeUnit.SECONDS).run();
+        assertEquals(play(0, 90), expected);
+
+        // as if the job had been killed partway through
+        Checkpoint partial = new Checkpoint(rules, 0, 90);
+        partial.complete(0, 10, play(0, 10));
+        partial.complete(30, 50, play(30, 50));
+        partial.save(resumed);
+
+        assertEquals(expected, new SimulationJob(rules, 0, 90, 3, resumed, 10, 0, TimeUnit.SECONDS).run());
+        assertTrue(Checkpoint.load(resumed).isComplete());
+    }
+
+    @Test
+    public void testResumeWithAnotherChunkSize() throws Exception {
+        File directory = Files.createTempDir();
+        File resumed = new File(directory, "resumed.ckpt");
+
+        // killed partway through a job playing 10 deals at a time, then resumed 25 at a time
+        Checkpoint partial = new Checkpoint(rules, 0, 90);
+        partial.complete(0, 10, play(0, 10));
+        partial.complete(30, 50, play(30, 50));
+        partial.complete(70, 80, play(70, 80));
+        partial.save(resumed);
+
+        assertEquals(play(0, 90), new SimulationJob(rules, 0, 90, 3, resumed, 25, 0, TimeUnit.SECONDS).run());
+        assertTrue(Checkpoint.load(resumed).isComplete());
+    }
+
+    private SimulationReport play(long from, long to) {
+        Simulation simulation = new Simulation(rules);
+        SimulationReport report = new SimulationReport();
+        for (long seed = from; seed < to; ++seed) {
+            report.add(simulation.play(seed));
+        }
+        return report;
+    }
+}
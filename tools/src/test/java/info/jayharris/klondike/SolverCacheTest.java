@@ -0,0 +1,137 @@
+package info.jayharris.klondike;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SolverCacheTest {
+
+    private final Klondike.Rules rules = new Klondike.Rules(Klondike.Rules.Deal.DEAL_THREE),
+            one = new Klondike.Rules(Klondike.Rules.Deal.DEAL_SINGLE);
+
+    private static final List<Move> MOVES = ImmutableList.of(Move.deal(), Move.wasteToTableau(3, 2),
+            Move.wasteToFoundation(7), Move.tableauToFoundation(6), Move.tableauToTableau(0, 5, 12));
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(Files.createTempDir(), "solver.cache");
+    }
+
+    @Test
+    public void testResultsSurviveRestart() throws IOException {
+        Solver.Result[] solved = new Solver.Result[20];
+        try (SolverCache cache = new SolverCache(file)) {
+            for (int seed = 0; seed < solved.length; ++seed) {
+                solved[seed] = cache.solve(seed, rules, 20000);
+            }
+            assertSame(solved[3], cache.get(3, rules, 20000));
+            assertNull(cache.get(3, one, 20000));
+        }
+
+        try (SolverCache cache = new SolverCache(file)) {
+            assertEquals(solved.length, cache.size());
+            for (int seed = 0; seed < solved.length; ++seed) {
+                Solver.Result result = cache.solve(seed, rules, 20000);
+                assertEquals(solved[seed].status, result.status);
+                assertEquals(solved[seed].nodes, result.nodes);
+                assertEquals(solved[seed].moves, result.moves);
+            }
+            assertTrue(cache.toString(), cache.toString().contains("20 on disk, 0 not found"));
+        }
+    }
+
+    @Test
+    public void testDataFileWithoutIndex() throws IOException {
+        try (SolverCache cache = new SolverCache(file)) {
+            cache.put(1, rules, new Solver.Result(Solver.Status.SOLVED, MOVES, 1000));
+            cache.put(2, rules, new Solver.Result(Solver.Status.UNSOLVABLE, ImmutableList.<Move>of(), 2000));
+            cache.put(1, rules, new Solver.Result(Solver.Status.SOLVED, MOVES.subList(0, 2), 3000));
+        }
+        assertTrue(new File(file.getPath() + ".idx").delete());
+        // and a record only half written
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] { 0, 0, 0, 40, 1, 2, 3 });
+        }
+
+        try (SolverCache cache = new SolverCache(file)) {
+            assertEquals(2, cache.size());
+            assertEquals(3000, cache.get(1, rules, 0).nodes);
+            assertEquals(MOVES.subList(0, 2), cache.get(1, rules, 0).moves);
+            assertEquals(Solver.Status.UNSOLVABLE, cache.get(2, rules, 0).status);
+
+            cache.put(3, one, new Solver.Result(Solver.Status.SOLVED, MOVES, 4000));
+        }
+        try (SolverCache cache = new SolverCache(file)) {
+            assertEquals(MOVES, cache.get(3, one, 0).moves);
+        }
+    }
+
+    @Test
+    public void testAbortedSearchOnlyAnswersShorterOnes() throws IOException {
+        try (SolverCache cache = new SolverCache(file)) {
+            cache.put(5, rules, new Solver.Result(Solver.Status.ABORTED, ImmutableList.<Move>of(), 1001));
+            assertNotNull(cache.get(5, rules, 1000));
+            assertNull(cache.get(5, rules, 1001));
+
+            cache.put(6, rules, new Solver.Result(Solver.Status.SOLVED, MOVES, 50000));
+            assertNotNull(cache.get(6, rules, 1000));
+        }
+    }
+
+    @Test
+    public void testCompactionDropsLeastRecentlyUsed() throws IOException {
+        Solver.Result result = new Solver.Result(Solver.Status.SOLVED, MOVES, 1000);
+        try (SolverCache cache = new SolverCache(file, 10, 4096)) {
+            for (int seed = 0; seed < 500; ++seed) {
+                cache.put(seed, rules, result);
+                // keep the first one in use
+                assertNotNull(cache.get(0, rules, 0));
+                assertTrue(file.length() <= 4096);
+            }
+            assertNotNull(cache.get(0, rules, 0));
+            assertNotNull(cache.get(499, rules, 0));
+            assertNull(cache.get(1, rules, 0));
+            assertTrue(cache.size() < 500);
+        }
+
+        try (SolverCache cache = new SolverCache(file, 10, 4096)) {
+            assertEquals(MOVES, cache.get(0, rules, 0).moves);
+            assertNull(cache.get(1, rules, 0));
+        }
+    }
+
+    @Test
+    public void testSolverOnlyMadeOnMiss() throws IOException {
+        final int[] made = new int[1];
+        Supplier<Solver> solvers = new Supplier<Solver>() {
+            @Override
+            public Solver get() {
+                ++made[0];
+                return new Solver(20000);
+            }
+        };
+        try (SolverCache cache = new SolverCache(file)) {
+            Solver.Result result = cache.solve(8, rules, 20000, solvers);
+            assertSame(result, cache.solve(8, rules, 20000, solvers));
+            assertEquals(1, made[0]);
+        }
+    }
+
+    @Test
+    public void testPackMoves() {
+        for (Move move : MOVES) {
+            assertEquals(move, SolverCache.unpack(SolverCache.pack(move)));
+        }
+    }
+}